@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.tuberlin.uebb.jdae.diff.partial.PDNumber;
+import de.tuberlin.uebb.jdae.diff.total.TDNumber;
+import de.tuberlin.uebb.jdae.diff.total.TDOperations;
+import de.tuberlin.uebb.jdae.diff.total.TDRegister;
+
+/**
+ * The total-derivative algebra, once through the allocating {@link TDNumber}
+ * API and once through the in-place {@link TDOperations} entry points with
+ * preallocated targets.
+ * 
+ * @author choeger
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TDOperationsBenchmark {
+
+    @Param({ "0", "1", "2", "3", "4" })
+    public int order;
+
+    @Param({ "1", "8", "32", "128" })
+    public int params;
+
+    TDOperations ops;
+    TDNumber x;
+    TDNumber y;
+
+    /* derivatives of the outer function for compose, see TDOperations */
+    double[] f;
+
+    PDNumber[] target;
+    double[] flatX;
+    double[] flatY;
+    double[] flatTarget;
+
+    @Setup
+    public void setup() {
+        ops = TDOperations.getInstance(order, params);
+
+        final double[] dx = new double[order + 1];
+        final double[] dy = new double[order + 1];
+        for (int i = 0; i <= order; ++i) {
+            dx[i] = 0.7 / (1 + i);
+            dy[i] = 1.3 + 0.2 * i;
+        }
+        x = ops.variable(0, dx);
+        y = ops.variable(params > 1 ? 1 : 0, dy);
+        for (int i = 0; i <= order; ++i)
+            for (int j = 1; j <= params; ++j) {
+                x.values[i].values[j] += 0.01 * j;
+                y.values[i].values[j] -= 0.02 * j;
+            }
+
+        f = new double[order + 1];
+        for (int i = 0; i <= order; ++i)
+            f[i] = (i % 2 == 0 ? 1.0 : -1.0) / (1 + i);
+
+        target = new PDNumber[order + 1];
+        ops.mult(x.values, y.values, target);
+
+        flatX = new double[ops.size];
+        flatY = new double[ops.size];
+        flatTarget = new double[ops.size];
+        ops.flatten(x.values, flatX);
+        ops.flatten(y.values, flatY);
+    }
+
+    @Benchmark
+    public TDNumber multAllocating() {
+        return x.mult(y);
+    }
+
+    @Benchmark
+    public PDNumber[] multInPlace() {
+        ops.mult(x.values, y.values, target);
+        return target;
+    }
+
+    @Benchmark
+    public double[] multFlat() {
+        ops.mult(flatX, flatY, flatTarget);
+        return flatTarget;
+    }
+
+    @Benchmark
+    public PDNumber[] composeInPlace() {
+        ops.compose(f, x.values, target);
+        return target;
+    }
+
+    @Benchmark
+    public TDNumber powAllocating() {
+        return x.pow(3);
+    }
+
+    @Benchmark
+    public PDNumber[] powInPlace() {
+        ops.pow(3, x.values, target);
+        return target;
+    }
+
+    @Benchmark
+    public TDNumber sinAllocating() {
+        return x.sin();
+    }
+
+    @Benchmark
+    public PDNumber[] sinInPlace() {
+        ops.sin(x.values, target);
+        return target;
+    }
+
+    @Benchmark
+    public double[] sinFlat() {
+        ops.sin(flatX, flatTarget);
+        return flatTarget;
+    }
+
+    /* x^2 * y + sin(x) - y^3, once with numbers and once in a register */
+    @Benchmark
+    public TDNumber chainAllocating() {
+        return x.pow(2).mult(y).add(x.sin()).subtract(y.pow(3));
+    }
+
+    @Benchmark
+    public void chainRegister(Blackhole bh) {
+        final TDRegister reg = new TDRegister(x.copy());
+        reg.square();
+        reg.mult(y);
+        reg.add(x.sin());
+        reg.add(y.pow(3).mult(-1));
+        bh.consume(reg.unsafe());
+    }
+}
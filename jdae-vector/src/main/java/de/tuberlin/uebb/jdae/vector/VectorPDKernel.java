@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.vector;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import de.tuberlin.uebb.jdae.diff.partial.PDKernel;
+
+/**
+ * {@link PDKernel} on the preferred SIMD width of the platform. The lanes
+ * compute exactly the same (separately rounded) products and sums as the
+ * scalar loops, so results do not depend on the kernel in use. The one
+ * exception are the products of total derivatives: with this kernel they are
+ * summed row by row (Leibniz' rule) instead of by the product tables, which
+ * may change the last bits.
+ * 
+ * @author choeger
+ * 
+ */
+public final class VectorPDKernel implements PDKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void add(final double[] a, final double[] b, final double[] target,
+            int length) {
+        int i = 0;
+        for (final int bound = SPECIES.loopBound(length); i < bound; i += SPECIES
+                .length()) {
+            final DoubleVector x = DoubleVector.fromArray(SPECIES, a, i);
+            final DoubleVector y = DoubleVector.fromArray(SPECIES, b, i);
+            x.add(y).intoArray(target, i);
+        }
+        for (; i < length; i++)
+            target[i] = a[i] + b[i];
+    }
+
+    @Override
+    public void scale(final double s, final double[] a, final double[] target,
+            int length) {
+        int i = 0;
+        for (final int bound = SPECIES.loopBound(length); i < bound; i += SPECIES
+                .length())
+            DoubleVector.fromArray(SPECIES, a, i).mul(s).intoArray(target, i);
+        for (; i < length; i++)
+            target[i] = s * a[i];
+    }
+
+    @Override
+    public void mult(final double[] a, final double[] b, final double[] target,
+            int length) {
+        final double a0 = a[0];
+        final double b0 = b[0];
+
+        int i = 1;
+        for (final int bound = 1 + SPECIES.loopBound(length - 1); i < bound; i += SPECIES
+                .length()) {
+            final DoubleVector x = DoubleVector.fromArray(SPECIES, a, i);
+            final DoubleVector y = DoubleVector.fromArray(SPECIES, b, i);
+            x.mul(b0).add(y.mul(a0)).intoArray(target, i);
+        }
+        for (; i < length; i++)
+            target[i] = a[i] * b0 + b[i] * a0;
+
+        target[0] = a0 * b0;
+    }
+
+    @Override
+    public void compose(final double f, final double df,
+            final double[] values, final double[] target, int length) {
+        int i = 1;
+        for (final int bound = 1 + SPECIES.loopBound(length - 1); i < bound; i += SPECIES
+                .length())
+            DoubleVector.fromArray(SPECIES, values, i).mul(df)
+                    .intoArray(target, i);
+        for (; i < length; i++)
+            target[i] = values[i] * df;
+
+        target[0] = f;
+    }
+
+    @Override
+    public void multAdd(final double s, final double[] a, int i,
+            final double[] b, int j, final double[] target, int k, int length) {
+        final double a0 = a[i];
+        final double b0 = b[j];
+
+        int p = 1;
+        for (final int bound = 1 + SPECIES.loopBound(length - 1); p < bound; p += SPECIES
+                .length()) {
+            final DoubleVector x = DoubleVector.fromArray(SPECIES, a, i + p);
+            final DoubleVector y = DoubleVector.fromArray(SPECIES, b, j + p);
+            final DoubleVector t = DoubleVector.fromArray(SPECIES, target, k
+                    + p);
+            t.add(y.mul(a0).add(x.mul(b0)).mul(s)).intoArray(target, k + p);
+        }
+        for (; p < length; p++)
+            target[k + p] += s * (a0 * b[j + p] + a[i + p] * b0);
+
+        target[k] += s * a0 * b0;
+    }
+}
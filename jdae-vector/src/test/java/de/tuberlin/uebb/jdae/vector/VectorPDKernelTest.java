@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.vector;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.tuberlin.uebb.jdae.diff.partial.PDKernel;
+import de.tuberlin.uebb.jdae.diff.partial.PDKernels;
+import de.tuberlin.uebb.jdae.diff.partial.PDNumber;
+import de.tuberlin.uebb.jdae.diff.partial.PDOperations;
+import de.tuberlin.uebb.jdae.diff.total.TDOperations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VectorPDKernelTest {
+
+    final PDKernel vector = new VectorPDKernel();
+    final PDKernel scalar = PDKernels.SCALAR;
+    final Random random = new Random(42);
+
+    private double[] random(int length) {
+        final double[] d = new double[length];
+        for (int i = 0; i < length; ++i)
+            d[i] = random.nextDouble() - 0.5;
+        return d;
+    }
+
+    @Test
+    public void testKernelIsFoundByServiceLoader() {
+        assertTrue(PDKernels.hasOptionalKernel());
+        assertTrue(PDKernels.forLength(64) instanceof VectorPDKernel);
+    }
+
+    @Test
+    public void testAgreesWithScalarLoops() {
+        for (int length = 1; length <= 70; ++length) {
+            final double[] a = random(length), b = random(length);
+            final double[] expected = new double[length];
+            final double[] actual = new double[length];
+
+            scalar.add(a, b, expected, length);
+            vector.add(a, b, actual, length);
+            assertArrayEquals(expected, actual, 0.0);
+
+            scalar.scale(-1.5, a, expected, length);
+            vector.scale(-1.5, a, actual, length);
+            assertArrayEquals(expected, actual, 0.0);
+
+            scalar.mult(a, b, expected, length);
+            vector.mult(a, b, actual, length);
+            assertArrayEquals(expected, actual, 0.0);
+
+            scalar.compose(0.3, 2.5, a, expected, length);
+            vector.compose(0.3, 2.5, a, actual, length);
+            assertArrayEquals(expected, actual, 0.0);
+
+            /* rows at offsets, accumulating */
+            final double[] rows = random(3 * length);
+            final double[] sums = random(2 * length);
+            final double[] vectorSums = sums.clone();
+            scalar.multAdd(0.75, rows, 0, rows, 2 * length, sums, length,
+                    length);
+            vector.multAdd(0.75, rows, 0, rows, 2 * length, vectorSums,
+                    length, length);
+            assertArrayEquals(sums, vectorSums, 0.0);
+        }
+    }
+
+    @Test
+    public void testTotalProductsFollowLeibniz() {
+        final int params = 32;
+        final TDOperations ops = TDOperations.getInstance(2, params);
+        final PDOperations pd = PDOperations.get(params);
+        final PDNumber[] a = new PDNumber[3], b = new PDNumber[3];
+        final double[] flatA = new double[ops.size];
+        final double[] flatB = new double[ops.size];
+        for (int i = 0; i < 3; ++i) {
+            a[i] = new PDNumber(pd, random(params + 1));
+            b[i] = new PDNumber(pd, random(params + 1));
+            System.arraycopy(a[i].values, 0, flatA, i * ops.width, ops.width);
+            System.arraycopy(b[i].values, 0, flatB, i * ops.width, ops.width);
+        }
+
+        final PDNumber[] product = new PDNumber[3];
+        ops.mult(a, b, product);
+        final double[] flat = new double[ops.size];
+        ops.mult(flatA, flatB, flat);
+
+        /* (ab)'' = a''b + 2a'b' + ab'' */
+        final int[][] terms = { { 0, 0 }, { 1, 0, 0, 1 },
+                { 2, 0, 1, 1, 0, 2 } };
+        final double[][] factors = { { 1 }, { 1, 1 }, { 1, 2, 1 } };
+        for (int i = 0; i < 3; ++i) {
+            final double[] expected = new double[ops.width];
+            final double[] term = new double[ops.width];
+            for (int t = 0; t < factors[i].length; ++t) {
+                scalar.mult(a[terms[i][2 * t]].values,
+                        b[terms[i][2 * t + 1]].values, term, ops.width);
+                for (int p = 0; p < ops.width; ++p)
+                    expected[p] += factors[i][t] * term[p];
+            }
+            assertArrayEquals(expected, product[i].values, 1e-14);
+            assertArrayEquals(product[i].values, Arrays.copyOfRange(flat, i
+                    * ops.width, (i + 1) * ops.width), 0.0);
+        }
+    }
+
+    @Test
+    public void testInPlaceProduct() {
+        final double[] a = random(33), b = random(33);
+        final double[] expected = new double[33];
+        scalar.mult(a, b, expected, 33);
+        PDOperations.get(32).mult(a, b, a);
+        assertArrayEquals(expected, a, 0.0);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.partial;
+
+/**
+ * The element-wise loops of {@link PDOperations} over the first length
+ * coefficients of (value, partial derivatives) vectors. Implementations are
+ * found via {@link java.util.ServiceLoader}, see {@link PDKernels}. The
+ * target may alias any of the operands.
+ * 
+ * @author choeger
+ * 
+ */
+public interface PDKernel {
+
+    /**
+     * target = a + b
+     */
+    void add(double[] a, double[] b, double[] target, int length);
+
+    /**
+     * target = s * a
+     */
+    void scale(double s, double[] a, double[] target, int length);
+
+    /**
+     * The product rule: target[0] = a[0] * b[0], target[i] = a[i] * b[0] +
+     * b[i] * a[0]
+     */
+    void mult(double[] a, double[] b, double[] target, int length);
+
+    /**
+     * The chain rule: target[0] = f, target[i] = values[i] * df
+     */
+    void compose(double f, double df, double[] values, double[] target,
+            int length);
+
+    /**
+     * One term of a Leibniz (or Cauchy) sum over rows of a larger array:
+     * target[k] += s * a[i] * b[j], target[k + p] += s * (a[i] * b[j + p] +
+     * a[i + p] * b[j]) for 0 < p < length. The target row must not overlap
+     * the operand rows.
+     */
+    void multAdd(double s, double[] a, int i, double[] b, int j,
+            double[] target, int k, int length);
+}
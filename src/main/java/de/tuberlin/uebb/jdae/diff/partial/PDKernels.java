@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.partial;
+
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Selects the kernel for a given vector length. An optional kernel (e.g. the
+ * SIMD kernel of the jdae-vector module) is looked up once via
+ * {@link ServiceLoader} and used for vectors of at least
+ * {@value #DEFAULT_THRESHOLD} (or -Djdae.vector.threshold) coefficients.
+ * -Djdae.vector.disable=true forces the scalar loops.
+ * 
+ * @author choeger
+ * 
+ */
+public final class PDKernels {
+
+    private static final Logger logger = Logger.getLogger(PDKernels.class
+            .getName());
+
+    public static final int DEFAULT_THRESHOLD = 16;
+
+    public static final PDKernel SCALAR = new ScalarPDKernel();
+
+    private static final int threshold = Integer.getInteger(
+            "jdae.vector.threshold", DEFAULT_THRESHOLD);
+
+    private static final PDKernel optional = load();
+
+    private PDKernels() {
+    }
+
+    private static PDKernel load() {
+        if (Boolean.getBoolean("jdae.vector.disable"))
+            return null;
+
+        try {
+            for (PDKernel kernel : ServiceLoader.load(PDKernel.class,
+                    PDKernel.class.getClassLoader())) {
+                logger.log(Level.FINE, "Using {0} for wide vectors.", kernel
+                        .getClass().getName());
+                return kernel;
+            }
+        } catch (ServiceConfigurationError | LinkageError e) {
+            /* e.g. the vector module is present, but not enabled in the VM */
+            logger.log(Level.INFO, "Optional kernel unavailable: {0}",
+                    e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * @return true, iff an optional kernel has been found
+     */
+    public static boolean hasOptionalKernel() {
+        return optional != null;
+    }
+
+    public static PDKernel forLength(int length) {
+        if (optional != null && length >= threshold)
+            return optional;
+        return SCALAR;
+    }
+}
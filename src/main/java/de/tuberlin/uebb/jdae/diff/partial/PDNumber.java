@@ -34,7 +34,7 @@ public final class PDNumber {
 
     public PDNumber(double[] values) {
         super();
-        this.ops = new PDOperations(values.length - 1);
+        this.ops = PDOperations.get(values.length - 1);
         this.values = values;
     }
 
@@ -45,7 +45,7 @@ public final class PDNumber {
     }
 
     public PDNumber(int params) {
-        this.ops = new PDOperations(params);
+        this.ops = PDOperations.get(params);
         this.values = new double[params + 1];
     }
 
@@ -111,15 +111,13 @@ public final class PDNumber {
 
     public PDNumber mult(final double value) {
         final double[] target = new double[values.length];
-        for (int i = 0; i < target.length; i++)
-            target[i] = values[i] * value;
+        ops.scale(value, values, target);
         return new PDNumber(ops, target);
     }
 
     public PDNumber mult(final int value) {
         final double[] target = new double[values.length];
-        for (int i = 0; i < target.length; i++)
-            target[i] = values[i] * value;
+        ops.scale(value, values, target);
         return new PDNumber(ops, target);
     }
 
@@ -147,6 +145,59 @@ public final class PDNumber {
         return new PDNumber(ops, target);
     }
 
+    public PDNumber div(final PDNumber other) {
+        assert other.values.length == values.length : "Cannot divide two numbers of different dimensions!";
+        final double[] target = new double[values.length];
+        ops.div(values, other.values, target);
+        return new PDNumber(ops, target);
+    }
+
+    public PDNumber div(final double value) {
+        return mult(1.0 / value);
+    }
+
+    public PDNumber exp() {
+        final double[] target = new double[values.length];
+        ops.exp(values, target);
+        return new PDNumber(ops, target);
+    }
+
+    public PDNumber log() {
+        final double[] target = new double[values.length];
+        ops.log(values, target);
+        return new PDNumber(ops, target);
+    }
+
+    public PDNumber sqrt() {
+        final double[] target = new double[values.length];
+        ops.sqrt(values, target);
+        return new PDNumber(ops, target);
+    }
+
+    public PDNumber tan() {
+        final double[] target = new double[values.length];
+        ops.tan(values, target);
+        return new PDNumber(ops, target);
+    }
+
+    public PDNumber tanh() {
+        final double[] target = new double[values.length];
+        ops.tanh(values, target);
+        return new PDNumber(ops, target);
+    }
+
+    public PDNumber abs() {
+        final double[] target = new double[values.length];
+        ops.abs(values, target);
+        return new PDNumber(ops, target);
+    }
+
+    public PDNumber atan2(final PDNumber x) {
+        final double[] target = new double[values.length];
+        ops.atan2(values, x.values, target);
+        return new PDNumber(ops, target);
+    }
+
     public double der(int i) {
         return values[i + 1];
     }
@@ -195,6 +246,35 @@ public final class PDNumber {
         ops.pow(d, values, values);
     }
 
+    public void m_div(final double[] other) {
+        assert other.length == values.length : "Cannot divide two numbers of different dimensions!";
+        ops.div(values, other, values);
+    }
+
+    public void m_exp() {
+        ops.exp(values, values);
+    }
+
+    public void m_log() {
+        ops.log(values, values);
+    }
+
+    public void m_sqrt() {
+        ops.sqrt(values, values);
+    }
+
+    public void m_tan() {
+        ops.tan(values, values);
+    }
+
+    public void m_tanh() {
+        ops.tanh(values, values);
+    }
+
+    public void m_abs() {
+        ops.abs(values, values);
+    }
+
     public PDNumber zero() {
         return new PDNumber(ops, new double[values.length]);
     }
@@ -210,7 +290,7 @@ public final class PDNumber {
     }
 
     public PDNumber copy() {
-        return new PDNumber(Arrays.copyOf(this.values, this.values.length));
+        return new PDNumber(ops, Arrays.copyOf(this.values, this.values.length));
     }
 
 }
@@ -27,37 +27,32 @@ import org.apache.commons.math3.util.FastMath;
 public final class PDOperations {
 
     public final int params;
+    private final PDKernel kernel;
 
     public PDOperations(int params) {
         super();
         this.params = params;
+        this.kernel = PDKernels.forLength(params + 1);
     }
 
     public final void mult(final double[] a, final double[] b,
             final double[] target) {
-        final double a0 = a[0];
-        final double b0 = b[0];
-
-        target[0] = a0 * b0;
-
-        for (int i = 1; i <= params; i++) {
-            target[i] = a[i] * b0 + b[i] * a0;
-        }
+        kernel.mult(a, b, target, params + 1);
     }
 
     public final void add(final double[] a, final double[] b,
             final double[] target) {
-        for (int i = 0; i <= params; i++) {
-            target[i] = a[i] + b[i];
-        }
+        kernel.add(a, b, target, params + 1);
+    }
+
+    public final void scale(final double s, final double[] a,
+            final double[] target) {
+        kernel.scale(s, a, target, params + 1);
     }
 
     public final void compose(final double f, final double df,
             final double[] values, final double[] target) {
-        target[0] = f;
-        for (int i = 1; i <= params; i++) {
-            target[i] = values[i] * df;
-        }
+        kernel.compose(f, df, values, target, params + 1);
     }
 
     public final void sin(final double[] values, final double[] target) {
@@ -80,13 +75,177 @@ public final class PDOperations {
         compose(f, df, values, target);
     }
 
+    public final void div(final double[] a, final double[] b,
+            final double[] target) {
+        final double b0 = b[0];
+        final double q = a[0] / b0;
+        target[0] = q;
+        for (int i = 1; i <= params; i++) {
+            target[i] = (a[i] - q * b[i]) / b0;
+        }
+    }
+
+    public final void exp(final double[] values, final double[] target) {
+        final double e = FastMath.exp(values[0]);
+        compose(e, e, values, target);
+    }
+
+    public final void log(final double[] values, final double[] target) {
+        compose(FastMath.log(values[0]), 1.0 / values[0], values, target);
+    }
+
+    public final void sqrt(final double[] values, final double[] target) {
+        final double s = FastMath.sqrt(values[0]);
+        compose(s, 0.5 / s, values, target);
+    }
+
+    public final void tan(final double[] values, final double[] target) {
+        final double t = FastMath.tan(values[0]);
+        compose(t, 1.0 + t * t, values, target);
+    }
+
+    public final void tanh(final double[] values, final double[] target) {
+        final double t = FastMath.tanh(values[0]);
+        compose(t, 1.0 - t * t, values, target);
+    }
+
+    public final void abs(final double[] values, final double[] target) {
+        final double s = values[0] < 0 ? -1.0 : 1.0;
+        compose(s * values[0], s, values, target);
+    }
+
+    public final void atan2(final double[] y, final double[] x,
+            final double[] target) {
+        final double y0 = y[0];
+        final double x0 = x[0];
+        final double r = x0 * x0 + y0 * y0;
+        target[0] = FastMath.atan2(y0, x0);
+        for (int i = 1; i <= params; i++) {
+            target[i] = (x0 * y[i] - y0 * x[i]) / r;
+        }
+    }
+
+    private static final int[] NO_INDICES = new int[0];
+    private static final double[] NO_DERIVATIVES = new double[0];
+
+    public final SparsePDNumber add(final SparsePDNumber a,
+            final SparsePDNumber b) {
+        final int n = unionSize(a.indices, b.indices);
+        final int[] indices = new int[n];
+        final double[] derivatives = new double[n];
+
+        int i = 0, j = 0, k = 0;
+        while (i < a.indices.length || j < b.indices.length) {
+            final int ai = i < a.indices.length ? a.indices[i]
+                    : Integer.MAX_VALUE;
+            final int bj = j < b.indices.length ? b.indices[j]
+                    : Integer.MAX_VALUE;
+            if (ai < bj) {
+                indices[k] = ai;
+                derivatives[k++] = a.derivatives[i++];
+            } else if (bj < ai) {
+                indices[k] = bj;
+                derivatives[k++] = b.derivatives[j++];
+            } else {
+                indices[k] = ai;
+                derivatives[k++] = a.derivatives[i++] + b.derivatives[j++];
+            }
+        }
+
+        return new SparsePDNumber(this, a.value + b.value, indices,
+                derivatives);
+    }
+
+    public final SparsePDNumber mult(final SparsePDNumber a,
+            final SparsePDNumber b) {
+        final int n = unionSize(a.indices, b.indices);
+        final int[] indices = new int[n];
+        final double[] derivatives = new double[n];
+        final double a0 = a.value;
+        final double b0 = b.value;
+
+        int i = 0, j = 0, k = 0;
+        while (i < a.indices.length || j < b.indices.length) {
+            final int ai = i < a.indices.length ? a.indices[i]
+                    : Integer.MAX_VALUE;
+            final int bj = j < b.indices.length ? b.indices[j]
+                    : Integer.MAX_VALUE;
+            if (ai < bj) {
+                indices[k] = ai;
+                derivatives[k++] = a.derivatives[i++] * b0;
+            } else if (bj < ai) {
+                indices[k] = bj;
+                derivatives[k++] = b.derivatives[j++] * a0;
+            } else {
+                indices[k] = ai;
+                derivatives[k++] = a.derivatives[i++] * b0
+                        + b.derivatives[j++] * a0;
+            }
+        }
+
+        return new SparsePDNumber(this, a0 * b0, indices, derivatives);
+    }
+
+    public final SparsePDNumber compose(final double f, final double df,
+            final SparsePDNumber a) {
+        final double[] derivatives = new double[a.derivatives.length];
+        for (int k = 0; k < derivatives.length; k++)
+            derivatives[k] = a.derivatives[k] * df;
+        return new SparsePDNumber(this, f, a.indices, derivatives);
+    }
+
+    public final SparsePDNumber pow(int n, final SparsePDNumber a) {
+        return compose(FastMath.pow(a.value, n),
+                n * FastMath.pow(a.value, n - 1), a);
+    }
+
+    public final SparsePDNumber pow(double n, final SparsePDNumber a) {
+        return compose(FastMath.pow(a.value, n),
+                n * FastMath.pow(a.value, n - 1), a);
+    }
+
+    private static int unionSize(final int[] a, final int[] b) {
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j])
+                i++;
+            else if (b[j] < a[i])
+                j++;
+            else {
+                i++;
+                j++;
+            }
+            n++;
+        }
+        return n + (a.length - i) + (b.length - j);
+    }
+
+    public SparsePDNumber sparseConstant(double d) {
+        return new SparsePDNumber(this, d, NO_INDICES, NO_DERIVATIVES);
+    }
+
+    public SparsePDNumber sparseVariable(int i, double d) {
+        return new SparsePDNumber(this, d, new int[] { i },
+                new double[] { 1.0 });
+    }
+
     public PDNumber constant(double d) {
         final double[] values = new double[params + 1];
         values[0] = d;
-        return new PDNumber(values);
+        return new PDNumber(this, values);
+    }
+
+    /* operations are stateless, so the common sizes can be shared */
+    private static final PDOperations[] shared = new PDOperations[129];
+
+    static {
+        for (int i = 0; i < shared.length; i++)
+            shared[i] = new PDOperations(i);
     }
 
     public static PDOperations get(int params) {
+        if (params < shared.length)
+            return shared[params];
         return new PDOperations(params);
     }
 
@@ -94,7 +253,7 @@ public final class PDOperations {
         final double[] values = new double[params + 1];
         values[0] = d;
         values[i + 1] = 1.0;
-        return new PDNumber(values);
+        return new PDNumber(this, values);
     }
 
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.partial;
+
+/**
+ * The plain loops, used whenever no faster kernel is available.
+ * 
+ * @author choeger
+ * 
+ */
+public final class ScalarPDKernel implements PDKernel {
+
+    @Override
+    public void add(final double[] a, final double[] b, final double[] target,
+            int length) {
+        for (int i = 0; i < length; i++) {
+            target[i] = a[i] + b[i];
+        }
+    }
+
+    @Override
+    public void scale(final double s, final double[] a, final double[] target,
+            int length) {
+        for (int i = 0; i < length; i++) {
+            target[i] = s * a[i];
+        }
+    }
+
+    @Override
+    public void mult(final double[] a, final double[] b, final double[] target,
+            int length) {
+        final double a0 = a[0];
+        final double b0 = b[0];
+
+        target[0] = a0 * b0;
+
+        for (int i = 1; i < length; i++) {
+            target[i] = a[i] * b0 + b[i] * a0;
+        }
+    }
+
+    @Override
+    public void compose(final double f, final double df,
+            final double[] values, final double[] target, int length) {
+        target[0] = f;
+        for (int i = 1; i < length; i++) {
+            target[i] = values[i] * df;
+        }
+    }
+
+    @Override
+    public void multAdd(final double s, final double[] a, int i,
+            final double[] b, int j, final double[] target, int k, int length) {
+        final double a0 = a[i];
+        final double b0 = b[j];
+        target[k] += s * a0 * b0;
+        for (int p = 1; p < length; p++) {
+            target[k + p] += s * (a0 * b[j + p] + a[i + p] * b0);
+        }
+    }
+}
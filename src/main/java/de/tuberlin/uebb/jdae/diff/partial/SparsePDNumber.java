@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.partial;
+
+import java.util.Arrays;
+
+/**
+ * A {@link PDNumber} that only stores its non-zero partial derivatives as
+ * (sorted) index/value pairs. Operations only touch the union of the non-zero
+ * indices of their operands.
+ * 
+ * @author choeger
+ * 
+ */
+public final class SparsePDNumber {
+
+    public final double value;
+    public final int[] indices;
+    public final double[] derivatives;
+    public final PDOperations ops;
+
+    public SparsePDNumber(PDOperations ops, double value, int[] indices,
+            double[] derivatives) {
+        assert indices.length == derivatives.length : "Every index needs exactly one derivative!";
+        this.ops = ops;
+        this.value = value;
+        this.indices = indices;
+        this.derivatives = derivatives;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        long temp = Double.doubleToLongBits(value);
+        result = prime * result + (int) (temp ^ (temp >>> 32));
+        result = prime * result + Arrays.hashCode(indices);
+        result = prime * result + Arrays.hashCode(derivatives);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        SparsePDNumber other = (SparsePDNumber) obj;
+        if (Double.doubleToLongBits(value) != Double
+                .doubleToLongBits(other.value))
+            return false;
+        if (!Arrays.equals(indices, other.indices))
+            return false;
+        if (!Arrays.equals(derivatives, other.derivatives))
+            return false;
+        return true;
+    }
+
+    public SparsePDNumber add(final SparsePDNumber other) {
+        return ops.add(this, other);
+    }
+
+    public SparsePDNumber add(final double value) {
+        return new SparsePDNumber(ops, this.value + value, indices,
+                derivatives);
+    }
+
+    public SparsePDNumber mult(final SparsePDNumber other) {
+        return ops.mult(this, other);
+    }
+
+    public SparsePDNumber mult(final double value) {
+        return ops.compose(this.value * value, value, this);
+    }
+
+    public SparsePDNumber sin() {
+        return ops.compose(Math.sin(value), Math.cos(value), this);
+    }
+
+    public SparsePDNumber cos() {
+        return ops.compose(Math.cos(value), -Math.sin(value), this);
+    }
+
+    public SparsePDNumber pow(int n) {
+        return ops.pow(n, this);
+    }
+
+    public SparsePDNumber pow(double n) {
+        return ops.pow(n, this);
+    }
+
+    public SparsePDNumber subtract(final SparsePDNumber other) {
+        return add(other.mult(-1.0));
+    }
+
+    public SparsePDNumber subtract(final double value) {
+        return add(-value);
+    }
+
+    public double der(int i) {
+        final int k = Arrays.binarySearch(indices, i);
+        return k >= 0 ? derivatives[k] : 0.0;
+    }
+
+    public int nonZeros() {
+        return indices.length;
+    }
+
+    /**
+     * Write the gradient into a dense row, leaving all other entries untouched
+     */
+    public void scatter(final double[] row) {
+        for (int k = 0; k < indices.length; k++)
+            row[indices[k]] = derivatives[k];
+    }
+
+    public PDNumber toDense() {
+        final double[] values = new double[ops.params + 1];
+        values[0] = value;
+        for (int k = 0; k < indices.length; k++)
+            values[indices[k] + 1] = derivatives[k];
+        return new PDNumber(ops, values);
+    }
+
+    public String toString() {
+        final StringBuilder b = new StringBuilder();
+        b.append(value);
+        b.append(" {");
+        for (int k = 0; k < indices.length; k++) {
+            if (k > 0)
+                b.append(", ");
+            b.append(indices[k]);
+            b.append(": ");
+            b.append(derivatives[k]);
+        }
+        b.append("}");
+        return b.toString();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.util.Arrays;
+
+/**
+ * A total-derivative number stored in one contiguous array. Coefficient
+ * (dt, j) - the partial derivative w.r.t. parameter j - 1 of the dt-th total
+ * derivative (j = 0 being the value itself) - lives at
+ * {@code dt * ops.width + j}. Compared to {@link TDNumber}, this avoids one
+ * {@link de.tuberlin.uebb.jdae.diff.partial.PDNumber} object and array per
+ * derivative order.
+ * 
+ * @author choeger
+ * 
+ */
+public final class FlatTDNumber {
+
+    public final double[] values;
+    public final TDOperations ops;
+
+    public FlatTDNumber(int order, int params) {
+        this.ops = TDOperations.getInstance(order, params);
+        this.values = new double[ops.size];
+    }
+
+    public FlatTDNumber(TDOperations ops, double[] values) {
+        assert values.length == ops.size : "Number does not fit its operations!";
+        this.ops = ops;
+        this.values = values;
+    }
+
+    public FlatTDNumber(TDNumber number) {
+        this.ops = number.ops;
+        this.values = new double[ops.size];
+        ops.flatten(number.values, values);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + Arrays.hashCode(values);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        FlatTDNumber other = (FlatTDNumber) obj;
+        if (!Arrays.equals(values, other.values))
+            return false;
+        return true;
+    }
+
+    public FlatTDNumber add(final FlatTDNumber other) {
+        assert other.values.length == values.length : "Cannot add two numbers of different dimensions!";
+        final double[] target = new double[values.length];
+        ops.add(values, other.values, target);
+        return new FlatTDNumber(ops, target);
+    }
+
+    public FlatTDNumber add(final double value) {
+        final double[] target = values.clone();
+        target[0] += value;
+        return new FlatTDNumber(ops, target);
+    }
+
+    public FlatTDNumber add(final int value) {
+        final double[] target = values.clone();
+        target[0] += value;
+        return new FlatTDNumber(ops, target);
+    }
+
+    public FlatTDNumber mult(final FlatTDNumber other) {
+        assert other.values.length == values.length : "Cannot multiply two numbers of different dimensions!";
+        final double[] target = new double[values.length];
+        ops.mult(values, other.values, target);
+        return new FlatTDNumber(ops, target);
+    }
+
+    public FlatTDNumber mult(final double value) {
+        final double[] target = new double[values.length];
+        for (int i = 0; i < target.length; i++)
+            target[i] = values[i] * value;
+        return new FlatTDNumber(ops, target);
+    }
+
+    public FlatTDNumber mult(final int value) {
+        final double[] target = new double[values.length];
+        for (int i = 0; i < target.length; i++)
+            target[i] = values[i] * value;
+        return new FlatTDNumber(ops, target);
+    }
+
+    public FlatTDNumber sin() {
+        final double[] target = new double[values.length];
+        ops.sin(values, target);
+        return new FlatTDNumber(ops, target);
+    }
+
+    public FlatTDNumber cos() {
+        final double[] target = new double[values.length];
+        ops.cos(values, target);
+        return new FlatTDNumber(ops, target);
+    }
+
+    public FlatTDNumber pow(int n) {
+        final double[] target = new double[values.length];
+        ops.pow(n, values, target);
+        return new FlatTDNumber(ops, target);
+    }
+
+    public FlatTDNumber pow(double n) {
+        final double[] target = new double[values.length];
+        ops.pow(n, values, target);
+        return new FlatTDNumber(ops, target);
+    }
+
+    public FlatTDNumber subtract(double c) {
+        return add(-c);
+    }
+
+    public FlatTDNumber subtract(FlatTDNumber o) {
+        return add(o.mult(-1));
+    }
+
+    public FlatTDNumber one() {
+        return ops.flatConstant(1.0);
+    }
+
+    public FlatTDNumber zero() {
+        return ops.flatConstant(0.0);
+    }
+
+    public double der(final int dt) {
+        return values[dt * ops.width];
+    }
+
+    public double der(int dt, int idx) {
+        return values[dt * ops.width + idx + 1];
+    }
+
+    public double getValue() {
+        return values[0];
+    }
+
+    public FlatTDNumber copy() {
+        return new FlatTDNumber(ops, values.clone());
+    }
+
+    public TDNumber toTDNumber() {
+        return new TDNumber(ops, ops.unflatten(values));
+    }
+
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.util.Arrays;
+
+import de.tuberlin.uebb.jdae.diff.partial.PDNumber;
+
+/**
+ * A bump-pointer allocator for temporary {@link TDNumber}s of a single shape.
+ * Numbers drawn from an arena allocate the results of their operations from
+ * the same arena, so an evaluation that starts from arena numbers does not
+ * touch the heap once the slab has grown to its working size.
+ * 
+ * All numbers handed out become invalid on {@link #reset()}. Numbers that
+ * need to survive a reset have to be {@link TDNumber#copy() copied}.
+ * 
+ * An arena may carry a {@link TDCache}, then operations on its numbers are
+ * hash-consed. The cache has to be cleared together with the arena.
+ * 
+ * @author choeger
+ * 
+ */
+public final class TDArena {
+
+    public final TDOperations ops;
+
+    /* shared results of the operations on this arena's numbers, if any */
+    final TDCache cache;
+
+    private TDNumber[] slab;
+    private int next;
+
+    public TDArena(final TDOperations ops) {
+        this(ops, 16);
+    }
+
+    public TDArena(final TDOperations ops, final TDCache cache) {
+        this(ops, 16, cache);
+    }
+
+    public TDArena(final TDOperations ops, int capacity) {
+        this(ops, capacity, null);
+    }
+
+    public TDArena(final TDOperations ops, int capacity, final TDCache cache) {
+        this.ops = ops;
+        this.cache = cache;
+        this.slab = new TDNumber[Math.max(1, capacity)];
+        fill(0);
+    }
+
+    private void fill(int from) {
+        for (int i = from; i < slab.length; ++i) {
+            final PDNumber[] values = new PDNumber[ops.order + 1];
+            for (int j = 0; j < values.length; ++j)
+                values[j] = new PDNumber(ops.subOps, new double[ops.width]);
+            slab[i] = new TDNumber(this, values);
+        }
+    }
+
+    /**
+     * @return a number of the arena's shape with undefined coefficients. Every
+     *         operation of {@link TDOperations} overwrites all coefficients of
+     *         its target.
+     */
+    public TDNumber allocate() {
+        if (next == slab.length) {
+            slab = Arrays.copyOf(slab, 2 * slab.length);
+            fill(next);
+        }
+        return TDTape.constant(slab[next++]);
+    }
+
+    public TDNumber zero() {
+        final TDNumber n = allocate();
+        for (PDNumber pd : n.values)
+            Arrays.fill(pd.values, 0.0);
+        return n;
+    }
+
+    public TDNumber constant(double d, double... dt) {
+        final TDNumber n = zero();
+        n.values[0].values[0] = d;
+        for (int i = 0; i < Math.min(dt.length, ops.order); ++i)
+            n.values[i + 1].values[0] = dt[i];
+        return n;
+    }
+
+    /**
+     * @see TDOperations#constantVar(int, double...)
+     */
+    public TDNumber constantVar(int offset, double... dt) {
+        final TDNumber n = zero();
+        for (int i = 0; i < Math.min(dt.length - offset, ops.order + 1); ++i)
+            n.values[i].values[0] = dt[i + offset];
+        return n;
+    }
+
+    public TDNumber copyOf(final TDNumber number) {
+        final TDNumber n = allocate();
+        for (int i = 0; i <= ops.order; ++i)
+            System.arraycopy(number.values[i].values, 0, n.values[i].values,
+                    0, ops.width);
+        return n;
+    }
+
+    /**
+     * Hand out all numbers again, invalidating the previous ones.
+     */
+    public void reset() {
+        next = 0;
+    }
+
+    public int used() {
+        return next;
+    }
+
+    public int capacity() {
+        return slab.length;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Hash-consing of {@link TDNumber} operations: a result is keyed on the
+ * operation and the identity of its operands, so the same expression built
+ * twice from the same numbers yields the same number. Loaded variables are
+ * shared the same way, which makes identical subexpressions of different
+ * equations identical objects.
+ * 
+ * A cache is attached to the {@link TDArena}s its numbers are drawn from and
+ * has to be {@link #clear() cleared} whenever these arenas are reset. Shared
+ * numbers must not be mutated, see {@link TDRegister}.
+ * 
+ * @author choeger
+ * 
+ */
+public final class TDCache {
+
+    static final int ADD = 0;
+    static final int ADD_CONST = 1;
+    static final int MULT = 2;
+    static final int SCALE = 3;
+    static final int SIN = 4;
+    static final int COS = 5;
+    static final int POW_INT = 6;
+    static final int POW = 7;
+    static final int DIV = 8;
+    static final int EXP = 9;
+    static final int LOG = 10;
+    static final int SQRT = 11;
+    static final int TAN = 12;
+    static final int TANH = 13;
+    static final int ABS = 14;
+    static final int ATAN2 = 15;
+
+    private final Map<Key, TDNumber> operations = Maps.newHashMap();
+    private final Map<Load, TDNumber> loads = Maps.newHashMap();
+
+    private int hits;
+    private int misses;
+
+    /**
+     * @return the result of the given operation, if it has been computed
+     *         since the last {@link #clear()}
+     */
+    TDNumber get(Key key) {
+        final TDNumber n = operations.get(key);
+        if (n == null)
+            misses++;
+        else
+            hits++;
+        return n;
+    }
+
+    TDNumber put(Key key, TDNumber result) {
+        operations.put(key, result);
+        return result;
+    }
+
+    /**
+     * @return the number loaded for the given variable into a view of the
+     *         given operations, if any
+     */
+    public TDNumber load(final Object variable, final TDOperations ops) {
+        final TDNumber n = loads.get(new Load(variable, ops));
+        if (n == null)
+            misses++;
+        else
+            hits++;
+        return n;
+    }
+
+    public TDNumber store(final Object variable, final TDOperations ops,
+            final TDNumber number) {
+        loads.put(new Load(variable, ops), number);
+        return number;
+    }
+
+    /**
+     * Forget all shared numbers, e.g. before their arenas get reset.
+     */
+    public void clear() {
+        operations.clear();
+        loads.clear();
+    }
+
+    public int size() {
+        return operations.size() + loads.size();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public int hits() {
+        return hits;
+    }
+
+    public int misses() {
+        return misses;
+    }
+
+    /**
+     * Operation key, operands are compared by identity. The operands of
+     * additions and multiplications are ordered, so both argument orders
+     * share a result.
+     */
+    static final class Key {
+        final int op;
+        final TDNumber a;
+        final TDNumber b;
+        final double p;
+
+        Key(int op, TDNumber a, TDNumber b, double p) {
+            this.op = op;
+            if (b != null && (op == ADD || op == MULT)
+                    && System.identityHashCode(b) < System.identityHashCode(a)) {
+                this.a = b;
+                this.b = a;
+            } else {
+                this.a = a;
+                this.b = b;
+            }
+            this.p = p;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 * op + System.identityHashCode(a);
+            result = 31 * result + System.identityHashCode(b);
+            final long bits = Double.doubleToLongBits(p);
+            return 31 * result + (int) (bits ^ (bits >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            final Key other = (Key) obj;
+            return op == other.op && a == other.a && b == other.b
+                    && Double.doubleToLongBits(p) == Double
+                            .doubleToLongBits(other.p);
+        }
+    }
+
+    /**
+     * Load key, variables are compared by equality, operations by identity.
+     */
+    private static final class Load {
+        final Object variable;
+        final TDOperations ops;
+
+        Load(Object variable, TDOperations ops) {
+            this.variable = variable;
+            this.ops = ops;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * variable.hashCode() + System.identityHashCode(ops);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Load))
+                return false;
+            final Load other = (Load) obj;
+            return ops == other.ops && variable.equals(other.variable);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import de.tuberlin.uebb.jdae.diff.partial.PDNumber;
+
+/**
+ * The multiplication and composition contract of {@link TDOperations}, both
+ * on the object layout and on the flat layout of {@link FlatTDNumber}.
+ * Targets are completely overwritten and must not alias an operand. In the
+ * object layout, the target needs to be filled with {@link PDNumber}s
+ * already.
+ * 
+ * @author choeger
+ * 
+ */
+public interface TDKernel {
+
+    void mult(double[] a, double[] b, double[] target);
+
+    void compose(double[] f, double[] a, double[] target);
+
+    void mult(PDNumber[] a, PDNumber[] b, PDNumber[] target);
+
+    void compose(double[] f, PDNumber[] a, PDNumber[] target);
+
+}
@@ -0,0 +1,462 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Compiles the (flat) multiplication and composition tables of a
+ * {@link TDOperations} instance into a class of straight-line code
+ * implementing {@link TDKernel}. The class file is written directly (version
+ * 49, so no stack map frames are needed for branch-free code) and defined in
+ * its own class loader, so it can be collected together with its operations.
+ * 
+ * @author choeger
+ * 
+ */
+final class TDKernelCompiler {
+
+    private static final Logger logger = Logger
+            .getLogger(TDKernelCompiler.class.getName());
+
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    private static final String PACKAGE = "de/tuberlin/uebb/jdae/diff/total/generated/";
+    private static final String KERNEL = "de/tuberlin/uebb/jdae/diff/total/TDKernel";
+    private static final String PDNUMBER = "de/tuberlin/uebb/jdae/diff/partial/PDNumber";
+
+    private static final String FLAT_MULT = "([D[D[D)V";
+    private static final String FLAT_COMP = "([D[D[D)V";
+    private static final String PD_MULT = "([L" + PDNUMBER + ";[L" + PDNUMBER
+            + ";[L" + PDNUMBER + ";)V";
+    private static final String PD_COMP = "([D[L" + PDNUMBER + ";[L"
+            + PDNUMBER + ";)V";
+
+    /* JVM opcodes */
+    private static final int ALOAD = 0x19, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b,
+            ALOAD_2 = 0x2c, ALOAD_3 = 0x2d, ASTORE = 0x3a, AALOAD = 0x32,
+            DALOAD = 0x31, DASTORE = 0x52, DMUL = 0x6b, DADD = 0x63,
+            DCONST_0 = 0x0e, ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11,
+            LDC_W = 0x13, LDC2_W = 0x14, GETFIELD = 0xb4,
+            INVOKESPECIAL = 0xb7, RETURN = 0xb1;
+
+    /*
+     * class-file limits: 64k of code per method, 64k constant-pool slots
+     * (addressed by u2 indices) and 256 locals without wide instructions
+     */
+    private static final int MAX_CODE = 65535;
+    private static final int MAX_POOL = 65535;
+    private static final int MAX_LOCAL = 255;
+
+    private static final class KernelLoader extends ClassLoader {
+        KernelLoader() {
+            super(TDKernel.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] code) {
+            return defineClass(name, code, 0, code.length);
+        }
+    }
+
+    /*
+     * The tables exceed a limit of the class-file format. Every index is
+     * checked while emitting, so an index never wraps around silently.
+     */
+    private static final class CodeTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final TDOperations ops;
+    private final TDOperations.Composition comp;
+    private final Map<String, Integer> constants = Maps.newHashMap();
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private int poolSize = 1;
+
+    private TDKernelCompiler(TDOperations ops) {
+        this.ops = ops;
+        this.comp = ops.composition();
+    }
+
+    /**
+     * @return a compiled kernel for the given operations or null, if the
+     *         tables are too large for straight-line code.
+     */
+    static TDKernel compile(final TDOperations ops) {
+        final String name = String.format("%sKernel_%d_%d_%d", PACKAGE,
+                ops.order, ops.subOps.params, counter.incrementAndGet());
+        try {
+            final byte[] code = new TDKernelCompiler(ops).emit(name);
+            final Class<?> kernel = new KernelLoader().define(
+                    name.replace('/', '.'), code);
+            return (TDKernel) kernel.getDeclaredConstructor().newInstance();
+        } catch (CodeTooLargeException e) {
+            logger.log(Level.FINE, "Tables of {0} are too large to compile.",
+                    ops);
+            return null;
+        } catch (IOException | ReflectiveOperationException | LinkageError e) {
+            logger.log(Level.WARNING, "Could not compile kernel for " + ops,
+                    e);
+            return null;
+        }
+    }
+
+    private byte[] emit(final String name) throws IOException {
+        final int thisClass = classRef(name);
+        final int superClass = classRef("java/lang/Object");
+        final int kernel = classRef(KERNEL);
+        final int objectInit = methodRef("java/lang/Object", "<init>", "()V");
+        final int code = utf8("Code");
+
+        final byte[][] methods = new byte[][] {
+                method(utf8("<init>"), utf8("()V"), code, 1, 1,
+                        new byte[] { ALOAD_0, (byte) INVOKESPECIAL,
+                                (byte) (objectInit >> 8), (byte) objectInit,
+                                (byte) RETURN }),
+                method(utf8("mult"), utf8(FLAT_MULT), code, 10, 4,
+                        flatMult()),
+                method(utf8("compose"), utf8(FLAT_COMP), code, 10, 4,
+                        flatCompose()),
+                method(utf8("mult"), utf8(PD_MULT), code, 10,
+                        4 + 3 * (ops.order + 1), pdMult()),
+                method(utf8("compose"), utf8(PD_COMP), code, 10,
+                        4 + 2 * (ops.order + 1), pdCompose()) };
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(49);
+        out.writeShort(poolSize);
+        poolOut.flush();
+        pool.writeTo(out);
+        out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(kernel);
+        out.writeShort(0); // fields
+        out.writeShort(methods.length);
+        for (byte[] m : methods)
+            out.write(m);
+        out.writeShort(0); // attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private byte[] method(int name, int descriptor, int codeAttribute,
+            int maxStack, int maxLocals, byte[] code) throws IOException {
+        if (code.length > MAX_CODE || maxLocals > MAX_LOCAL + 1)
+            throw new CodeTooLargeException();
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(0x0001); // public, the class itself is final
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeAttribute);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /*
+     * Operand access: in the flat layout, an operand is an array in a local
+     * variable, indexed by the flat offset. In the object layout, the
+     * values-arrays of every row are cached in locals by the prologue.
+     */
+
+    private void flatLoad(DataOutputStream out, int local, int index)
+            throws IOException {
+        aload(out, local);
+        iconst(out, index);
+        out.writeByte(DALOAD);
+    }
+
+    private void rowLoad(DataOutputStream out, int firstRowLocal, int index)
+            throws IOException {
+        aload(out, firstRowLocal + index / ops.width);
+        iconst(out, index % ops.width);
+        out.writeByte(DALOAD);
+    }
+
+    private void cacheRows(DataOutputStream out, int array, int firstRowLocal)
+            throws IOException {
+        final int values = fieldRef(PDNUMBER, "values", "[D");
+        for (int r = 0; r <= ops.order; r++) {
+            aload(out, array);
+            iconst(out, r);
+            out.writeByte(AALOAD);
+            out.writeByte(GETFIELD);
+            out.writeShort(values);
+            out.writeByte(ASTORE);
+            local(out, firstRowLocal + r);
+        }
+    }
+
+    private byte[] flatMult() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        for (int t = 0; t < ops.size; ++t) {
+            out.writeByte(ALOAD_3);
+            iconst(out, t);
+            for (int k = ops.flatMultStart[t]; k < ops.flatMultStart[t + 1]; ++k) {
+                flatLoad(out, 1, ops.flatMultLhs[k]);
+                flatLoad(out, 2, ops.flatMultRhs[k]);
+                multTerm(out, t, k);
+            }
+            if (ops.flatMultStart[t] == ops.flatMultStart[t + 1])
+                out.writeByte(DCONST_0);
+            out.writeByte(DASTORE);
+            checkSize(bytes);
+        }
+        out.writeByte(RETURN);
+        return bytes.toByteArray();
+    }
+
+    private byte[] pdMult() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final int rows = ops.order + 1;
+
+        cacheRows(out, 1, 4);
+        cacheRows(out, 2, 4 + rows);
+        cacheRows(out, 3, 4 + 2 * rows);
+
+        for (int t = 0; t < ops.size; ++t) {
+            aload(out, 4 + 2 * rows + t / ops.width);
+            iconst(out, t % ops.width);
+            for (int k = ops.flatMultStart[t]; k < ops.flatMultStart[t + 1]; ++k) {
+                rowLoad(out, 4, ops.flatMultLhs[k]);
+                rowLoad(out, 4 + rows, ops.flatMultRhs[k]);
+                multTerm(out, t, k);
+            }
+            if (ops.flatMultStart[t] == ops.flatMultStart[t + 1])
+                out.writeByte(DCONST_0);
+            out.writeByte(DASTORE);
+            checkSize(bytes);
+        }
+        out.writeByte(RETURN);
+        return bytes.toByteArray();
+    }
+
+    /* give up as soon as the code cannot fit into a method any more */
+    private static void checkSize(final ByteArrayOutputStream code)
+            throws CodeTooLargeException {
+        if (code.size() > MAX_CODE)
+            throw new CodeTooLargeException();
+    }
+
+    private void multTerm(DataOutputStream out, int t, int k)
+            throws IOException {
+        out.writeByte(DMUL);
+        factor(out, ops.flatMultFactor[k]);
+        if (k > ops.flatMultStart[t])
+            out.writeByte(DADD);
+    }
+
+    private byte[] flatCompose() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        for (int t = 0; t < ops.size; ++t) {
+            out.writeByte(ALOAD_3);
+            iconst(out, t);
+            composeSum(out, t, false, 0);
+            out.writeByte(DASTORE);
+            checkSize(bytes);
+        }
+        out.writeByte(RETURN);
+        return bytes.toByteArray();
+    }
+
+    private byte[] pdCompose() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final int rows = ops.order + 1;
+
+        cacheRows(out, 2, 4);
+        cacheRows(out, 3, 4 + rows);
+
+        for (int t = 0; t < ops.size; ++t) {
+            aload(out, 4 + rows + t / ops.width);
+            iconst(out, t % ops.width);
+            composeSum(out, t, true, 4);
+            out.writeByte(DASTORE);
+            checkSize(bytes);
+        }
+        out.writeByte(RETURN);
+        return bytes.toByteArray();
+    }
+
+    private void composeSum(DataOutputStream out, int t, boolean rows,
+            int firstRowLocal) throws IOException {
+        if (comp.start[t] == comp.start[t + 1]) {
+            out.writeByte(DCONST_0);
+            return;
+        }
+
+        for (int k = comp.start[t]; k < comp.start[t + 1]; ++k) {
+            flatLoad(out, 1, comp.order[k]);
+            factor(out, comp.factor[k]);
+            for (int l = comp.keyStart[k]; l < comp.keyStart[k + 1]; ++l) {
+                if (rows)
+                    rowLoad(out, firstRowLocal, comp.keys[l]);
+                else
+                    flatLoad(out, 2, comp.keys[l]);
+                out.writeByte(DMUL);
+            }
+            if (k > comp.start[t])
+                out.writeByte(DADD);
+        }
+    }
+
+    private void factor(DataOutputStream out, double factor)
+            throws IOException {
+        if (factor != 1.0) {
+            final int c = doubleConstant(factor);
+            out.writeByte(LDC2_W);
+            out.writeShort(c);
+            out.writeByte(DMUL);
+        }
+    }
+
+    private void aload(DataOutputStream out, int local) throws IOException {
+        switch (local) {
+        case 1:
+            out.writeByte(ALOAD_1);
+            break;
+        case 2:
+            out.writeByte(ALOAD_2);
+            break;
+        case 3:
+            out.writeByte(ALOAD_3);
+            break;
+        default:
+            out.writeByte(ALOAD);
+            local(out, local);
+        }
+    }
+
+    private static void local(DataOutputStream out, int local)
+            throws IOException {
+        if (local > MAX_LOCAL)
+            throw new CodeTooLargeException();
+        out.writeByte(local);
+    }
+
+    private void iconst(DataOutputStream out, int i) throws IOException {
+        if (i <= 5) {
+            out.writeByte(ICONST_0 + i);
+        } else if (i < 128) {
+            out.writeByte(BIPUSH);
+            out.writeByte(i);
+        } else if (i < 32768) {
+            out.writeByte(SIPUSH);
+            out.writeShort(i);
+        } else {
+            out.writeByte(LDC_W);
+            out.writeShort(intConstant(i));
+        }
+    }
+
+    /* constant pool */
+
+    private int constant(String key, int slots, int tag, Object value)
+            throws IOException {
+        final Integer known = constants.get(key);
+        if (known != null)
+            return known;
+        if (poolSize + slots > MAX_POOL)
+            throw new CodeTooLargeException();
+
+        poolOut.writeByte(tag);
+        if (value instanceof String)
+            poolOut.writeUTF((String) value);
+        else if (value instanceof Double)
+            poolOut.writeDouble((Double) value);
+        else if (value instanceof Integer)
+            poolOut.writeInt((Integer) value);
+        else {
+            final int[] refs = (int[]) value;
+            for (int ref : refs)
+                poolOut.writeShort(ref);
+        }
+
+        final int index = poolSize;
+        poolSize += slots;
+        constants.put(key, index);
+        return index;
+    }
+
+    private int utf8(String s) throws IOException {
+        return constant("U" + s, 1, 1, s);
+    }
+
+    private int intConstant(int i) throws IOException {
+        return constant("I" + i, 1, 3, i);
+    }
+
+    private int doubleConstant(double d) throws IOException {
+        return constant("D" + d, 2, 6, d);
+    }
+
+    private int classRef(String name) throws IOException {
+        final int n = utf8(name);
+        return constant("C" + name, 1, 7, new int[] { n });
+    }
+
+    private int nameAndType(String name, String type) throws IOException {
+        final int n = utf8(name);
+        final int t = utf8(type);
+        return constant("N" + name + ":" + type, 1, 12, new int[] { n, t });
+    }
+
+    private int methodRef(String owner, String name, String type)
+            throws IOException {
+        final int c = classRef(owner);
+        final int nt = nameAndType(name, type);
+        return constant("M" + owner + "." + name + type, 1, 10, new int[] {
+                c, nt });
+    }
+
+    private int fieldRef(String owner, String name, String type)
+            throws IOException {
+        final int c = classRef(owner);
+        final int nt = nameAndType(name, type);
+        return constant("F" + owner + "." + name + type, 1, 9, new int[] { c,
+                nt });
+    }
+}
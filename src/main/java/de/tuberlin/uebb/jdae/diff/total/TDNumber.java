@@ -27,9 +27,17 @@ public final class TDNumber {
     public final PDNumber[] values;
     public final TDOperations ops;
 
+    /* the arena results are allocated from, or null for the heap */
+    final TDArena arena;
+
+    /* reverse-mode recording of values, see TDTape */
+    TDTape tape;
+    int node = -1;
+
     public TDNumber(int order, int params) {
         this.values = new PDNumber[order + 1];
         this.ops = TDOperations.getInstance(order, params);
+        this.arena = null;
         for (int i = 0; i <= order; i++)
             values[i] = new PDNumber(params);
     }
@@ -39,11 +47,52 @@ public final class TDNumber {
         this.values = values;
         this.ops = TDOperations.getInstance(values.length - 1,
                 values[0].values.length - 1);
+        this.arena = null;
     }
 
     public TDNumber(TDOperations ops, PDNumber[] values) {
         this.ops = ops;
         this.values = values;
+        this.arena = null;
+    }
+
+    TDNumber(TDArena arena, PDNumber[] values) {
+        this.ops = arena.ops;
+        this.values = values;
+        this.arena = arena;
+    }
+
+    /*
+     * hash-consing, see TDCache: the key of an operation, if this number is
+     * drawn from a caching arena and not recorded on a tape
+     */
+    private TDCache.Key key(int op, TDNumber other, double p) {
+        if (arena == null || arena.cache == null || tape != null
+                || (other != null && other.tape != null))
+            return null;
+        return new TDCache.Key(op, this, other, p);
+    }
+
+    private TDNumber shared(final TDCache.Key key) {
+        return key == null ? null : arena.cache.get(key);
+    }
+
+    private TDNumber share(final TDCache.Key key, final TDNumber result) {
+        return key == null ? result : arena.cache.put(key, result);
+    }
+
+    /**
+     * @return true, if the results of operations on this number are shared
+     *         and must not be mutated
+     */
+    public boolean isShared() {
+        return arena != null && arena.cache != null;
+    }
+
+    private TDNumber target() {
+        if (arena != null)
+            return arena.allocate();
+        return new TDNumber(ops, new PDNumber[values.length]);
     }
 
     @Override
@@ -70,69 +119,250 @@ public final class TDNumber {
 
     public TDNumber add(final TDNumber other) {
         assert other.values.length == values.length : "Cannot add two numbers of different dimensions!";
-        final PDNumber[] newVal = new PDNumber[values.length];
-        ops.add(values, other.values, newVal);
-        return new TDNumber(ops, newVal);
+        final TDCache.Key key = key(TDCache.ADD, other, 0);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.add(values, other.values, target.values);
+        if (tape != null || other.tape != null)
+            return (tape != null ? tape : other.tape).binary(target, this,
+                    1.0, other, 1.0);
+        return share(key, target);
     }
 
     public TDNumber add(final double value) {
-        final PDNumber[] target = new PDNumber[values.length];
-        target[0] = values[0].add(value);
-        for (int i = 1; i < target.length; i++)
-            target[i] = values[i];
-        return new TDNumber(ops, target);
+        final TDCache.Key key = key(TDCache.ADD_CONST, null, value);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target;
+        if (arena != null) {
+            target = arena.copyOf(this);
+            target.values[0].values[0] += value;
+        } else {
+            final PDNumber[] values = new PDNumber[this.values.length];
+            values[0] = this.values[0].add(value);
+            for (int i = 1; i < values.length; i++)
+                values[i] = this.values[i];
+            target = new TDNumber(ops, values);
+        }
+        target.tape = tape;
+        target.node = node;
+        return share(key, target);
     }
 
     public TDNumber add(final int value) {
-        final PDNumber[] target = new PDNumber[values.length];
-        target[0] = values[0].add(value);
-        for (int i = 1; i < target.length; i++)
-            target[i] = values[i];
-        return new TDNumber(ops, target);
+        final TDCache.Key key = key(TDCache.ADD_CONST, null, value);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target;
+        if (arena != null) {
+            target = arena.copyOf(this);
+            target.values[0].values[0] += value;
+        } else {
+            final PDNumber[] values = new PDNumber[this.values.length];
+            values[0] = this.values[0].add(value);
+            for (int i = 1; i < values.length; i++)
+                values[i] = this.values[i];
+            target = new TDNumber(ops, values);
+        }
+        target.tape = tape;
+        target.node = node;
+        return share(key, target);
     }
 
     public TDNumber mult(final TDNumber other) {
-        final PDNumber[] target = new PDNumber[values.length];
-        ops.mult(values, other.values, target);
-        return new TDNumber(ops, target);
+        final TDCache.Key key = key(TDCache.MULT, other, 0);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.mult(values, other.values, target.values);
+        if (tape != null || other.tape != null)
+            return (tape != null ? tape : other.tape).binary(target, this,
+                    other.getValue(), other, getValue());
+        return share(key, target);
     }
 
     public TDNumber mult(final double value) {
-        final PDNumber[] target = new PDNumber[values.length];
-        for (int i = 0; i < target.length; i++)
-            target[i] = values[i].mult(value);
-        return new TDNumber(ops, target);
+        final TDCache.Key key = key(TDCache.SCALE, null, value);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.scale(value, values, target.values);
+        if (tape != null)
+            return tape.unary(target, this, value);
+        return share(key, target);
     }
 
     public TDNumber mult(final int value) {
-        final PDNumber[] target = new PDNumber[values.length];
-        for (int i = 0; i < target.length; i++)
-            target[i] = values[i].mult(value);
-        return new TDNumber(ops, target);
+        final TDCache.Key key = key(TDCache.SCALE, null, value);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.scale(value, values, target.values);
+        if (tape != null)
+            return tape.unary(target, this, value);
+        return share(key, target);
     }
 
     public TDNumber sin() {
-        final PDNumber[] target = new PDNumber[values.length];
-        ops.sin(values, target);
-        return new TDNumber(ops, target);
+        final TDCache.Key key = key(TDCache.SIN, null, 0);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.sin(values, target.values);
+        if (tape != null)
+            return tape.unary(target, this, Math.cos(getValue()));
+        return share(key, target);
     }
 
     public TDNumber cos() {
-        final PDNumber[] target = new PDNumber[values.length];
-        ops.cos(values, target);
-        return new TDNumber(ops, target);
+        final TDCache.Key key = key(TDCache.COS, null, 0);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.cos(values, target.values);
+        if (tape != null)
+            return tape.unary(target, this, -Math.sin(getValue()));
+        return share(key, target);
     }
 
     public TDNumber pow(int n) {
-        final PDNumber[] target = new PDNumber[values.length];
-        ops.pow(n, values, target);
-        return new TDNumber(ops, target);
+        final TDCache.Key key = key(TDCache.POW_INT, null, n);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.pow(n, values, target.values);
+        if (tape != null)
+            return tape.unary(target, this,
+                    n == 0 ? 0.0 : n * Math.pow(getValue(), n - 1));
+        return share(key, target);
     }
 
     public TDNumber pow(double n) {
-        final PDNumber[] target = new PDNumber[values.length];
-        ops.pow(n, values, target);
-        return new TDNumber(ops, target);
+        final TDCache.Key key = key(TDCache.POW, null, n);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.pow(n, values, target.values);
+        if (tape != null)
+            return tape.unary(target, this,
+                    n == 0 ? 0.0 : n * Math.pow(getValue(), n - 1));
+        return share(key, target);
+    }
+
+    public TDNumber div(final TDNumber other) {
+        final TDCache.Key key = key(TDCache.DIV, other, 0);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.div(values, other.values, target.values);
+        if (tape != null || other.tape != null)
+            return (tape != null ? tape : other.tape).binary(target, this,
+                    1.0 / other.getValue(), other, -target.getValue() / other.getValue());
+        return share(key, target);
+    }
+
+    public TDNumber div(final double value) {
+        return mult(1.0 / value);
+    }
+
+    public TDNumber exp() {
+        final TDCache.Key key = key(TDCache.EXP, null, 0);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.exp(values, target.values);
+        if (tape != null)
+            return tape.unary(target, this, target.getValue());
+        return share(key, target);
+    }
+
+    public TDNumber log() {
+        final TDCache.Key key = key(TDCache.LOG, null, 0);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.log(values, target.values);
+        if (tape != null)
+            return tape.unary(target, this, 1.0 / getValue());
+        return share(key, target);
+    }
+
+    public TDNumber sqrt() {
+        final TDCache.Key key = key(TDCache.SQRT, null, 0);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.sqrt(values, target.values);
+        if (tape != null)
+            return tape.unary(target, this, 0.5 / target.getValue());
+        return share(key, target);
+    }
+
+    public TDNumber tan() {
+        final TDCache.Key key = key(TDCache.TAN, null, 0);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.tan(values, target.values);
+        if (tape != null)
+            return tape.unary(target, this, 1.0 + target.getValue() * target.getValue());
+        return share(key, target);
+    }
+
+    public TDNumber tanh() {
+        final TDCache.Key key = key(TDCache.TANH, null, 0);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.tanh(values, target.values);
+        if (tape != null)
+            return tape.unary(target, this, 1.0 - target.getValue() * target.getValue());
+        return share(key, target);
+    }
+
+    public TDNumber abs() {
+        final TDCache.Key key = key(TDCache.ABS, null, 0);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.abs(values, target.values);
+        if (tape != null)
+            return tape.unary(target, this, getValue() < 0 ? -1.0 : 1.0);
+        return share(key, target);
+    }
+
+    public TDNumber atan2(final TDNumber x) {
+        final TDCache.Key key = key(TDCache.ATAN2, x, 0);
+        final TDNumber shared = shared(key);
+        if (shared != null)
+            return shared;
+        final TDNumber target = target();
+        ops.atan2(values, x.values, target.values);
+        if (tape != null || x.tape != null) {
+            final double y0 = getValue(), x0 = x.getValue();
+            final double r = x0 * x0 + y0 * y0;
+            return (tape != null ? tape : x.tape).binary(target, this, x0 / r,
+                    x, -y0 / r);
+        }
+        return share(key, target);
     }
 
     public TDNumber one() {
@@ -175,7 +405,10 @@ public final class TDNumber {
         final PDNumber[] values = new PDNumber[this.values.length];
         for (int i = 0; i < values.length; ++i)
             values[i] = this.values[i].copy();
-        return new TDNumber(ops, values);
+        final TDNumber copy = new TDNumber(ops, values);
+        copy.tape = tape;
+        copy.node = node;
+        return copy;
     }
 
 }
@@ -18,9 +18,9 @@
  */
 package de.tuberlin.uebb.jdae.diff.total;
 
-import gnu.trove.map.TIntObjectMap;
-import gnu.trove.map.hash.TIntObjectHashMap;
-
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +33,8 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.ObjectArrays;
 import com.google.common.collect.Ordering;
 
+import de.tuberlin.uebb.jdae.diff.partial.PDKernel;
+import de.tuberlin.uebb.jdae.diff.partial.PDKernels;
 import de.tuberlin.uebb.jdae.diff.partial.PDNumber;
 import de.tuberlin.uebb.jdae.diff.partial.PDOperations;
 import de.tuberlin.uebb.jdae.utils.IntPair;
@@ -41,37 +43,290 @@ import de.tuberlin.uebb.jdae.utils.IntPair;
  * @author choeger
  * 
  */
-public final class TDOperations {
+public final class TDOperations implements TDKernel {
 
     public final PDOperations subOps;
     public final int order;
     private final Product[][][] multOps;
-    public final CompositionProduct[][][] compOps;
 
-    private TDOperations(int order, int params) {
+    /*
+     * the Faa di Bruno tables are only needed for user-supplied derivatives
+     * (the elementary functions use recurrences), so they are built lazily
+     */
+    private volatile Composition composition;
+
+    /* the registry holding this instance, re-weighed once tables are built */
+    volatile TDOperationsRegistry registry;
+
+    /* row stride and size of the flat (contiguous) layout */
+    public final int width;
+    public final int size;
+    private final PDKernel flatKernel;
+
+    /*
+     * the optional kernel for rows this wide, or null: products are then
+     * Leibniz sums of row products instead of table walks
+     */
+    private final PDKernel rowKernel;
+    /* binomials[i][k] = i choose k */
+    private final double[][] binomials;
+
+    /* the indirection tables in compressed-row form over flat offsets */
+    final int[] flatMultStart;
+    final int[] flatMultLhs;
+    final int[] flatMultRhs;
+    final double[] flatMultFactor;
+
+    /* normalized Taylor coefficients for the elementary functions */
+    private final TaylorOperations taylor;
+
+    /* straight-line code for the tables above, see TDKernelCompiler */
+    private volatile TDKernel compiled;
+    private static final boolean COMPILE_KERNELS = Boolean
+            .getBoolean("jdae.compileKernels");
+
+    TDOperations(int order, int params, final TDOperations smaller) {
+        this(order, params, smaller, null, null);
+    }
+
+    private TDOperations(int order, int params, final TDOperations smaller,
+            final Product[][][] mult, final CompositionProduct[][][] comp) {
         super();
         this.order = order;
-        this.subOps = new PDOperations(params);
-        multOps = compileMultIndirection();
-        compOps = compileCompIndirection();
-        smaller = order > 0 ? getInstance(order - 1, subOps.params) : null;
+        this.subOps = PDOperations.get(params);
+        this.width = params + 1;
+        this.size = (order + 1) * width;
+        this.flatKernel = PDKernels.forLength(size);
+        final PDKernel rows = PDKernels.forLength(width);
+        this.rowKernel = rows != PDKernels.SCALAR ? rows : null;
+        this.binomials = new double[order + 1][];
+        for (int i = 0; i <= order; ++i) {
+            binomials[i] = new double[i + 1];
+            binomials[i][0] = binomials[i][i] = 1.0;
+            for (int k = 1; k < i; ++k)
+                binomials[i][k] = binomials[i - 1][k - 1] + binomials[i - 1][k];
+        }
+        this.smaller = smaller;
+        this.taylor = TaylorOperations.getInstance(order, params);
+        this.multOps = mult != null ? mult : compileMultIndirection();
+        if (comp != null)
+            this.composition = new Composition(comp, order, width);
+
+        flatMultStart = new int[size + 1];
+        int products = 0;
+        for (int i = 0; i <= order; ++i)
+            for (int j = 0; j < width; ++j) {
+                products += multOps[i][j].length;
+                flatMultStart[i * width + j + 1] = products;
+            }
+
+        flatMultLhs = new int[products];
+        flatMultRhs = new int[products];
+        flatMultFactor = new double[products];
+        int k = 0;
+        for (int i = 0; i <= order; ++i)
+            for (int j = 0; j < width; ++j)
+                for (Product p : multOps[i][j]) {
+                    flatMultLhs[k] = p.elements.lhs_row * width
+                            + p.elements.lhs_column;
+                    flatMultRhs[k] = p.elements.rhs_row * width
+                            + p.elements.rhs_column;
+                    flatMultFactor[k++] = p.factor;
+                }
+
+        if (COMPILE_KERNELS)
+            compile();
+    }
+
+    /**
+     * Replace the table walk of mult and compose by generated straight-line
+     * code. This pays off for instances that are used often, but costs a
+     * class definition each.
+     * 
+     * @return true, iff compiled code is in use afterwards
+     */
+    public boolean compile() {
+        if (compiled == null)
+            compiled = TDKernelCompiler.compile(this);
+        return compiled != null;
+    }
+
+    public boolean isCompiled() {
+        return compiled != null;
     }
 
-    private final static TIntObjectMap<TIntObjectMap<TDOperations>> instanceCache = new TIntObjectHashMap<TIntObjectMap<TDOperations>>();
     private final TDOperations smaller;
 
+    /**
+     * The composition tables: the products of Faa di Bruno's formula, and
+     * the same in compressed-row form over flat offsets.
+     */
+    static final class Composition {
+        final CompositionProduct[][][] products;
+
+        final int[] start;
+        final int[] order;
+        final double[] factor;
+        final int[] keyStart;
+        final int[] keys;
+
+        Composition(final CompositionProduct[][][] products, int tdOrder,
+                int width) {
+            this.products = products;
+
+            start = new int[(tdOrder + 1) * width + 1];
+            int terms = 0, keyCount = 0;
+            for (int i = 0; i <= tdOrder; ++i)
+                for (int j = 0; j < width; ++j) {
+                    terms += products[i][j].length;
+                    for (CompositionProduct p : products[i][j])
+                        keyCount += p.key.keys.length;
+                    start[i * width + j + 1] = terms;
+                }
+
+            order = new int[terms];
+            factor = new double[terms];
+            keyStart = new int[terms + 1];
+            keys = new int[keyCount];
+            int k = 0;
+            int l = 0;
+            for (int i = 0; i <= tdOrder; ++i)
+                for (int j = 0; j < width; ++j)
+                    for (CompositionProduct p : products[i][j]) {
+                        order[k] = p.key.f_order;
+                        factor[k] = p.f_factor;
+                        for (IntPair key : p.key.keys)
+                            keys[l++] = key.x * width + key.y;
+                        keyStart[++k] = l;
+                    }
+        }
+
+        int weight() {
+            return order.length + keys.length;
+        }
+    }
+
+    /**
+     * @return the composition tables, built on first use
+     */
+    final Composition composition() {
+        Composition c = composition;
+        if (c == null) {
+            boolean built = false;
+            synchronized (this) {
+                c = composition;
+                if (c == null) {
+                    composition = c = new Composition(
+                            compileCompIndirection(), order, width);
+                    built = true;
+                }
+            }
+            final TDOperationsRegistry r = registry;
+            if (built && r != null)
+                r.reweigh(this);
+        }
+        return c;
+    }
+
+    /**
+     * The products of Faa di Bruno's formula used to be the public field
+     * compOps. They are only needed by {@link #compose}, so they are built on
+     * the first call of this accessor instead.
+     * 
+     * @return the products of Faa di Bruno's formula for every coefficient
+     */
+    public final CompositionProduct[][][] compOps() {
+        return composition().products;
+    }
+
+    /**
+     * @return the shared instance from the default
+     *         {@link TDOperationsRegistry}
+     */
     public static TDOperations getInstance(int order, int params) {
-        if (!instanceCache.containsKey(order))
-            instanceCache.put(order, new TIntObjectHashMap<TDOperations>());
+        return TDOperationsRegistry.getDefault().get(order, params);
+    }
+
+    /**
+     * @return the approximate number of table entries held by this instance,
+     *         used to bound the registry
+     */
+    final int weight() {
+        final Composition c = composition;
+        return flatMultLhs.length + (c != null ? c.weight() : 0) + 2 * size;
+    }
 
-        final TIntObjectMap<TDOperations> map = instanceCache.get(order);
+    /**
+     * Write the indirection tables of this instance. The flat tables are
+     * derived and not written, the composition tables only if they have been
+     * built.
+     */
+    final void writeTables(final DataOutput out) throws IOException {
+        for (Product[][] row : multOps)
+            for (Product[] sum : row) {
+                out.writeInt(sum.length);
+                for (Product p : sum) {
+                    out.writeInt(p.elements.lhs_row);
+                    out.writeInt(p.elements.lhs_column);
+                    out.writeInt(p.elements.rhs_row);
+                    out.writeInt(p.elements.rhs_column);
+                    out.writeInt(p.factor);
+                }
+            }
 
-        if (!map.containsKey(params)) {
-            final TDOperations ops = new TDOperations(order, params);
-            map.put(params, ops);
-            return ops;
-        } else
-            return map.get(params);
+        final Composition c = composition;
+        out.writeBoolean(c != null);
+        if (c == null)
+            return;
+
+        for (CompositionProduct[][] row : c.products)
+            for (CompositionProduct[] sum : row) {
+                out.writeInt(sum.length);
+                for (CompositionProduct p : sum) {
+                    out.writeInt(p.key.f_order);
+                    out.writeInt(p.f_factor);
+                    out.writeInt(p.key.keys.length);
+                    for (IntPair k : p.key.keys) {
+                        out.writeInt(k.x);
+                        out.writeInt(k.y);
+                    }
+                }
+            }
+    }
+
+    /**
+     * Read the tables written by {@link #writeTables(DataOutput)} instead of
+     * compiling them.
+     */
+    static TDOperations readTables(int order, int params,
+            final TDOperations smaller, final DataInput in) throws IOException {
+        final Product[][][] multOps = new Product[order + 1][params + 1][];
+        for (Product[][] row : multOps)
+            for (int j = 0; j < row.length; ++j) {
+                row[j] = new Product[in.readInt()];
+                for (int k = 0; k < row[j].length; ++k)
+                    row[j][k] = new Product(in.readInt(), in.readInt(),
+                            in.readInt(), in.readInt(), in.readInt());
+            }
+
+        if (!in.readBoolean())
+            return new TDOperations(order, params, smaller, multOps, null);
+
+        final CompositionProduct[][][] compOps = new CompositionProduct[order + 1][params + 1][];
+        for (CompositionProduct[][] row : compOps)
+            for (int j = 0; j < row.length; ++j) {
+                row[j] = new CompositionProduct[in.readInt()];
+                for (int k = 0; k < row[j].length; ++k) {
+                    final int f_order = in.readInt();
+                    final int f_factor = in.readInt();
+                    final IntPair[] keys = new IntPair[in.readInt()];
+                    for (int l = 0; l < keys.length; ++l)
+                        keys[l] = new IntPair(in.readInt(), in.readInt());
+                    row[j][k] = new CompositionProduct(f_order, f_factor, keys);
+                }
+            }
+
+        return new TDOperations(order, params, smaller, multOps, compOps);
     }
 
     public final void add(final PDNumber[] a, final PDNumber[] b,
@@ -79,10 +334,8 @@ public final class TDOperations {
         for (int i = 0; i <= order; i++) {
             if (target[i] == null)
                 target[i] = a[i].add(b[i]);
-            else {
-                for (int j = 0; j < a[i].values.length; ++j)
-                    target[i].values[j] = a[i].values[j] + b[i].values[j];
-            }
+            else
+                subOps.add(a[i].values, b[i].values, target[i].values);
 
         }
     }
@@ -328,9 +581,7 @@ public final class TDOperations {
         }
 
         if (order > 0) {
-            final TDOperations smaller = getInstance(order - 1, subOps.params);
-
-            final CompositionProduct[][][] subCompOps = smaller.compOps;
+            final CompositionProduct[][][] subCompOps = smaller.compOps();
             final Product[][][] multOps = smaller.multOps;
 
             for (int i = 0; i < subCompOps.length; ++i) {
@@ -363,6 +614,14 @@ public final class TDOperations {
 
     public final void compInd(final double[] f, final PDNumber[] a,
             final PDNumber[] target) {
+        final TDKernel kernel = compiled;
+        if (kernel != null) {
+            allocate(target);
+            kernel.compose(f, a, target);
+            return;
+        }
+
+        final CompositionProduct[][][] compOps = compOps();
         for (int i = 0; i < compOps.length; ++i) {
             if (target[i] == null)
                 target[i] = new PDNumber(subOps, new double[subOps.params + 1]);
@@ -380,8 +639,33 @@ public final class TDOperations {
         }
     }
 
+    private final void allocate(final PDNumber[] target) {
+        for (int i = 0; i < target.length; ++i)
+            if (target[i] == null)
+                target[i] = new PDNumber(subOps, new double[subOps.params + 1]);
+    }
+
     public final void multInd(final PDNumber[] a, final PDNumber[] b,
             final PDNumber[] target) {
+        final PDKernel rows = rowKernel;
+        if (rows != null) {
+            allocate(target);
+            for (int i = 0; i <= order; ++i) {
+                final double[] t = target[i].values;
+                Arrays.fill(t, 0.0);
+                for (int k = 0; k <= i; ++k)
+                    rows.multAdd(binomials[i][k], a[k].values, 0,
+                            b[i - k].values, 0, t, 0, width);
+            }
+            return;
+        }
+
+        final TDKernel kernel = compiled;
+        if (kernel != null) {
+            allocate(target);
+            kernel.mult(a, b, target);
+            return;
+        }
 
         for (int i = 0; i < multOps.length; ++i) {
             if (target[i] == null)
@@ -406,6 +690,140 @@ public final class TDOperations {
         multInd(a, b, target);
     }
 
+    /*
+     * Operations on the flat layout: coefficient (dt, j) of a number lives at
+     * offset dt * width + j. The target must not alias any of the operands.
+     */
+
+    public final void add(final double[] a, final double[] b,
+            final double[] target) {
+        flatKernel.add(a, b, target, size);
+    }
+
+    public final void mult(final double[] a, final double[] b,
+            final double[] target) {
+        final PDKernel rows = rowKernel;
+        if (rows != null) {
+            Arrays.fill(target, 0, size, 0.0);
+            for (int i = 0; i <= order; ++i)
+                for (int k = 0; k <= i; ++k)
+                    rows.multAdd(binomials[i][k], a, k * width, b, (i - k)
+                            * width, target, i * width, width);
+            return;
+        }
+
+        final TDKernel kernel = compiled;
+        if (kernel != null) {
+            kernel.mult(a, b, target);
+            return;
+        }
+
+        for (int t = 0; t < size; ++t) {
+            double d = 0;
+            for (int k = flatMultStart[t]; k < flatMultStart[t + 1]; ++k)
+                d += a[flatMultLhs[k]] * b[flatMultRhs[k]] * flatMultFactor[k];
+            target[t] = d;
+        }
+    }
+
+    public final void compose(final double[] f, final double[] a,
+            final double[] target) {
+        final TDKernel kernel = compiled;
+        if (kernel != null) {
+            kernel.compose(f, a, target);
+            return;
+        }
+
+        final Composition c = composition();
+        for (int t = 0; t < size; ++t) {
+            double sum = 0;
+            for (int k = c.start[t]; k < c.start[t + 1]; ++k) {
+                double d = c.factor[k] * f[c.order[k]];
+                for (int l = c.keyStart[k]; l < c.keyStart[k + 1]; ++l)
+                    d *= a[c.keys[l]];
+                sum += d;
+            }
+            target[t] = sum;
+        }
+    }
+
+    public final void sin(final double[] a, final double[] target) {
+        final double[] t = normalized(a);
+        final double[] r = taylor.operands()[2];
+        taylor.sin(t, r);
+        taylor.toFlat(r, target);
+    }
+
+    public final void cos(final double[] a, final double[] target) {
+        final double[] t = normalized(a);
+        final double[] r = taylor.operands()[2];
+        taylor.cos(t, r);
+        taylor.toFlat(r, target);
+    }
+
+    public final void pow(int n, final double[] a, final double[] target) {
+        final double[] t = normalized(a);
+        final double[] r = taylor.operands()[2];
+        taylor.pow(n, t, r);
+        taylor.toFlat(r, target);
+    }
+
+    public final void pow(double n, final double[] a, final double[] target) {
+        if (isInt(n)) {
+            pow((int) n, a, target);
+            return;
+        }
+        final double[] t = normalized(a);
+        final double[] r = taylor.operands()[2];
+        taylor.pow(n, t, r);
+        taylor.toFlat(r, target);
+    }
+
+    private final double[] normalized(final double[] a) {
+        final double[] t = taylor.operands()[0];
+        taylor.fromFlat(a, t);
+        return t;
+    }
+
+    /*
+     * The elementary functions use the recurrences of TaylorOperations on
+     * normalized coefficients, O(order^2 * params) instead of a walk over
+     * the composition tables, which grow super-exponentially with the order.
+     * Operands are normalized into the per-thread buffers of
+     * TaylorOperations#operands(), so none of them allocates.
+     */
+
+    private final double[] normalized(final PDNumber[] a) {
+        return normalized(a, 0);
+    }
+
+    private final double[] normalized(final PDNumber[] a, int buffer) {
+        final double[] t = taylor.operands()[buffer];
+        taylor.fromTotal(a, t);
+        return t;
+    }
+
+    private final double[] result() {
+        return taylor.operands()[2];
+    }
+
+    private static boolean isInt(final double n) {
+        return n == FastMath.rint(n) && Math.abs(n) <= Integer.MAX_VALUE;
+    }
+
+    public final void flatten(final PDNumber[] a, final double[] target) {
+        for (int i = 0; i <= order; ++i)
+            System.arraycopy(a[i].values, 0, target, i * width, width);
+    }
+
+    public final PDNumber[] unflatten(final double[] a) {
+        final PDNumber[] values = new PDNumber[order + 1];
+        for (int i = 0; i <= order; ++i)
+            values[i] = new PDNumber(subOps, Arrays.copyOfRange(a, i * width,
+                    (i + 1) * width));
+        return values;
+    }
+
     // public final void mult(final PDNumber[] a, final PDNumber[] b,
     // final PDNumber[] target) {
     // if (target[0] == null)
@@ -437,7 +855,8 @@ public final class TDOperations {
     // }
     // }
 
-    public void compose(double f[], final PDNumber[] a, final PDNumber[] target) {
+    public final void compose(double f[], final PDNumber[] a,
+            final PDNumber[] target) {
         // compose(f, 0, a, target);
         compInd(f, a, target);
     }
@@ -478,63 +897,100 @@ public final class TDOperations {
     }
 
     public final void sin(final PDNumber[] a, final PDNumber[] target) {
-        final double[] f = new double[order + 2];
-        f[0] = Math.sin(a[0].values[0]);
-        f[1] = Math.cos(a[0].values[0]);
-        for (int n = 2; n < order + 2; n++)
-            f[n] = -f[n - 2];
-
-        compose(f, a, target);
+        final double[] r = result();
+        taylor.sin(normalized(a), r);
+        taylor.toTotal(r, target);
     }
 
     public final void cos(final PDNumber[] a, final PDNumber[] target) {
-        final double[] f = new double[order + 2];
-        f[0] = Math.cos(a[0].values[0]);
-        f[1] = -Math.sin(a[0].values[0]);
-        for (int n = 2; n < order + 2; n++)
-            f[n] = -f[n - 2];
-
-        compose(f, a, target);
+        final double[] r = result();
+        taylor.cos(normalized(a), r);
+        taylor.toTotal(r, target);
     }
 
     public final void pow(int n, final PDNumber[] a, final PDNumber[] target) {
-        // create the power function value and derivatives
-        // [x^n, nx^(n-1), n(n-1)x^(n-2), ... ]
-        double[] f = new double[order + 2];
-
-        if (n > 0) {
-            // strictly positive power
-            final int maxOrder = FastMath.min(order + 1, n);
-            double xk = FastMath.pow(a[0].values[0], n - maxOrder);
-            for (int i = maxOrder; i > 0; --i) {
-                f[i] = xk;
-                xk *= a[0].values[0];
-            }
-            f[0] = xk;
-        } else {
-            // strictly negative power
-            final double inv = 1.0 / a[0].values[0];
-            double xk = FastMath.pow(inv, -n);
-            for (int i = 0; i <= order + 1; ++i) {
-                f[i] = xk;
-                xk *= inv;
-            }
-        }
+        final double[] r = result();
+        taylor.pow(n, normalized(a), r);
+        taylor.toTotal(r, target);
+    }
 
-        double coefficient = n;
-        for (int i = 1; i <= order + 1; ++i) {
-            f[i] *= coefficient;
-            coefficient *= n - i;
+    /**
+     * Integral exponents are computed like {@link #pow(int, PDNumber[],
+     * PDNumber[])}, otherwise by the log-derivative identity a y' = n a' y,
+     * which requires a non-zero value.
+     */
+    public final void pow(double n, final PDNumber[] a, final PDNumber[] target) {
+        if (isInt(n)) {
+            pow((int) n, a, target);
+            return;
         }
+        final double[] r = result();
+        taylor.pow(n, normalized(a), r);
+        taylor.toTotal(r, target);
+    }
 
-        compose(f, a, target);
+    public final void exp(final PDNumber[] a, final PDNumber[] target) {
+        final double[] r = result();
+        taylor.exp(normalized(a), r);
+        taylor.toTotal(r, target);
     }
 
-    public final void pow(double n, final PDNumber[] a, final PDNumber[] target) {
-        final double[] f = new double[order + 2];
-        f[0] = FastMath.pow(a[0].values[0], n);
-        f[1] = n * FastMath.pow(a[0].values[0], n - 1);
-        compose(f, a, target);
+    public final void log(final PDNumber[] a, final PDNumber[] target) {
+        final double[] r = result();
+        taylor.log(normalized(a), r);
+        taylor.toTotal(r, target);
+    }
+
+    public final void sqrt(final PDNumber[] a, final PDNumber[] target) {
+        final double[] r = result();
+        taylor.sqrt(normalized(a), r);
+        taylor.toTotal(r, target);
+    }
+
+    public final void tan(final PDNumber[] a, final PDNumber[] target) {
+        final double[] r = result();
+        taylor.tan(normalized(a), r);
+        taylor.toTotal(r, target);
+    }
+
+    public final void tanh(final PDNumber[] a, final PDNumber[] target) {
+        final double[] r = result();
+        taylor.tanh(normalized(a), r);
+        taylor.toTotal(r, target);
+    }
+
+    public final void reciprocal(final PDNumber[] a, final PDNumber[] target) {
+        final double[] r = result();
+        final double[] one = taylor.operands()[1];
+        Arrays.fill(one, 0.0);
+        one[0] = 1.0;
+        taylor.div(one, normalized(a), r);
+        taylor.toTotal(r, target);
+    }
+
+    public final void div(final PDNumber[] a, final PDNumber[] b,
+            final PDNumber[] target) {
+        final double[] r = result();
+        taylor.div(normalized(a), normalized(b, 1), r);
+        taylor.toTotal(r, target);
+    }
+
+    public final void abs(final PDNumber[] a, final PDNumber[] target) {
+        scale(a[0].values[0] < 0 ? -1.0 : 1.0, a, target);
+    }
+
+    public final void scale(final double s, final PDNumber[] a,
+            final PDNumber[] target) {
+        allocate(target);
+        for (int i = 0; i <= order; ++i)
+            subOps.scale(s, a[i].values, target[i].values);
+    }
+
+    public final void atan2(final PDNumber[] y, final PDNumber[] x,
+            final PDNumber[] target) {
+        final double[] r = result();
+        taylor.atan2(normalized(y), normalized(x, 1), r);
+        taylor.toTotal(r, target);
     }
 
     public TDNumber constantVar(int offset, double... dt) {
@@ -548,6 +1004,20 @@ public final class TDOperations {
         return new TDNumber(this, c_values);
     }
 
+    /**
+     * Overwrite target with {@link #constantVar(int, double...)}, higher
+     * derivatives missing from dt are zero.
+     */
+    public TDNumber constantVar(final TDNumber target, int offset,
+            double... dt) {
+        for (int i = 0; i <= order; ++i) {
+            Arrays.fill(target.values[i].values, 0.0);
+            if (i < dt.length - offset)
+                target.values[i].values[0] = dt[i + offset];
+        }
+        return TDTape.constant(target);
+    }
+
     public TDNumber constant(double d, double... dt) {
         final PDNumber c = subOps.constant(d);
         final PDNumber[] c_values = new PDNumber[order + 1];
@@ -562,6 +1032,16 @@ public final class TDOperations {
         return new TDNumber(this, c_values);
     }
 
+    public FlatTDNumber flatConstant(double d, double... dt) {
+        final double[] values = new double[size];
+        values[0] = d;
+
+        for (int i = 0; i < Math.min(dt.length, order); ++i)
+            values[(i + 1) * width] = dt[i];
+
+        return new FlatTDNumber(this, values);
+    }
+
     public TDNumber variable(int idx, double... der) {
         return variable(idx, 0, der);
     }
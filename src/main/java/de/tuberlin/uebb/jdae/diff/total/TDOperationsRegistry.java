@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableSortedMap;
+
+import de.tuberlin.uebb.jdae.utils.IntPair;
+
+/**
+ * A thread-safe registry of {@link TDOperations} instances, keyed by order
+ * and number of parameters. Lookups of present instances do not lock, the
+ * registry is bounded by the size of the indirection tables and the tables
+ * can be dumped to and preloaded from a binary stream to save their
+ * compilation on startup.
+ * 
+ * Evicted instances stay valid: Numbers (and larger instances) keep
+ * referencing them, a later lookup simply creates a fresh instance.
+ * 
+ * @author choeger
+ * 
+ */
+public final class TDOperationsRegistry {
+
+    private static final int MAGIC = 0x4A444145;
+    private static final int VERSION = 2;
+
+    /* maximum number of table entries in the default registry */
+    public static final long DEFAULT_MAX_WEIGHT = Long.getLong(
+            "jdae.tdops.maxWeight", 1L << 24);
+
+    private static final TDOperationsRegistry defaultRegistry = new TDOperationsRegistry(
+            DEFAULT_MAX_WEIGHT);
+
+    private final LoadingCache<IntPair, TDOperations> cache;
+
+    public TDOperationsRegistry(final long maxWeight) {
+        this.cache = CacheBuilder.newBuilder().maximumWeight(maxWeight)
+                .weigher(new Weigher<IntPair, TDOperations>() {
+                    @Override
+                    public int weigh(IntPair key, TDOperations ops) {
+                        return ops.weight();
+                    }
+                }).recordStats()
+                .build(new CacheLoader<IntPair, TDOperations>() {
+                    @Override
+                    public TDOperations load(IntPair key) {
+                        final TDOperations smaller = key.x > 0 ? get(
+                                key.x - 1, key.y) : null;
+                        final TDOperations ops = new TDOperations(key.x,
+                                key.y, smaller);
+                        ops.registry = TDOperationsRegistry.this;
+                        return ops;
+                    }
+                });
+    }
+
+    /**
+     * The cache weighs an instance only when it is inserted. Tables built
+     * later (see {@link TDOperations#composition()}) are accounted for by
+     * replacing the instance with itself, unless it has been evicted.
+     */
+    void reweigh(final TDOperations ops) {
+        cache.asMap().replace(new IntPair(ops.order, ops.subOps.params), ops,
+                ops);
+    }
+
+    public static TDOperationsRegistry getDefault() {
+        return defaultRegistry;
+    }
+
+    public TDOperations get(int order, int params) {
+        return cache.getUnchecked(new IntPair(order, params));
+    }
+
+    /**
+     * @return hit, miss, load and eviction counts of this registry
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Write the tables of all present instances, smallest order first.
+     * 
+     * @return the number of instances written
+     */
+    public int dump(final OutputStream stream) throws IOException {
+        final Map<IntPair, TDOperations> instances = ImmutableSortedMap
+                .copyOf(cache.asMap());
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(instances.size());
+        for (Map.Entry<IntPair, TDOperations> e : instances.entrySet()) {
+            out.writeInt(e.getKey().x);
+            out.writeInt(e.getKey().y);
+            e.getValue().writeTables(out);
+        }
+        out.flush();
+        return instances.size();
+    }
+
+    /**
+     * Read tables written by {@link #dump(OutputStream)}. Instances that are
+     * already present are kept.
+     * 
+     * @return the number of instances added to this registry
+     */
+    public int preload(final InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a table dump of TDOperations.");
+        final int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported table dump version: "
+                    + version);
+
+        final int count = in.readInt();
+        int added = 0;
+        for (int i = 0; i < count; ++i) {
+            final int order = in.readInt();
+            final int params = in.readInt();
+            final TDOperations smaller = order > 0 ? get(order - 1, params)
+                    : null;
+            final TDOperations ops = TDOperations.readTables(order, params,
+                    smaller, in);
+            ops.registry = this;
+            if (cache.asMap().putIfAbsent(new IntPair(order, params), ops) == null)
+                added++;
+        }
+        return added;
+    }
+
+}
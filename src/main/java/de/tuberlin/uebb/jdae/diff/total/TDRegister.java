@@ -26,11 +26,23 @@ public final class TDRegister {
     private int current;
     private final TDNumber[] numbers = new TDNumber[2];
 
+    /*
+     * the initial number is shared (see TDCache): never overwrite it, but
+     * step through shared numbers, so equal register sequences share too
+     */
+    private final boolean shared;
+
     public TDRegister(final TDNumber initial) {
         this.numbers[0] = initial;
         this.current = 0;
-        this.numbers[1] = new TDNumber(initial.ops,
-                new PDNumber[initial.values.length]);
+        this.shared = initial.isShared();
+        if (shared)
+            this.numbers[1] = null;
+        else if (initial.arena != null)
+            this.numbers[1] = initial.arena.allocate();
+        else
+            this.numbers[1] = new TDNumber(initial.ops,
+                    new PDNumber[initial.values.length]);
 
         this.ops = initial.ops;
     }
@@ -44,36 +56,184 @@ public final class TDRegister {
     }
 
     public final void add(int n) {
+        if (shared) {
+            numbers[current] = numbers[current].add(n);
+            return;
+        }
         numbers[current].values[0].values[0] += n;
     }
 
     public final void add(double d) {
+        if (shared) {
+            numbers[current] = numbers[current].add(d);
+            return;
+        }
         numbers[current].values[0].values[0] += d;
     }
 
     public final void add(TDNumber o) {
+        if (shared) {
+            numbers[current] = numbers[current].add(o);
+            return;
+        }
         final int next = (current + 1) % 2;
         ops.add(numbers[current].values, o.values, numbers[next].values);
+        record(next, 1.0, o, 1.0);
         current = next;
     }
 
     public final void mult(TDNumber o) {
+        if (shared) {
+            numbers[current] = numbers[current].mult(o);
+            return;
+        }
         final int next = (current + 1) % 2;
         ops.mult(numbers[current].values, o.values, numbers[next].values);
+        record(next, o.getValue(), o, value());
         current = next;
     }
 
     public final void pow(final int p) {
+        if (shared) {
+            numbers[current] = numbers[current].pow(p);
+            return;
+        }
         final int next = (current + 1) % 2;
         ops.pow(p, numbers[current].values, numbers[next].values);
+        record(next, p == 0 ? 0.0 : p * Math.pow(value(), p - 1));
+        current = next;
+    }
+
+    public final void div(TDNumber o) {
+        if (shared) {
+            numbers[current] = numbers[current].div(o);
+            return;
+        }
+        final int next = (current + 1) % 2;
+        ops.div(numbers[current].values, o.values, numbers[next].values);
+        record(next, 1.0 / o.getValue(), o, -numbers[next].getValue()
+                / o.getValue());
+        current = next;
+    }
+
+    public final void exp() {
+        if (shared) {
+            numbers[current] = numbers[current].exp();
+            return;
+        }
+        final int next = (current + 1) % 2;
+        ops.exp(numbers[current].values, numbers[next].values);
+        record(next, numbers[next].getValue());
+        current = next;
+    }
+
+    public final void log() {
+        if (shared) {
+            numbers[current] = numbers[current].log();
+            return;
+        }
+        final int next = (current + 1) % 2;
+        ops.log(numbers[current].values, numbers[next].values);
+        record(next, 1.0 / value());
+        current = next;
+    }
+
+    public final void sqrt() {
+        if (shared) {
+            numbers[current] = numbers[current].sqrt();
+            return;
+        }
+        final int next = (current + 1) % 2;
+        ops.sqrt(numbers[current].values, numbers[next].values);
+        record(next, 0.5 / numbers[next].getValue());
+        current = next;
+    }
+
+    public final void tan() {
+        if (shared) {
+            numbers[current] = numbers[current].tan();
+            return;
+        }
+        final int next = (current + 1) % 2;
+        ops.tan(numbers[current].values, numbers[next].values);
+        record(next, 1.0 + numbers[next].getValue()
+                * numbers[next].getValue());
+        current = next;
+    }
+
+    public final void tanh() {
+        if (shared) {
+            numbers[current] = numbers[current].tanh();
+            return;
+        }
+        final int next = (current + 1) % 2;
+        ops.tanh(numbers[current].values, numbers[next].values);
+        record(next, 1.0 - numbers[next].getValue()
+                * numbers[next].getValue());
+        current = next;
+    }
+
+    public final void abs() {
+        if (shared) {
+            numbers[current] = numbers[current].abs();
+            return;
+        }
+        final int next = (current + 1) % 2;
+        ops.abs(numbers[current].values, numbers[next].values);
+        record(next, value() < 0 ? -1.0 : 1.0);
+        current = next;
+    }
+
+    /**
+     * Replace the register content y by atan2(y, x).
+     */
+    public final void atan2(TDNumber x) {
+        if (shared) {
+            numbers[current] = numbers[current].atan2(x);
+            return;
+        }
+        final int next = (current + 1) % 2;
+        ops.atan2(numbers[current].values, x.values, numbers[next].values);
+        final double r = x.getValue() * x.getValue() + value() * value();
+        record(next, x.getValue() / r, x, -value() / r);
         current = next;
     }
 
     public void mult(int n) {
+        if (shared) {
+            numbers[current] = numbers[current].mult(n);
+            return;
+        }
         for (int i = 0; i < numbers[current].values.length; ++i)
             for (int j = 0; j < numbers[current].values[i].values.length; ++j)
                 numbers[current].values[i].values[j] *= n;
 
+        final TDNumber a = numbers[current];
+        if (a.tape != null)
+            a.tape.unary(a, a, n);
+    }
+
+    private double value() {
+        return numbers[current].getValue();
+    }
+
+    /* record the last operation on the tape of the operands, if any */
+    private void record(int next, double da) {
+        final TDNumber a = numbers[current];
+        if (a.tape != null)
+            a.tape.unary(numbers[next], a, da);
+        else
+            TDTape.constant(numbers[next]);
+    }
+
+    private void record(int next, double da, TDNumber o, double db) {
+        final TDNumber a = numbers[current];
+        if (a.tape != null)
+            a.tape.binary(numbers[next], a, da, o, db);
+        else if (o.tape != null)
+            o.tape.binary(numbers[next], a, da, o, db);
+        else
+            TDTape.constant(numbers[next]);
     }
 
     public void square() {
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.util.Arrays;
+
+import de.tuberlin.uebb.jdae.diff.partial.PDNumber;
+
+/**
+ * A file of {@link TDNumber} registers of a single shape with a small
+ * three-address instruction set. Equations that pick their register numbers
+ * once (e.g. when they are bound) evaluate without allocating: every
+ * instruction writes into a spare number, which then takes the place of the
+ * destination register, so destinations may alias operands.
+ * 
+ * A number obtained by {@link #get(int)} is valid until the next instruction
+ * on this file. Operations on numbers recorded on a tape are recorded as
+ * well, see {@link TDRegister}.
+ * 
+ * @author choeger
+ * 
+ */
+public final class TDRegisterFile {
+
+    public final TDOperations ops;
+    private TDNumber[] slots;
+    private TDNumber spare;
+
+    public TDRegisterFile(final TDOperations ops) {
+        this(ops, 4);
+    }
+
+    public TDRegisterFile(final TDOperations ops, int size) {
+        this.ops = ops;
+        this.slots = new TDNumber[Math.max(1, size)];
+        fill(0);
+        this.spare = number();
+    }
+
+    private TDNumber number() {
+        final PDNumber[] values = new PDNumber[ops.order + 1];
+        for (int j = 0; j < values.length; ++j)
+            values[j] = new PDNumber(ops.subOps, new double[ops.width]);
+        return new TDNumber(ops, values);
+    }
+
+    private void fill(int from) {
+        for (int i = from; i < slots.length; ++i)
+            slots[i] = number();
+    }
+
+    private TDNumber slot(int r) {
+        if (r >= slots.length) {
+            final int size = slots.length;
+            slots = Arrays.copyOf(slots, Math.max(r + 1, 2 * size));
+            fill(size);
+        }
+        return slots[r];
+    }
+
+    /* the spare number now holds register r */
+    private void commit(int r) {
+        slot(r);
+        final TDNumber old = slots[r];
+        slots[r] = spare;
+        spare = old;
+    }
+
+    public int size() {
+        return slots.length;
+    }
+
+    /**
+     * @return the content of register r, valid until the next instruction
+     */
+    public TDNumber get(int r) {
+        return slot(r);
+    }
+
+    /**
+     * @return register r, zeroed and untaped, as the target of a load
+     */
+    public TDNumber clear(int r) {
+        final TDNumber n = slot(r);
+        for (PDNumber pd : n.values)
+            Arrays.fill(pd.values, 0.0);
+        return TDTape.constant(n);
+    }
+
+    /**
+     * r := n
+     */
+    public void load(int r, final TDNumber n) {
+        copy(n, slot(r));
+    }
+
+    /**
+     * r := d
+     */
+    public void constant(int r, double d) {
+        clear(r).values[0].values[0] = d;
+    }
+
+    /**
+     * target := r
+     * 
+     * @return the target
+     */
+    public TDNumber store(int r, final TDNumber target) {
+        copy(slot(r), target);
+        return target;
+    }
+
+    private void copy(final TDNumber from, final TDNumber to) {
+        for (int i = 0; i <= ops.order; ++i)
+            System.arraycopy(from.values[i].values, 0, to.values[i].values,
+                    0, ops.width);
+        to.tape = from.tape;
+        to.node = from.node;
+    }
+
+    /**
+     * r := a + b
+     */
+    public void add(int r, int a, int b) {
+        final TDNumber x = slot(a), y = slot(b);
+        ops.add(x.values, y.values, spare.values);
+        record(x, 1.0, y, 1.0);
+        commit(r);
+    }
+
+    /**
+     * r := a + d (not an overload of add, an integral d would be taken for a
+     * register)
+     */
+    public void addConstant(int r, int a, double d) {
+        final TDNumber x = slot(a);
+        copy(x, spare);
+        spare.values[0].values[0] += d;
+        commit(r);
+    }
+
+    /**
+     * r := a * b
+     */
+    public void mult(int r, int a, int b) {
+        final TDNumber x = slot(a), y = slot(b);
+        ops.mult(x.values, y.values, spare.values);
+        record(x, y.getValue(), y, x.getValue());
+        commit(r);
+    }
+
+    /**
+     * r := s * a
+     */
+    public void scale(int r, int a, double s) {
+        final TDNumber x = slot(a);
+        ops.scale(s, x.values, spare.values);
+        record(x, s);
+        commit(r);
+    }
+
+    /**
+     * r := a * b + c
+     */
+    public void fma(int r, int a, int b, int c) {
+        final TDNumber x = slot(a), y = slot(b), z = slot(c);
+        ops.mult(x.values, y.values, spare.values);
+        record(x, y.getValue(), y, x.getValue());
+        ops.add(spare.values, z.values, spare.values);
+        record(spare, 1.0, z, 1.0);
+        commit(r);
+    }
+
+    /**
+     * r := a^n
+     */
+    public void pow(int r, int a, int n) {
+        final TDNumber x = slot(a);
+        ops.pow(n, x.values, spare.values);
+        record(x, n == 0 ? 0.0 : n * Math.pow(x.getValue(), n - 1));
+        commit(r);
+    }
+
+    /**
+     * r := a / b
+     */
+    public void div(int r, int a, int b) {
+        final TDNumber x = slot(a), y = slot(b);
+        ops.div(x.values, y.values, spare.values);
+        record(x, 1.0 / y.getValue(), y, -spare.getValue() / y.getValue());
+        commit(r);
+    }
+
+    /**
+     * r := sin(a)
+     */
+    public void sin(int r, int a) {
+        final TDNumber x = slot(a);
+        ops.sin(x.values, spare.values);
+        record(x, Math.cos(x.getValue()));
+        commit(r);
+    }
+
+    /**
+     * r := cos(a)
+     */
+    public void cos(int r, int a) {
+        final TDNumber x = slot(a);
+        ops.cos(x.values, spare.values);
+        record(x, -Math.sin(x.getValue()));
+        commit(r);
+    }
+
+    /**
+     * r := exp(a)
+     */
+    public void exp(int r, int a) {
+        final TDNumber x = slot(a);
+        ops.exp(x.values, spare.values);
+        record(x, spare.getValue());
+        commit(r);
+    }
+
+    /**
+     * r := log(a)
+     */
+    public void log(int r, int a) {
+        final TDNumber x = slot(a);
+        ops.log(x.values, spare.values);
+        record(x, 1.0 / x.getValue());
+        commit(r);
+    }
+
+    /**
+     * r := sqrt(a)
+     */
+    public void sqrt(int r, int a) {
+        final TDNumber x = slot(a);
+        ops.sqrt(x.values, spare.values);
+        record(x, 0.5 / spare.getValue());
+        commit(r);
+    }
+
+    /* record the last instruction on the tape of the operands, if any */
+    private void record(final TDNumber a, double da) {
+        if (a.tape != null)
+            a.tape.unary(spare, a, da);
+        else
+            TDTape.constant(spare);
+    }
+
+    private void record(final TDNumber a, double da, final TDNumber b,
+            double db) {
+        if (a.tape != null)
+            a.tape.binary(spare, a, da, b, db);
+        else if (b.tape != null)
+            b.tape.binary(spare, a, da, b, db);
+        else
+            TDTape.constant(spare);
+    }
+}
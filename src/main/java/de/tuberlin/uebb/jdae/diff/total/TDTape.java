@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.util.Arrays;
+
+/**
+ * A tape for reverse-mode differentiation of value computations (order 0).
+ * Operations on {@link TDNumber}s that carry a tape record one node each,
+ * holding the local partial derivatives w.r.t. their (at most two)
+ * arguments. A backward sweep from a node then yields the gradient of that
+ * node w.r.t. all independent variables in one pass, independent of their
+ * number.
+ * 
+ * Numbers without a tape are constants, as are numbers with a negative node.
+ * 
+ * @author choeger
+ * 
+ */
+public final class TDTape {
+
+    private static final int NONE = -1;
+    private static final int LEAF = -2;
+
+    private int size;
+    private int[] lhs;
+    private int[] rhs;
+    private double[] dlhs;
+    private double[] drhs;
+    private double[] adjoint;
+
+    public TDTape() {
+        this(64);
+    }
+
+    public TDTape(int capacity) {
+        capacity = Math.max(1, capacity);
+        lhs = new int[capacity];
+        rhs = new int[capacity];
+        dlhs = new double[capacity];
+        drhs = new double[capacity];
+        adjoint = new double[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    private int push(int a, double da, int b, double db) {
+        if (size == lhs.length) {
+            final int capacity = 2 * size;
+            lhs = Arrays.copyOf(lhs, capacity);
+            rhs = Arrays.copyOf(rhs, capacity);
+            dlhs = Arrays.copyOf(dlhs, capacity);
+            drhs = Arrays.copyOf(drhs, capacity);
+            adjoint = new double[capacity];
+        }
+        lhs[size] = a;
+        dlhs[size] = da;
+        rhs[size] = b;
+        drhs[size] = db;
+        return size++;
+    }
+
+    /**
+     * Make the value of number the independent variable of the given column.
+     */
+    public void seed(final TDNumber number, int column) {
+        assert number.ops.order == 0 : "Only values can be recorded on a tape.";
+        number.tape = this;
+        number.node = push(column, 1.0, LEAF, 0.0);
+    }
+
+    /**
+     * Record target = f(a) with f'(a) = da.
+     */
+    TDNumber unary(final TDNumber target, final TDNumber a, double da) {
+        if (a.node < 0)
+            return constant(target);
+        target.tape = this;
+        target.node = push(a.node, da, NONE, 0.0);
+        return target;
+    }
+
+    /**
+     * Record target = f(a, b) with the partial derivatives da and db.
+     */
+    TDNumber binary(final TDNumber target, final TDNumber a, double da,
+            final TDNumber b, double db) {
+        if (a.tape != this || a.node < 0)
+            return unary(target, b, db);
+        if (b.tape != this || b.node < 0)
+            return unary(target, a, da);
+        target.tape = this;
+        target.node = push(a.node, da, b.node, db);
+        return target;
+    }
+
+    static TDNumber constant(final TDNumber target) {
+        target.tape = null;
+        target.node = NONE;
+        return target;
+    }
+
+    /**
+     * Accumulate the gradient of a number into row, sweeping backwards down to
+     * the node first. All nodes the gradient depends on must have been
+     * recorded at or after first.
+     * 
+     * @param number
+     *            the number to differentiate, constants have no gradient
+     * @param first
+     *            the first node of the sweep
+     * @param row
+     *            the gradient, indexed by the columns of the seeds
+     */
+    public void gradient(final TDNumber number, int first, final double[] row) {
+        final int node = number.node;
+        if (number.tape != this || node < 0)
+            return;
+
+        Arrays.fill(adjoint, first, node + 1, 0.0);
+        adjoint[node] = 1.0;
+
+        for (int k = node; k >= first; --k) {
+            final double a = adjoint[k];
+            if (a == 0.0)
+                continue;
+            if (rhs[k] == LEAF) {
+                row[lhs[k]] += a;
+            } else {
+                adjoint[lhs[k]] += a * dlhs[k];
+                if (rhs[k] != NONE)
+                    adjoint[rhs[k]] += a * drhs[k];
+            }
+        }
+    }
+}
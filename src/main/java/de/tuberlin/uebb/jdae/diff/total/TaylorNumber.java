@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.util.Arrays;
+
+/**
+ * A total-derivative number stored as normalized Taylor coefficients
+ * f^(k)/k! (and their partial derivatives) in one contiguous array, laid out
+ * like {@link FlatTDNumber}. Products are plain Cauchy convolutions and the
+ * elementary functions use recurrences, so neither needs the Leibniz or Faà
+ * di Bruno tables of {@link TDOperations}. This pays off for higher orders
+ * (3 and above), where the number of composition terms explodes.
+ * 
+ * {@link #der(int)} and {@link #der(int, int)} return total derivatives like
+ * {@link TDNumber}, {@link #coefficient(int)} the normalized ones.
+ * 
+ * @author choeger
+ * 
+ */
+public final class TaylorNumber {
+
+    public final double[] values;
+    public final TaylorOperations ops;
+
+    public TaylorNumber(int order, int params) {
+        this.ops = TaylorOperations.getInstance(order, params);
+        this.values = new double[ops.size];
+    }
+
+    public TaylorNumber(TaylorOperations ops, double[] values) {
+        assert values.length == ops.size : "Number does not fit its operations!";
+        this.ops = ops;
+        this.values = values;
+    }
+
+    public TaylorNumber(TDNumber number) {
+        this.ops = TaylorOperations.getInstance(number.ops.order,
+                number.ops.subOps.params);
+        this.values = new double[ops.size];
+        ops.fromTotal(number.values, values);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + Arrays.hashCode(values);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        TaylorNumber other = (TaylorNumber) obj;
+        if (!Arrays.equals(values, other.values))
+            return false;
+        return true;
+    }
+
+    public TaylorNumber add(final TaylorNumber other) {
+        assert other.values.length == values.length : "Cannot add two numbers of different dimensions!";
+        final double[] target = new double[values.length];
+        ops.add(values, other.values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber add(final double value) {
+        final double[] target = values.clone();
+        target[0] += value;
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber add(final int value) {
+        final double[] target = values.clone();
+        target[0] += value;
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber mult(final TaylorNumber other) {
+        assert other.values.length == values.length : "Cannot multiply two numbers of different dimensions!";
+        final double[] target = new double[values.length];
+        ops.mult(values, other.values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber mult(final double value) {
+        final double[] target = new double[values.length];
+        ops.scale(value, values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber mult(final int value) {
+        return mult((double) value);
+    }
+
+    public TaylorNumber div(final TaylorNumber other) {
+        assert other.values.length == values.length : "Cannot divide two numbers of different dimensions!";
+        final double[] target = new double[values.length];
+        ops.div(values, other.values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber div(final double value) {
+        return mult(1.0 / value);
+    }
+
+    public TaylorNumber sin() {
+        final double[] target = new double[values.length];
+        ops.sin(values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber cos() {
+        final double[] target = new double[values.length];
+        ops.cos(values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber pow(int n) {
+        final double[] target = new double[values.length];
+        ops.pow(n, values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber pow(double n) {
+        final double[] target = new double[values.length];
+        ops.pow(n, values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber exp() {
+        final double[] target = new double[values.length];
+        ops.exp(values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber log() {
+        final double[] target = new double[values.length];
+        ops.log(values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber sqrt() {
+        final double[] target = new double[values.length];
+        ops.sqrt(values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber tan() {
+        final double[] target = new double[values.length];
+        ops.tan(values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber tanh() {
+        final double[] target = new double[values.length];
+        ops.tanh(values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber abs() {
+        final double[] target = new double[values.length];
+        ops.abs(values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber atan2(final TaylorNumber x) {
+        final double[] target = new double[values.length];
+        ops.atan2(values, x.values, target);
+        return new TaylorNumber(ops, target);
+    }
+
+    public TaylorNumber subtract(double c) {
+        return add(-c);
+    }
+
+    public TaylorNumber subtract(TaylorNumber o) {
+        return add(o.mult(-1));
+    }
+
+    public TaylorNumber one() {
+        return ops.constantNumber(1.0);
+    }
+
+    public TaylorNumber zero() {
+        return ops.constantNumber(0.0);
+    }
+
+    public double coefficient(final int k) {
+        return values[k * ops.width];
+    }
+
+    public double der(final int dt) {
+        return values[dt * ops.width] * ops.factorial(dt);
+    }
+
+    public double der(int dt, int idx) {
+        return values[dt * ops.width + idx + 1] * ops.factorial(dt);
+    }
+
+    public double getValue() {
+        return values[0];
+    }
+
+    public TaylorNumber copy() {
+        return new TaylorNumber(ops, values.clone());
+    }
+
+    public TDNumber toTDNumber() {
+        return new TDNumber(TDOperations.getInstance(ops.order, ops.params),
+                ops.toTotal(values));
+    }
+
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.math3.util.FastMath;
+
+import de.tuberlin.uebb.jdae.diff.partial.PDKernel;
+import de.tuberlin.uebb.jdae.diff.partial.PDKernels;
+import de.tuberlin.uebb.jdae.diff.partial.PDNumber;
+import de.tuberlin.uebb.jdae.diff.partial.PDOperations;
+import de.tuberlin.uebb.jdae.utils.IntPair;
+
+/**
+ * Operations on normalized Taylor coefficients f^(k)/k!, see
+ * {@link TaylorNumber}. Coefficient k (together with its partial derivatives)
+ * is the slice {@code [k * width, (k + 1) * width)} of a flat array.
+ * 
+ * Unlike {@link TDOperations}, this needs no product or composition tables:
+ * multiplication is a Cauchy convolution and the elementary functions follow
+ * the usual O(k^2) recurrences (see e.g. Griewank & Walther, Evaluating
+ * Derivatives, ch. 13). No target may alias an operand.
+ * 
+ * Instances are shared, so the temporaries of the recurrences are kept per
+ * thread and no operation allocates.
+ * 
+ * @author choeger
+ * 
+ */
+public final class TaylorOperations {
+
+    private static final ConcurrentMap<IntPair, TaylorOperations> instances = new ConcurrentHashMap<IntPair, TaylorOperations>();
+
+    public final int order;
+    public final int params;
+    public final int width;
+    public final int size;
+
+    /* k! for k = 0 .. order */
+    private final double[] factorials;
+
+    /* the product rule on single coefficients */
+    private final PDKernel kernel;
+
+    /* temporaries of the recurrences, per thread */
+    private final ThreadLocal<double[][]> work = buffers(5);
+
+    /* temporaries of the callers, see #operands() */
+    private final ThreadLocal<double[][]> operands = buffers(3);
+
+    private TaylorOperations(int order, int params) {
+        this.order = order;
+        this.params = params;
+        this.width = params + 1;
+        this.size = (order + 1) * width;
+        this.kernel = PDKernels.forLength(width);
+        this.factorials = new double[order + 1];
+        factorials[0] = 1.0;
+        for (int k = 1; k <= order; ++k)
+            factorials[k] = k * factorials[k - 1];
+    }
+
+    public static TaylorOperations getInstance(int order, int params) {
+        final IntPair key = new IntPair(order, params);
+        final TaylorOperations ops = instances.get(key);
+        if (ops != null)
+            return ops;
+        final TaylorOperations fresh = new TaylorOperations(order, params);
+        final TaylorOperations present = instances.putIfAbsent(key, fresh);
+        return present == null ? fresh : present;
+    }
+
+    public double factorial(int k) {
+        return factorials[k];
+    }
+
+    private ThreadLocal<double[][]> buffers(final int count) {
+        return new ThreadLocal<double[][]>() {
+            @Override
+            protected double[][] initialValue() {
+                return new double[count][size];
+            }
+        };
+    }
+
+    /**
+     * @return three arrays of this size owned by the calling thread, e.g. for
+     *         normalized operands and results. They are never used by the
+     *         operations of this class, but by every other caller on the same
+     *         thread, so they are only valid until the caller returns.
+     */
+    public double[][] operands() {
+        return operands.get();
+    }
+
+    private void one(final double[] target) {
+        Arrays.fill(target, 0.0);
+        target[0] = 1.0;
+    }
+
+    /* t_k += s * (a_i * b_j), product rule on the partial derivatives */
+    private void mac(final double[] a, int i, final double[] b, int j,
+            final double[] t, int k, final double s) {
+        kernel.multAdd(s, a, i * width, b, j * width, t, k * width, width);
+    }
+
+    /* t_k = t_k / d_i, quotient rule on the partial derivatives */
+    private void divide(final double[] t, int k, final double[] d, int i) {
+        final int tk = k * width;
+        final int di = i * width;
+        final double d0 = d[di];
+        final double q = t[tk] / d0;
+        t[tk] = q;
+        for (int p = 1; p < width; ++p)
+            t[tk + p] = (t[tk + p] - q * d[di + p]) / d0;
+    }
+
+    /* t_k = f(a_i) with f' = df, chain rule on the partial derivatives */
+    private void compose(final double f, final double df, final double[] a,
+            int i, final double[] t, int k) {
+        final int ai = i * width;
+        final int tk = k * width;
+        t[tk] = f;
+        for (int p = 1; p < width; ++p)
+            t[tk + p] = df * a[ai + p];
+    }
+
+    private void copy(final double[] a, int i, final double[] t, int k) {
+        System.arraycopy(a, i * width, t, k * width, width);
+    }
+
+    public void add(final double[] a, final double[] b, final double[] target) {
+        for (int i = 0; i < size; ++i)
+            target[i] = a[i] + b[i];
+    }
+
+    public void scale(final double s, final double[] a, final double[] target) {
+        for (int i = 0; i < size; ++i)
+            target[i] = s * a[i];
+    }
+
+    public void mult(final double[] a, final double[] b, final double[] target) {
+        mult(a, b, target, order + 1);
+    }
+
+    private void mult(final double[] a, final double[] b,
+            final double[] target, int n) {
+        Arrays.fill(target, 0, n * width, 0.0);
+        for (int k = 0; k < n; ++k)
+            for (int i = 0; i <= k; ++i)
+                mac(a, i, b, k - i, target, k, 1.0);
+    }
+
+    public void div(final double[] a, final double[] b, final double[] target) {
+        div(a, b, target, order + 1);
+    }
+
+    /* b_0 t_k = a_k - sum_{j=1}^{k} b_j t_{k-j} */
+    private void div(final double[] a, final double[] b,
+            final double[] target, int n) {
+        for (int k = 0; k < n; ++k) {
+            copy(a, k, target, k);
+            for (int j = 1; j <= k; ++j)
+                mac(b, j, target, k - j, target, k, -1.0);
+            divide(target, k, b, 0);
+        }
+    }
+
+    /* t_k = 1/k sum_{j=1}^{k} j a_j t_{k-j} */
+    public void exp(final double[] a, final double[] target) {
+        Arrays.fill(target, 0.0);
+        final double e = FastMath.exp(a[0]);
+        compose(e, e, a, 0, target, 0);
+        for (int k = 1; k <= order; ++k)
+            for (int j = 1; j <= k; ++j)
+                mac(a, j, target, k - j, target, k, j / (double) k);
+    }
+
+    /* a_0 t_k = a_k - 1/k sum_{j=1}^{k-1} j t_j a_{k-j} */
+    public void log(final double[] a, final double[] target) {
+        compose(FastMath.log(a[0]), 1.0 / a[0], a, 0, target, 0);
+        for (int k = 1; k <= order; ++k) {
+            copy(a, k, target, k);
+            for (int j = 1; j < k; ++j)
+                mac(target, j, a, k - j, target, k, -j / (double) k);
+            divide(target, k, a, 0);
+        }
+    }
+
+    /* 2 t_0 t_k = a_k - sum_{j=1}^{k-1} t_j t_{k-j} */
+    public void sqrt(final double[] a, final double[] target) {
+        final double r = FastMath.sqrt(a[0]);
+        compose(r, 0.5 / r, a, 0, target, 0);
+        for (int k = 1; k <= order; ++k) {
+            copy(a, k, target, k);
+            for (int j = 1; j < k; ++j)
+                mac(target, j, target, k - j, target, k, -1.0);
+            divide(target, k, target, 0);
+            for (int p = 0; p < width; ++p)
+                target[k * width + p] *= 0.5;
+        }
+    }
+
+    /**
+     * s_k = 1/k sum_{j=1}^{k} j a_j c_{k-j}, c_k = -1/k sum_{j=1}^{k} j a_j
+     * s_{k-j}
+     */
+    public void sinCos(final double[] a, final double[] sin, final double[] cos) {
+        Arrays.fill(sin, 0.0);
+        Arrays.fill(cos, 0.0);
+        final double s = FastMath.sin(a[0]);
+        final double c = FastMath.cos(a[0]);
+        compose(s, c, a, 0, sin, 0);
+        compose(c, -s, a, 0, cos, 0);
+        for (int k = 1; k <= order; ++k)
+            for (int j = 1; j <= k; ++j) {
+                mac(a, j, cos, k - j, sin, k, j / (double) k);
+                mac(a, j, sin, k - j, cos, k, -j / (double) k);
+            }
+    }
+
+    public void sin(final double[] a, final double[] target) {
+        sinCos(a, target, work.get()[0]);
+    }
+
+    public void cos(final double[] a, final double[] target) {
+        sinCos(a, work.get()[0], target);
+    }
+
+    /**
+     * tan and tanh: t' = a' u with u = 1 + sign * t^2, so t_k = 1/k
+     * sum_{j=1}^{k} j a_j u_{k-j} and u_k = sign * sum_{i=0}^{k} t_i t_{k-i}.
+     */
+    private void tangent(final double sign, final double f,
+            final double[] a, final double[] target) {
+        final double[] u = work.get()[0];
+        Arrays.fill(u, 0.0);
+        Arrays.fill(target, 0.0);
+        compose(f, 1.0 + sign * f * f, a, 0, target, 0);
+        u[0] = 1.0;
+        mac(target, 0, target, 0, u, 0, sign);
+        for (int k = 1; k <= order; ++k) {
+            for (int j = 1; j <= k; ++j)
+                mac(a, j, u, k - j, target, k, j / (double) k);
+            for (int i = 0; i <= k; ++i)
+                mac(target, i, target, k - i, u, k, sign);
+        }
+    }
+
+    public void tan(final double[] a, final double[] target) {
+        tangent(1.0, FastMath.tan(a[0]), a, target);
+    }
+
+    public void tanh(final double[] a, final double[] target) {
+        tangent(-1.0, FastMath.tanh(a[0]), a, target);
+    }
+
+    /* a_0 k t_k = sum_{j=1}^{k} (n j - (k - j)) a_j t_{k-j} */
+    public void pow(final double n, final double[] a, final double[] target) {
+        Arrays.fill(target, 0.0);
+        compose(FastMath.pow(a[0], n), n * FastMath.pow(a[0], n - 1), a, 0,
+                target, 0);
+        for (int k = 1; k <= order; ++k) {
+            for (int j = 1; j <= k; ++j)
+                mac(a, j, target, k - j, target, k, (n * j - (k - j))
+                        / (double) k);
+            divide(target, k, a, 0);
+        }
+    }
+
+    /**
+     * Integral powers by repeated squaring, so unlike the recurrence of
+     * {@link #pow(double, double[], double[])} this does not divide by the
+     * value.
+     */
+    public void pow(final int n, final double[] a, final double[] target) {
+        final double[][] w = work.get();
+        if (n < 0) {
+            /* the positive power uses w[1] .. w[4] */
+            final double[] p = w[0];
+            pow(-n, a, p);
+            one(w[1]);
+            div(w[1], p, target);
+            return;
+        }
+
+        double[] base = a;
+        double[] result = w[1];
+        double[] tmp = w[2];
+        double[] square = w[3];
+        double[] spare = w[4];
+        one(result);
+        for (int e = n; e > 0; e >>= 1) {
+            if ((e & 1) != 0) {
+                mult(result, base, tmp);
+                final double[] swap = result;
+                result = tmp;
+                tmp = swap;
+            }
+            if (e > 1) {
+                mult(base, base, square);
+                base = square;
+                square = spare;
+                spare = base;
+            }
+        }
+        System.arraycopy(result, 0, target, 0, size);
+    }
+
+    public void abs(final double[] a, final double[] target) {
+        scale(a[0] < 0 ? -1.0 : 1.0, a, target);
+    }
+
+    /**
+     * phi' = (x y' - y x') / (x^2 + y^2): the derivative series q is computed
+     * one order short and integrated, phi_k = q_{k-1} / k.
+     */
+    public void atan2(final double[] y, final double[] x, final double[] target) {
+        final double x0 = x[0];
+        final double y0 = y[0];
+        final double r0 = x0 * x0 + y0 * y0;
+        target[0] = FastMath.atan2(y0, x0);
+        for (int p = 1; p < width; ++p)
+            target[p] = (x0 * y[p] - y0 * x[p]) / r0;
+
+        final int n = order;
+        if (n == 0)
+            return;
+
+        final double[][] w = work.get();
+        final double[] dy = derivative(y, w[0]);
+        final double[] dx = derivative(x, w[1]);
+        final double[] num = w[2];
+        final double[] r = w[3];
+        final double[] q = w[4];
+        Arrays.fill(num, 0.0);
+        Arrays.fill(r, 0.0);
+        for (int k = 0; k < n; ++k)
+            for (int i = 0; i <= k; ++i) {
+                mac(x, i, dy, k - i, num, k, 1.0);
+                mac(y, i, dx, k - i, num, k, -1.0);
+                mac(x, i, x, k - i, r, k, 1.0);
+                mac(y, i, y, k - i, r, k, 1.0);
+            }
+        div(num, r, q, n);
+        for (int k = 1; k <= order; ++k)
+            for (int p = 0; p < width; ++p)
+                target[k * width + p] = q[(k - 1) * width + p] / k;
+    }
+
+    /* coefficients of a', one order short: (a')_k = (k + 1) a_{k+1} */
+    private double[] derivative(final double[] a, final double[] d) {
+        for (int k = 0; k < order; ++k)
+            for (int p = 0; p < width; ++p)
+                d[k * width + p] = (k + 1) * a[(k + 1) * width + p];
+        return d;
+    }
+
+    /**
+     * @return the Taylor coefficients of a constant with the given (total,
+     *         not normalized) derivatives
+     */
+    public double[] constant(double d, double... dt) {
+        final double[] values = new double[size];
+        values[0] = d;
+        for (int i = 0; i < Math.min(dt.length, order); ++i)
+            values[(i + 1) * width] = dt[i] / factorials[i + 1];
+        return values;
+    }
+
+    public TaylorNumber constantNumber(double d, double... dt) {
+        return new TaylorNumber(this, constant(d, dt));
+    }
+
+    public TaylorNumber variable(int idx, double... der) {
+        return variable(idx, 0, der);
+    }
+
+    /**
+     * @see TDOperations#variable(int, int, double...)
+     */
+    public TaylorNumber variable(int idx, int derivatives, double... der) {
+        final double[] values = new double[size];
+        for (int i = 0; i <= order; i++)
+            values[i * width] = der[i] / factorials[i];
+
+        if (params > 0)
+            for (int i = 0; i <= derivatives; i++)
+                values[i * width + 1 + idx + i] = 1.0 / factorials[i];
+        return new TaylorNumber(this, values);
+    }
+
+    public void fromTotal(final PDNumber[] a, final double[] target) {
+        for (int k = 0; k <= order; ++k)
+            if (a[k] == null)
+                Arrays.fill(target, k * width, (k + 1) * width, 0.0);
+            else
+                for (int p = 0; p < width; ++p)
+                    target[k * width + p] = a[k].values[p] / factorials[k];
+    }
+
+    public PDNumber[] toTotal(final double[] a) {
+        final PDNumber[] values = new PDNumber[order + 1];
+        toTotal(a, values);
+        return values;
+    }
+
+    /**
+     * Write total derivatives into target, allocating missing entries.
+     */
+    public void toTotal(final double[] a, final PDNumber[] target) {
+        for (int k = 0; k <= order; ++k) {
+            if (target[k] == null)
+                target[k] = new PDNumber(PDOperations.get(params),
+                        new double[width]);
+            final double[] d = target[k].values;
+            for (int p = 0; p < width; ++p)
+                d[p] = a[k * width + p] * factorials[k];
+        }
+    }
+
+    /**
+     * Normalize total derivatives in the flat layout of {@link TDOperations}.
+     */
+    public void fromFlat(final double[] a, final double[] target) {
+        for (int k = 0; k <= order; ++k)
+            for (int p = 0; p < width; ++p)
+                target[k * width + p] = a[k * width + p] / factorials[k];
+    }
+
+    public void toFlat(final double[] a, final double[] target) {
+        for (int k = 0; k <= order; ++k)
+            for (int p = 0; p < width; ++p)
+                target[k * width + p] = a[k * width + p] * factorials[k];
+    }
+
+    @Override
+    public String toString() {
+        return "TaylorOperations [order=" + order + ", params=" + params + "]";
+    }
+}
@@ -27,7 +27,7 @@ import com.google.common.collect.ImmutableMap;
 
 import de.tuberlin.uebb.jdae.dae.LoadableModel;
 import de.tuberlin.uebb.jdae.diff.total.TDNumber;
-import de.tuberlin.uebb.jdae.diff.total.TDRegister;
+import de.tuberlin.uebb.jdae.diff.total.TDRegisterFile;
 import de.tuberlin.uebb.jdae.hlmsl.Equation;
 import de.tuberlin.uebb.jdae.hlmsl.Unknown;
 import de.tuberlin.uebb.jdae.hlmsl.specials.ConstantEquation;
@@ -162,12 +162,14 @@ public final class Pendulum implements LoadableModel {
             this.F = F;
         }
 
+        /* -x * F + ddx */
         public TDNumber exec(final ExecutionContext m) {
-            final TDRegister reg1 = new TDRegister(x.load(m));
-            reg1.mult(F.load(m));
-            reg1.mult(-1);
-            reg1.add(x.der(m, 2).load(m));
-            return reg1.unsafe();
+            final TDRegisterFile r = m.load(0, x);
+            m.load(1, F);
+            r.scale(1, 1, -1);
+            m.load(2, x.der(m, 2));
+            r.fma(0, 0, 1, 2);
+            return r.get(0);
         }
     }
 
@@ -252,13 +254,15 @@ public final class Pendulum implements LoadableModel {
             this.F = F;
         }
 
+        /* -(y * F - g) + ddy */
         public TDNumber exec(final ExecutionContext m) {
-            final TDRegister reg1 = new TDRegister(y.load(m));
-            reg1.mult(F.load(m));
-            reg1.add(-g);
-            reg1.mult(-1);
-            reg1.add(y.der(m, 2).load(m));
-            return reg1.unsafe();
+            final TDRegisterFile r = m.load(0, y);
+            m.load(1, F);
+            r.scale(1, 1, -1);
+            m.load(2, y.der(m, 2));
+            r.fma(0, 0, 1, 2);
+            r.addConstant(0, 0, g);
+            return r.get(0);
         }
     }
 
@@ -346,15 +350,14 @@ public final class Pendulum implements LoadableModel {
             this.y = y;
         }
 
+        /* x² + y² - 1 */
         public TDNumber exec(final ExecutionContext m) {
-            final TDRegister reg1 = new TDRegister(x.load(m));
-            reg1.square();
-            final TDRegister reg2 = new TDRegister(y.load(m));
-            reg2.square();
-            reg1.add(reg2.unsafe());
-            reg1.add(-1);
-
-            return reg1.unsafe();
+            final TDRegisterFile r = m.load(0, x);
+            m.load(1, y);
+            r.mult(1, 1, 1);
+            r.fma(0, 0, 0, 1);
+            r.addConstant(0, 0, -1);
+            return r.get(0);
         }
     }
 
@@ -97,6 +97,10 @@ public final class StiffHybrid implements LoadableModel {
                                 return ImmutableList.of(gdx1);
                             }
 
+                            @Override
+                            public void resetHistory() {
+                            }
+
                         };
                     throw new IllegalArgumentException("Cannot specialize for "
                             + v);
@@ -163,6 +167,10 @@ public final class StiffHybrid implements LoadableModel {
                             public Iterable<GlobalVariable> variables() {
                                 return ImmutableList.of(gx1);
                             }
+
+                            @Override
+                            public void resetHistory() {
+                            }
                         };
                     } else if (v.equals(gx2)) {
                         return new IBlock() {
@@ -177,6 +185,10 @@ public final class StiffHybrid implements LoadableModel {
                             public Iterable<GlobalVariable> variables() {
                                 return ImmutableList.of(gx2);
                             }
+
+                            @Override
+                            public void resetHistory() {
+                            }
                         };
                     } else {
                         throw new IllegalArgumentException(
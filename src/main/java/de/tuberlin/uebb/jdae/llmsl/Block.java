@@ -23,6 +23,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.math3.analysis.MultivariateMatrixFunction;
 import org.apache.commons.math3.analysis.MultivariateVectorFunction;
@@ -30,24 +31,33 @@ import org.apache.commons.math3.exception.ConvergenceException;
 import org.ejml.data.DenseMatrix64F;
 import org.ejml.factory.LinearSolver;
 import org.ejml.factory.LinearSolverFactory;
+import org.ejml.ops.CommonOps;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 
+import de.tuberlin.uebb.jdae.diff.partial.SparsePDNumber;
+import de.tuberlin.uebb.jdae.diff.total.FlatTDNumber;
+import de.tuberlin.uebb.jdae.diff.total.TDCache;
 import de.tuberlin.uebb.jdae.diff.total.TDNumber;
+import de.tuberlin.uebb.jdae.diff.total.TDTape;
 import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+import de.tuberlin.uebb.jdae.solvers.Extrapolation;
+import de.tuberlin.uebb.jdae.solvers.SparseLU;
 import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
 
 /**
  * @author choeger
  * 
  */
-public final class Block implements MultivariateVectorFunction, IBlock {
+public final class Block implements MultivariateVectorFunction, IBlock,
+        Instrumented {
 
-    private static final double TOLERANCE = 1e-8;
-    public static long evals;
+    static final double TOLERANCE = 1e-8;
+    /* milliseconds spent evaluating residuals, by all blocks on all threads */
+    public static final AtomicLong evals = new AtomicLong();
 
     public static final class Residual {
         public final BlockEquation eq;
@@ -66,10 +76,42 @@ public final class Block implements MultivariateVectorFunction, IBlock {
     public final Residual[] equations;
     public final ExecutionContext[] views;
 
-    /* memoization */
+    /* the equation of every residual */
+    private final GlobalEquation[] sources;
+
+    /* the views and equations for residual values only */
+    private final ExecutionContext[] valueViews;
+    private final ValueEquation[] valueEquations;
+
+    /* memoization, current if the residuals belong to the point */
     private final TDNumber[] residuals;
+    private boolean current;
+
+    /* the residuals in the flat layout, if all equations provide it */
+    private final FlatEquation[] flatEquations;
+    private final FlatTDNumber[] flatResiduals;
+
+    /* the residuals with sparse gradients, if all equations provide them */
+    private final SparseEquation[] sparseEquations;
+    private final SparsePDNumber[] sparseResiduals;
+
+    /* reverse mode: the tape and the first node of every residual */
+    private final TDTape tape;
+    private final int[] segments;
+    private final double[] row;
     private double[] lastPoint = null;
 
+    /*
+     * structural sparsity: the iteratees every equation may depend on, and
+     * the seed direction of every iteratee (null for one per iteratee)
+     */
+    private final int[][] structure;
+    private final int[] colors;
+    private final int directions;
+
+    /* common subexpressions of all views, if shared */
+    private final TDCache cache;
+
     /* simulation flags */
     final SimulationOptions options;
 
@@ -85,7 +127,7 @@ public final class Block implements MultivariateVectorFunction, IBlock {
                 .toArray(new GlobalVariable[variables.size()]);
         Arrays.sort(this.variables, Ordering.natural());
 
-        this.view = new ExecutionContext(0, this.variables, data);
+        this.view = ExecutionContext.sharing(0, this.variables, data);
 
         final Map<Integer, Integer> gvIndex = Maps.newTreeMap();
 
@@ -98,21 +140,333 @@ public final class Block implements MultivariateVectorFunction, IBlock {
 
         this.views = new ExecutionContext[equations.size()];
         this.equations = new Residual[equations.size()];
+        this.sources = new GlobalEquation[equations.size()];
         this.residuals = new TDNumber[equations.size()];
 
         int index = 0;
         for (DerivedEquation e : equations) {
             this.equations[index] = new Residual(e.eqn.bind(blockVars),
                     e.minOrder, e.maxOrder);
-            views[index++] = view.derived(e.maxOrder);
+            this.sources[index++] = e.eqn;
+        }
+
+        this.sparseEquations = sparseEquations(options);
+        this.sparseResiduals = sparseEquations != null ? new SparsePDNumber[equations
+                .size()] : null;
+
+        this.tape = sparseEquations == null
+                && useReverseMode(equations, options) ? new TDTape() : null;
+        this.segments = new int[equations.size()];
+        this.row = new double[this.variables.length];
+
+        this.structure = new int[equations.size()][];
+        index = 0;
+        for (DerivedEquation e : equations)
+            structure[index++] = structure(e);
+
+        final int[] coloring = new int[this.variables.length];
+        final int colorCount = color(structure, coloring);
+        if (tape == null && sparseEquations == null
+                && options.jacobianColoring
+                && colorCount < this.variables.length) {
+            this.colors = coloring;
+            this.directions = colorCount;
+        } else {
+            this.colors = null;
+            this.directions = this.variables.length;
+        }
+
+        this.cache = tape == null && options.arenaAllocation
+                && options.expressionSharing ? new TDCache() : null;
+
+        index = 0;
+        for (DerivedEquation e : equations) {
+            ExecutionContext derived = view.derived(e.maxOrder);
+            if (tape != null)
+                derived = derived.withTape(tape);
+            else if (colors != null)
+                derived = derived.withColoring(colors, directions);
+            if (cache != null)
+                derived = derived.withCache(cache);
+            else if (options.arenaAllocation)
+                derived = derived.withArena();
+            views[index++] = derived;
         }
 
-        jacobianMatrix = new DenseMatrix64F(this.variables.length,
-                this.variables.length);
+        this.flatEquations = flatEquations(options);
+        this.flatResiduals = flatEquations != null ? new FlatTDNumber[equations
+                .size()] : null;
+
+        this.valueViews = new ExecutionContext[views.length];
+        this.valueEquations = new ValueEquation[views.length];
+        for (int i = 0; i < views.length; ++i) {
+            valueViews[i] = views[i].withoutPartials();
+            valueEquations[i] = ValueEquations.adapt(this.equations[i].eq);
+        }
+
+        this.inverse = options.broyden ? new DenseMatrix64F(
+                this.variables.length, this.variables.length) : null;
+
+        this.sparse = useSparseSolver(options) ? SparseLU.analyze(
+                this.variables.length, jacobianStructure()) : null;
+
+        this.constantJacobian = options.linearBlocks && isLinear(equations);
+        this.affine = constantJacobian;
+
+        this.history = options.extrapolationOrder > 0 ? new Extrapolation(
+                this.variables.length, options.extrapolationOrder) : null;
+
+        /* sparse blocks only need a dense Jacobian on fallback */
+        jacobianMatrix = sparse != null ? new DenseMatrix64F(0, 0)
+                : new DenseMatrix64F(this.variables.length,
+                        this.variables.length);
         residual = new DenseMatrix64F(this.variables.length, 1);
         x = new DenseMatrix64F(this.variables.length);
         solver = LinearSolverFactory.linear(this.variables.length);
         this.point = new double[this.variables.length];
+        this.base = new double[this.variables.length];
+        this.trial = options.trustRegion ? new double[this.variables.length]
+                : null;
+        this.descent = options.trustRegion ? new double[this.variables.length]
+                : null;
+        if (options.trustRegion) {
+            this.storedColumns = new int[this.variables.length][];
+            this.stored = new double[this.variables.length][];
+            for (int r = 0; r < this.variables.length; r++) {
+                storedColumns[r] = columns(r);
+                stored[r] = new double[storedColumns[r].length];
+            }
+        } else {
+            this.storedColumns = null;
+            this.stored = null;
+        }
+
+        assert colors == null || isColoringExact() : "Some equation of "
+                + equations + " depends on an iteratee it does not need().";
+    }
+
+    /**
+     * Debug check of compressed seeding: the colors are only correct, if
+     * need() reports every iteratee an equation depends on. Compare the
+     * Jacobian at the current data with the one of uncompressed seeds.
+     */
+    private boolean isColoringExact() {
+        views[0].loadD(point, variables);
+        forceCompute();
+        current = false;
+
+        for (int i = 0; i < equations.length; i++) {
+            final TDNumber r = equations[i].eq.exec(view
+                    .derived(equations[i].maxOrder));
+            for (int di = equations[i].minOrder; di <= equations[i].maxOrder; di++) {
+                writeJacobianRow(i, di, row);
+                for (int j = 0; j < variables.length; j++) {
+                    final double expected = r.der(di, j);
+                    if (!(Math.abs(row[j] - expected) <= TOLERANCE
+                            * (1.0 + Math.abs(expected)))
+                            && !(Double.isNaN(row[j]) && Double
+                                    .isNaN(expected)))
+                        return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLinear(final Set<DerivedEquation> equations) {
+        for (DerivedEquation e : equations)
+            if (!e.eqn.isLinear())
+                return false;
+        return true;
+    }
+
+    /**
+     * Reverse mode pays off once the forward-mode partial derivatives get
+     * wide, but the tape only records values, so all equations have to be
+     * underived.
+     */
+    private boolean useReverseMode(Set<DerivedEquation> equations,
+            SimulationOptions options) {
+        if (options.reverseModeThreshold <= 0
+                || variables.length < options.reverseModeThreshold)
+            return false;
+
+        for (DerivedEquation e : equations)
+            if (e.maxOrder > 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * @return the flat-layout path of every equation, or null if flat
+     *         residuals are disabled or not provided by all equations
+     */
+    private FlatEquation[] flatEquations(SimulationOptions options) {
+        if (!options.flatResiduals || tape != null || sparseEquations != null)
+            return null;
+
+        final FlatEquation[] flat = new FlatEquation[equations.length];
+        for (int i = 0; i < equations.length; i++) {
+            if (!(equations[i].eq instanceof FlatEquation))
+                return null;
+            flat[i] = (FlatEquation) equations[i].eq;
+        }
+        return flat;
+    }
+
+    /**
+     * Sparse gradients pay off for wide blocks, whose equations only touch
+     * a few iteratees each. Like the tape, they only carry values.
+     * 
+     * @return the sparse path of every equation, or null
+     */
+    private SparseEquation[] sparseEquations(SimulationOptions options) {
+        if (options.sparseGradientThreshold <= 0
+                || variables.length < options.sparseGradientThreshold)
+            return null;
+
+        final SparseEquation[] sparse = new SparseEquation[equations.length];
+        for (int i = 0; i < equations.length; i++) {
+            if (equations[i].maxOrder > 0
+                    || !(equations[i].eq instanceof SparseEquation))
+                return null;
+            sparse[i] = (SparseEquation) equations[i].eq;
+        }
+        return sparse;
+    }
+
+    /**
+     * @return true, if the Jacobian rows are read from sparse gradients
+     */
+    public boolean isSparseGradient() {
+        return sparseEquations != null;
+    }
+
+    /**
+     * @return true, if the residuals are evaluated in the flat layout
+     */
+    public boolean isFlat() {
+        return flatEquations != null;
+    }
+
+    /**
+     * @return the cache shared by the residual evaluations of this block, or
+     *         null if subexpressions are not shared
+     */
+    public TDCache expressionCache() {
+        return cache;
+    }
+
+    /**
+     * Dense factorization gets too expensive for large blocks, unless their
+     * Jacobian is dense anyway.
+     */
+    private boolean useSparseSolver(SimulationOptions options) {
+        final int n = variables.length;
+        if (options.sparseThreshold <= 0 || n < options.sparseThreshold)
+            return false;
+
+        long nonZeros = 0;
+        for (int[] r : jacobianStructure())
+            nonZeros += r.length;
+        return nonZeros <= options.sparseDensity * n * n;
+    }
+
+    /**
+     * @return the structure of the Jacobian rows, see writeJacobian()
+     */
+    private int[][] jacobianStructure() {
+        final int[][] rows = new int[variables.length][];
+        int index = 0;
+        for (int i = 0; i < equations.length; i++)
+            for (int di = equations[i].minOrder; di <= equations[i].maxOrder; di++)
+                rows[index++] = structure[i];
+        return rows;
+    }
+
+    /**
+     * @return true, if the Newton steps of this block use a sparse LU
+     *         factorization
+     */
+    public boolean isSparse() {
+        return sparse != null;
+    }
+
+    public boolean isReverseMode() {
+        return tape != null;
+    }
+
+    /**
+     * @return the number of partial-derivative directions every residual is
+     *         evaluated with
+     */
+    public int directions() {
+        return tape != null ? 0 : directions;
+    }
+
+    /**
+     * An equation may depend on every derivative of the variables it needs,
+     * so all iteratees sharing the index of a needed variable are
+     * structurally non-zero.
+     */
+    private int[] structure(DerivedEquation e) {
+        final Set<Integer> needed = Sets.newHashSet();
+        for (GlobalVariable gv : e.eqn.need())
+            needed.add(gv.index);
+
+        final int[] columns = new int[variables.length];
+        int count = 0;
+        for (int j = 0; j < variables.length; j++)
+            if (needed.contains(variables[j].index))
+                columns[count++] = j;
+        return Arrays.copyOf(columns, count);
+    }
+
+    /**
+     * Greedy column coloring: two iteratees get different colors, if some
+     * equation depends on both.
+     * 
+     * @return the number of colors used
+     */
+    private static int color(final int[][] structure, final int[] colors) {
+        final int n = colors.length;
+        final int[][] rows = transpose(structure, n);
+        final int[] forbidden = new int[n];
+        Arrays.fill(forbidden, -1);
+        Arrays.fill(colors, -1);
+
+        int count = 0;
+        for (int j = 0; j < n; j++) {
+            for (int r : rows[j])
+                for (int k : structure[r])
+                    if (colors[k] >= 0)
+                        forbidden[colors[k]] = j;
+
+            int c = 0;
+            while (forbidden[c] == j)
+                c++;
+            colors[j] = c;
+            count = Math.max(count, c + 1);
+        }
+        return count;
+    }
+
+    /* the equations depending on every iteratee */
+    private static int[][] transpose(final int[][] structure, int n) {
+        final int[] counts = new int[n];
+        for (int[] columns : structure)
+            for (int j : columns)
+                counts[j]++;
+
+        final int[][] rows = new int[n][];
+        for (int j = 0; j < n; j++)
+            rows[j] = new int[counts[j]];
+
+        Arrays.fill(counts, 0);
+        for (int r = 0; r < structure.length; r++)
+            for (int j : structure[r])
+                rows[j][counts[j]++] = r;
+        return rows;
     }
 
     private Map<GlobalVariable, BlockVariable> makeBlockVars(DataLayout layout,
@@ -145,6 +499,76 @@ public final class Block implements MultivariateVectorFunction, IBlock {
         return blockVars;
     }
 
+    /**
+     * @return the Jacobian row of the lowest derivative of the given
+     *         equation, or -1 if it is not part of this block
+     */
+    int row(final GlobalEquation eqn) {
+        int index = 0;
+        for (int i = 0; i < equations.length; i++) {
+            if (sources[i] == eqn)
+                return index;
+            index += equations[i].maxOrder - equations[i].minOrder + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the Jacobian column of the given iteratee, or a negative number
+     */
+    int column(final GlobalVariable v) {
+        return Arrays.binarySearch(variables, v, Ordering.natural());
+    }
+
+    /**
+     * @return the columns of the structurally non-zero Jacobian entries of
+     *         the given row, in ascending order
+     */
+    int[] columns(int row) {
+        int index = 0;
+        for (int i = 0; i < equations.length; i++) {
+            index += equations[i].maxOrder - equations[i].minOrder + 1;
+            if (row < index)
+                return structure[i];
+        }
+        throw new IndexOutOfBoundsException("No row " + row);
+    }
+
+    /**
+     * Evaluate residuals (in the order Newton's method uses) and only the
+     * structurally non-zero Jacobian entries at the given point:
+     * entries[r][t] is the partial derivative of row r w.r.t. the iteratee
+     * {@link #columns(int)}[t]. The seeds are those of the block, so with
+     * coloring enabled fewer directions than iteratees are evaluated.
+     */
+    void linearize(final double[] point, final double[] residual,
+            final double[][] entries) {
+        System.arraycopy(point, 0, this.point, 0, point.length);
+        forceCompute();
+        writeResidual(residual);
+        writeEntries(entries);
+    }
+
+    /* the structural Jacobian entries of every row, see linearize() */
+    private void writeEntries(final double[][] entries) {
+        int index = 0;
+        for (int i = 0; i < equations.length; i++) {
+            final int[] columns = structure[i];
+            for (int di = equations[i].minOrder; di <= equations[i].maxOrder; di++) {
+                final double[] e = entries[index++];
+                if (tape != null || sparseResiduals != null) {
+                    writeJacobianRow(i, di, row);
+                    for (int t = 0; t < columns.length; t++)
+                        e[t] = row[columns[t]];
+                } else {
+                    for (int t = 0; t < columns.length; t++)
+                        e[t] = partial(i, di, colors == null ? columns[t]
+                                : colors[columns[t]]);
+                }
+            }
+        }
+    }
+
     @Override
     public double[] value(double[] point) {
         compute(point);
@@ -159,10 +583,9 @@ public final class Block implements MultivariateVectorFunction, IBlock {
     private final void writeResidual(double[] ret) {
         int index = 0;
         for (int i = 0; i < residuals.length; i++) {
-            final TDNumber r = residuals[i];
             final Residual eq = equations[i];
             for (int di = eq.minOrder; di <= eq.maxOrder; di++) {
-                ret[index++] = r.der(di);
+                ret[index++] = residual(i, di);
             }
         }
     }
@@ -172,11 +595,10 @@ public final class Block implements MultivariateVectorFunction, IBlock {
 
         int index = 0;
         for (int i = 0; i < residuals.length; i++) {
-            final TDNumber r = residuals[i];
             final Residual eq = equations[i];
 
             for (int di = eq.minOrder; di <= eq.maxOrder; di++) {
-                final double dres = -r.der(di);
+                final double dres = -residual(i, di);
                 converged &= dres <= TOLERANCE && dres >= -TOLERANCE;
                 ret[index++] = dres;
             }
@@ -187,7 +609,7 @@ public final class Block implements MultivariateVectorFunction, IBlock {
 
     private void compute(double point[]) {
 
-        if (!Arrays.equals(point, this.point) || residuals[0] == null) {
+        if (!Arrays.equals(point, this.point) || !current) {
             for (int i = 0; i < point.length; i++)
                 this.point[i] = point[i];
             forceCompute();
@@ -199,25 +621,154 @@ public final class Block implements MultivariateVectorFunction, IBlock {
 
         views[0].set(0, variables, point);
 
+        for (ExecutionContext v : views)
+            v.reset();
+
+        for (int i = 0; i < equations.length; i++) {
+            if (tape != null)
+                segments[i] = tape.size();
+            if (sparseEquations != null)
+                sparseResiduals[i] = sparseEquations[i].execSparse(view);
+            else if (flatEquations != null)
+                flatResiduals[i] = flatEquations[i].execFlat(views[i]);
+            else
+                residuals[i] = equations[i].eq.exec(views[i]);
+        }
+        current = true;
+
+        evals.addAndGet(System.currentTimeMillis() - s);
+    }
+
+    /**
+     * Evaluate the negated residuals at the point without any partial
+     * derivatives. Underived equations take the double-only path.
+     * 
+     * @return true, if all residuals are within the tolerance
+     */
+    private boolean evaluateValues() {
+        final long s = System.currentTimeMillis();
+
+        valueViews[0].set(0, variables, point);
+
+        for (ExecutionContext v : valueViews)
+            v.reset();
+
+        boolean converged = true;
+        int index = 0;
         for (int i = 0; i < equations.length; i++) {
-            residuals[i] = equations[i].eq.exec(views[i]);
+            final Residual eq = equations[i];
+            if (eq.maxOrder == 0) {
+                final double dres = -valueEquations[i].execValue(valueViews[i]);
+                converged &= dres <= TOLERANCE && dres >= -TOLERANCE;
+                residual.data[index++] = dres;
+            } else {
+                final TDNumber r = eq.eq.exec(valueViews[i]);
+                for (int di = eq.minOrder; di <= eq.maxOrder; di++) {
+                    final double dres = -r.der(di);
+                    converged &= dres <= TOLERANCE && dres >= -TOLERANCE;
+                    residual.data[index++] = dres;
+                }
+            }
         }
 
-        evals += (System.currentTimeMillis() - s);
+        /* the memoized residuals do not belong to this point any more */
+        current = false;
+
+        evals.addAndGet(System.currentTimeMillis() - s);
+        return converged;
+    }
+
+    /**
+     * @return true, if the residuals at the point are converged. Only
+     *         evaluates values, if the block is configured to do so.
+     */
+    private boolean converged() {
+        if (options.valueResiduals)
+            return evaluateValues();
+
+        forceCompute();
+        return writeNegResidual(residual.data);
+    }
+
+    /**
+     * Make sure the residuals (and their partial derivatives) belong to the
+     * point, before the Jacobian is read.
+     */
+    private void linearize() {
+        if (!current)
+            forceCompute();
     }
 
     private final void writeJacobian() {
+        jacobianMatrix.reshape(variables.length, variables.length, false);
         int index = 0;
 
         for (int i = 0; i < equations.length; i++)
             for (int di = equations[i].minOrder; di <= equations[i].maxOrder; di++) {
+                writeJacobianRow(i, di, row);
                 for (int j = 0; j < variables.length; j++) {
-                    jacobianMatrix.set(index, j, residuals[i].der(di, j));
+                    jacobianMatrix.set(index, j, row[j]);
                 }
                 index++;
             }
     }
 
+    private final void writeSparseJacobian() {
+        sparse.clear();
+        int index = 0;
+
+        for (int i = 0; i < equations.length; i++)
+            for (int di = equations[i].minOrder; di <= equations[i].maxOrder; di++) {
+                if (tape != null) {
+                    Arrays.fill(row, 0.0);
+                    tape.gradient(residuals[i], segments[i], row);
+                } else if (sparseResiduals != null) {
+                    for (int j : structure[i])
+                        row[j] = 0.0;
+                    sparseResiduals[i].scatter(row);
+                } else {
+                    /* only the structural entries are read */
+                    for (int j : structure[i])
+                        row[j] = partial(i, di, colors == null ? j
+                                : colors[j]);
+                }
+                sparse.setRow(index++, row);
+            }
+    }
+
+    private final void writeJacobianRow(int i, int di, double[] row) {
+        if (tape != null) {
+            Arrays.fill(row, 0.0);
+            tape.gradient(residuals[i], segments[i], row);
+        } else if (sparseResiduals != null) {
+            Arrays.fill(row, 0.0);
+            sparseResiduals[i].scatter(row);
+        } else if (colors != null) {
+            Arrays.fill(row, 0.0);
+            for (int j : structure[i])
+                row[j] = partial(i, di, colors[j]);
+        } else {
+            for (int j = 0; j < variables.length; j++)
+                row[j] = partial(i, di, j);
+        }
+    }
+
+    /* the di-th derivative of residual i */
+    private double residual(int i, int di) {
+        if (sparseResiduals != null)
+            return sparseResiduals[i].value;
+        return flatResiduals != null ? flatResiduals[i].der(di) : residuals[i]
+                .der(di);
+    }
+
+    /* its partial derivative in the given direction */
+    private double partial(int i, int di, int direction) {
+        if (sparseResiduals != null)
+            return sparseResiduals[i].der(direction);
+        return flatResiduals != null ? flatResiduals[i].der(di, direction)
+                : residuals[i].der(di, direction);
+    }
+
     /* Jacobian */
     private final MultivariateMatrixFunction jacobian = new MultivariateMatrixFunction() {
 
@@ -230,9 +781,7 @@ public final class Block implements MultivariateVectorFunction, IBlock {
 
             for (int i = 0; i < equations.length; i++)
                 for (int di = 0; di <= equations[i].maxOrder; di++) {
-                    for (int j = 0; j < variables.length; j++) {
-                        ret[index][j] = residuals[i].der(di, j);
-                    }
+                    writeJacobianRow(i, di, ret[index]);
                     index++;
                 }
 
@@ -245,17 +794,70 @@ public final class Block implements MultivariateVectorFunction, IBlock {
     private LinearSolver<DenseMatrix64F> solver;
     private final double[] point;
 
+    /* the solver holds a factorization to reuse, see exec() */
+    private boolean factored;
+
+    /* large sparse blocks: the solver and whether it holds the factorization */
+    private final SparseLU sparse;
+    private boolean sparseFactored;
+
+    /* the last solutions, to extrapolate starting points from */
+    private final Extrapolation history;
+
+    /* quasi-Newton: approximate inverse Jacobian and its age in steps */
+    private final DenseMatrix64F inverse;
+    private boolean inverted;
+    private int updates;
+    private long iterations;
+    private long factorizations;
+    private BlockStatistics statistics;
+
+    /* globalization: the point a step starts from, the dogleg step */
+    private final double[] base;
+    private final double[] trial;
+    private final double[] descent;
+    private double radius;
+
+    /* trust region: the structural entries of the factorized Jacobian */
+    private final int[][] storedColumns;
+    private final double[][] stored;
+
+    /* affine residuals, with a constant Jacobian if known structurally */
+    private final boolean constantJacobian;
+    private boolean affine;
+    private boolean probed;
+    private static final double PROBE = 1e-3;
+    /* the golden ratio, see weight() */
+    private static final double GOLDEN = 0.5 * (1.0 + Math.sqrt(5.0));
+
+    /* sufficient decrease of Armijo's rule and the smallest damping */
+    private static final double ARMIJO = 1e-4;
+    private static final double MIN_DAMPING = 1.0 / 1024;
+
     public MultivariateMatrixFunction jacobian() {
         return jacobian;
     }
 
     public void exec() {
+        if (affine && execLinear())
+            return;
 
-        views[0].loadD(point, variables);
-        forceCompute();
+        if (options.broyden) {
+            execBroyden();
+            return;
+        }
+
+        start();
 
         int steps = options.maxIterations;
-        while (!writeNegResidual(residual.data)) {
+        /* steps taken on the current factorization and the last step size */
+        int chord = 0;
+        double last = 0.0;
+        /* consecutive iterations that did not reduce the residual */
+        int stalled = 0;
+        radius = -1.0;
+        boolean converged = converged();
+        while (!converged) {
             if (steps-- <= 0) {
                 views[0].loadD(point, variables);
                 forceCompute();
@@ -265,18 +867,583 @@ public final class Block implements MultivariateVectorFunction, IBlock {
 
                 throw new ConvergenceException();
             }
-            writeJacobian();
-            if (!solver.setA(jacobianMatrix))
-                throw new ConvergenceException();
-            solver.solve(residual, x);
+            iterations++;
+            if (statistics != null)
+                statistics.iterations++;
+
+            if (!options.simplifiedNewton || !factored
+                    || chord >= options.chordIterations) {
+                linearize();
+                factorize();
+                chord = 0;
+                if (!probed && options.linearProbe)
+                    probe();
+            }
+            solve();
+            double step = norm(x.data);
+
+            if (chord > 0 && step > options.chordContraction * last) {
+                /* the old Jacobian does not contract any more */
+                linearize();
+                factorize();
+                chord = 0;
+                solve();
+                step = norm(x.data);
+            }
+            chord++;
+            last = step;
+
+            final double before = norm2(residual.data);
+            if (options.trustRegion)
+                converged = dogleg(before);
+            else if (options.lineSearch)
+                converged = lineSearch(before);
+            else {
+                for (int i = 0; i < point.length; ++i)
+                    point[i] += x.data[i];
+                converged = converged();
+            }
+
+            if (!converged && options.divergenceLimit > 0) {
+                /* NaN residuals do not contract either */
+                stalled = norm2(residual.data) < before ? 0 : stalled + 1;
+                if (stalled >= options.divergenceLimit)
+                    throw new ConvergenceException();
+            }
+        }
+
+        accept();
+    }
+
+    /**
+     * Armijo backtracking along the Newton step x: the step is halved until
+     * ||F||² decreases by at least 2 * ARMIJO * damping * ||F||², the last
+     * step is taken anyway.
+     * 
+     * @return true, if the new point is converged
+     */
+    private boolean lineSearch(final double before) {
+        System.arraycopy(point, 0, base, 0, point.length);
+
+        double damping = 1.0;
+        while (true) {
+            for (int i = 0; i < point.length; ++i)
+                point[i] = base[i] + damping * x.data[i];
+
+            if (converged())
+                return true;
+
+            final double after = norm2(residual.data);
+            if (after * after <= (1 - 2 * ARMIJO * damping) * before * before
+                    || damping <= MIN_DAMPING)
+                return false;
+
+            damping *= 0.5;
+        }
+    }
+
+    /**
+     * Powell's dogleg: inside the trust region the Newton step x is taken,
+     * otherwise the path from the Cauchy point towards it is cut at the
+     * radius. The radius grows and shrinks with the ratio of the actual to
+     * the predicted reduction of ½||F||², rejected steps are retried with a
+     * smaller radius. The model uses the Jacobian of the factorization the
+     * Newton step comes from (which may be older with simplified Newton), so
+     * the dogleg evaluates no Jacobian of its own.
+     * 
+     * @return true, if the new point is converged
+     */
+    private boolean dogleg(final double before) {
+        final int n = point.length;
+        final double[] r = residual.data;
+        final double[] newton = x.data;
+        System.arraycopy(point, 0, base, 0, n);
+
+        /* steepest descent of ½||F||² is J'r, as r = -F */
+        final double[] g = descent;
+        Arrays.fill(g, 0.0);
+        for (int i = 0; i < n; i++) {
+            final int[] columns = storedColumns[i];
+            final double[] e = stored[i];
+            for (int t = 0; t < columns.length; t++)
+                g[columns[t]] += e[t] * r[i];
+        }
+        double jg2 = 0.0;
+        for (int i = 0; i < n; i++) {
+            final double sum = storedProduct(i, g);
+            jg2 += sum * sum;
+        }
+        final double g2 = dot(g, g);
+        final double cauchy = jg2 > 0.0 ? g2 / jg2 : 0.0;
+
+        final double newtonNorm = norm2(newton);
+        if (radius < 0.0)
+            radius = newtonNorm;
+
+        while (true) {
+            if (newtonNorm <= radius) {
+                System.arraycopy(newton, 0, trial, 0, n);
+            } else if (cauchy * Math.sqrt(g2) >= radius) {
+                final double scale = radius / Math.sqrt(g2);
+                for (int i = 0; i < n; i++)
+                    trial[i] = scale * g[i];
+            } else {
+                /* |u + tau * (newton - u)| = radius */
+                double a = 0.0, b = 0.0, c = -radius * radius;
+                for (int i = 0; i < n; i++) {
+                    final double u = cauchy * g[i];
+                    final double d = newton[i] - u;
+                    a += d * d;
+                    b += 2 * u * d;
+                    c += u * u;
+                }
+                final double tau = (-b + Math.sqrt(b * b - 4 * a * c))
+                        / (2 * a);
+                for (int i = 0; i < n; i++) {
+                    final double u = cauchy * g[i];
+                    trial[i] = u + tau * (newton[i] - u);
+                }
+            }
+
+            /* the linear model predicts ||F + Jp||² = ||Jp - r||² */
+            double model = 0.0;
+            for (int i = 0; i < n; i++) {
+                final double sum = storedProduct(i, trial) - r[i];
+                model += sum * sum;
+            }
+            final double predicted = before * before - model;
+            final double length = norm2(trial);
+
+            for (int i = 0; i < n; i++)
+                point[i] = base[i] + trial[i];
+            if (converged())
+                return true;
 
+            final double after = norm2(residual.data);
+            final double rho = (before * before - after * after) / predicted;
+
+            if (!(rho >= 0.25))
+                radius = 0.25 * length;
+            else if (rho > 0.75 && length >= 0.99 * radius)
+                radius = 2 * radius;
+
+            if (rho > ARMIJO)
+                return false;
+
+            if (radius <= MIN_DAMPING * MIN_DAMPING * newtonNorm) {
+                /* give up on this iteration, restore the residual */
+                System.arraycopy(base, 0, point, 0, n);
+                return converged();
+            }
+        }
+    }
+
+    /* row i of the factorized Jacobian times v */
+    private double storedProduct(int i, final double[] v) {
+        final int[] columns = storedColumns[i];
+        final double[] e = stored[i];
+        double sum = 0.0;
+        for (int t = 0; t < columns.length; t++)
+            sum += e[t] * v[columns[t]];
+        return sum;
+    }
+
+    /**
+     * Affine residuals are solved by a single Newton step. A constant
+     * Jacobian is factorized only once for the whole simulation. The step is
+     * checked like any other: if it does not converge, the residuals are not
+     * affine after all (the probe only compares two points) and the block
+     * goes back to Newton's method.
+     * 
+     * @return false, if the caller has to run Newton's method
+     */
+    private boolean execLinear() {
+        start();
+        if (!converged()) {
+            iterations++;
+            if (statistics != null)
+                statistics.iterations++;
+
+            if (!constantJacobian || !factored) {
+                linearize();
+                factorize();
+            }
+            solve();
             for (int i = 0; i < point.length; ++i)
                 point[i] += x.data[i];
 
+            if (!converged()) {
+                affine = constantJacobian;
+                return false;
+            }
+        }
+        accept();
+        return true;
+    }
+
+    /**
+     * Compare the Jacobian at the current point with the ones at two points
+     * perturbed in opposite directions. If they agree, the residuals are
+     * assumed to be affine in the iteratees and later calls take a single
+     * (checked) Newton step. The coefficients may still depend on time or
+     * other variables, so the block keeps refactorizing.
+     */
+    private void probe() {
+        probed = true;
+        final int n = point.length;
+        final double[][] jacobian = new double[n][n];
+        final double[] saved = point.clone();
+
+        int index = 0;
+        for (int i = 0; i < equations.length; i++)
+            for (int di = equations[i].minOrder; di <= equations[i].maxOrder; di++)
+                writeJacobianRow(i, di, jacobian[index++]);
+
+        boolean same = true;
+        for (int sign = 1; sign >= -1 && same; sign -= 2) {
+            for (int i = 0; i < n; ++i)
+                point[i] = saved[i] + sign * PROBE
+                        * (1.0 + Math.abs(saved[i])) * weight(i);
             forceCompute();
+
+            index = 0;
+            for (int i = 0; i < equations.length && same; i++)
+                for (int di = equations[i].minOrder; di <= equations[i].maxOrder; di++) {
+                    writeJacobianRow(i, di, row);
+                    final double[] expected = jacobian[index++];
+                    for (int j = 0; j < n; j++)
+                        same &= Math.abs(row[j] - expected[j]) <= TOLERANCE
+                                * (1.0 + Math.abs(expected[j]));
+                }
         }
 
+        System.arraycopy(saved, 0, point, 0, n);
+        /* the residuals belong to the perturbed point */
+        current = false;
+        affine = same;
+    }
+
+    /*
+     * the relative perturbation of iteratee i by the probe: 1 plus the
+     * fractional part of i times the golden ratio, so the weights lie in
+     * [1, 2) and no two of them are equal. Equal weights would move
+     * iteratees in lockstep and hide nonlinearities in their difference.
+     */
+    private static double weight(int i) {
+        final double w = i * GOLDEN;
+        return 1.0 + (w - Math.floor(w));
+    }
+
+    private void start() {
+        views[0].loadD(point, variables);
+        if (history != null)
+            history.predict(views[0].data[0][0], point);
+    }
+
+    private void accept() {
         views[0].set(0, variables, point);
+        if (history != null)
+            history.record(views[0].data[0][0], point);
+    }
+
+    /**
+     * Forget the solution history, the trajectory may jump (e.g. at events).
+     */
+    @Override
+    public void resetHistory() {
+        if (history != null)
+            history.reset();
+    }
+
+    /**
+     * Broyden's method: only the first step and steps after a restart
+     * evaluate the Jacobian. All other steps evaluate values only and update
+     * the approximate inverse Jacobian by Sherman-Morrison in O(n²). The
+     * inverse is kept across calls, like the factorization of simplified
+     * Newton.
+     */
+    private void execBroyden() {
+        final int n = point.length;
+        final double[] last = new double[n];
+        final double[] hy = new double[n];
+        final double[] v = new double[n];
+        x.reshape(n, 1, false);
+
+        start();
+
+        int steps = options.maxIterations;
+        boolean converged = evaluateValues();
+        while (!converged) {
+            if (steps-- <= 0)
+                throw new ConvergenceException();
+            iterations++;
+            if (statistics != null)
+                statistics.iterations++;
+
+            if (!inverted || updates >= options.broydenRestart) {
+                forceCompute();
+                factorize();
+                invert(inverse);
+                inverted = true;
+                updates = 0;
+            }
+
+            /* x += H(-F) */
+            CommonOps.mult(inverse, residual, x);
+            for (int i = 0; i < n; ++i)
+                point[i] += x.data[i];
+            System.arraycopy(residual.data, 0, last, 0, n);
+
+            converged = evaluateValues();
+
+            /* restart at the new point, if the residual grew */
+            if (!converged
+                    && (norm(residual.data) > norm(last) || !update(last, hy,
+                            v)))
+                inverted = false;
+        }
+
+        accept();
+    }
+
+    /**
+     * Rank-one update of the inverse with the last step s = x and the
+     * residual change y = F - F' = last - residual (both negated). Good
+     * Broyden: H += (s - Hy) s'H / s'Hy, bad Broyden: H += (s - Hy) y' / y'y.
+     * 
+     * @return false, if the update is degenerate
+     */
+    private boolean update(final double[] last, final double[] hy,
+            final double[] v) {
+        final int n = point.length;
+        final double[] s = x.data;
+        final double[] h = inverse.data;
+
+        for (int i = 0; i < n; ++i) {
+            double sum = 0.0;
+            for (int j = 0; j < n; ++j)
+                sum += h[i * n + j] * (last[j] - residual.data[j]);
+            hy[i] = sum;
+        }
+
+        double denominator = 0.0;
+        if (options.badBroyden) {
+            for (int j = 0; j < n; ++j) {
+                v[j] = last[j] - residual.data[j];
+                denominator += v[j] * v[j];
+            }
+        } else {
+            for (int j = 0; j < n; ++j) {
+                double sum = 0.0;
+                for (int i = 0; i < n; ++i)
+                    sum += s[i] * h[i * n + j];
+                v[j] = sum;
+                denominator += s[j] * hy[j];
+            }
+        }
+
+        if (denominator == 0.0 || Double.isNaN(denominator)
+                || Double.isInfinite(denominator))
+            return false;
+
+        for (int i = 0; i < n; ++i) {
+            final double u = (s[i] - hy[i]) / denominator;
+            for (int j = 0; j < n; ++j)
+                h[i * n + j] += u * v[j];
+        }
+        updates++;
+        return true;
+    }
+
+    /**
+     * Factorize the Jacobian at the current point. In simplified Newton mode
+     * the factorization is kept for later iterations and later calls.
+     */
+    private void factorize() {
+        factorizations++;
+        /* every factorization reads a freshly evaluated Jacobian */
+        if (statistics != null) {
+            statistics.jacobians++;
+            statistics.factorizations++;
+        }
+        if (stored != null)
+            writeEntries(stored);
+        if (sparse != null) {
+            writeSparseJacobian();
+            sparseFactored = sparse.factorize();
+            if (sparseFactored) {
+                factored = true;
+                return;
+            }
+            /* the static pivots do not work here, use partial pivoting */
+        }
+
+        writeJacobian();
+        if (!solver.setA(jacobianMatrix)) {
+            factored = false;
+            throw new ConvergenceException();
+        }
+        factored = true;
+    }
+
+    /**
+     * x := J^-1 residual with the last factorization
+     */
+    private void solve() {
+        if (sparseFactored) {
+            x.reshape(point.length, 1, false);
+            sparse.solve(residual.data, x.data);
+        } else {
+            solver.solve(residual, x);
+        }
+    }
+
+    private void invert(final DenseMatrix64F inverse) {
+        if (!sparseFactored) {
+            solver.invert(inverse);
+            return;
+        }
+
+        final int n = point.length;
+        final double[] e = new double[n];
+        final double[] column = new double[n];
+        for (int j = 0; j < n; ++j) {
+            Arrays.fill(e, 0.0);
+            e[j] = 1.0;
+            sparse.solve(e, column);
+            for (int i = 0; i < n; ++i)
+                inverse.unsafe_set(i, j, column[i]);
+        }
+    }
+
+    private static double norm(final double[] v) {
+        double max = 0.0;
+        for (double d : v)
+            max = Math.max(max, Math.abs(d));
+        return max;
+    }
+
+    private static double norm2(final double[] v) {
+        return Math.sqrt(dot(v, v));
+    }
+
+    private static double dot(final double[] v, final double[] w) {
+        double sum = 0.0;
+        for (int i = 0; i < v.length; i++)
+            sum += v[i] * w[i];
+        return sum;
+    }
+
+    /**
+     * @return the number of Newton iterations of all calls to {@link #exec()}
+     */
+    public long iterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the number of Jacobian factorizations of all calls to
+     *         {@link #exec()}, at most one per iteration
+     */
+    public long factorizations() {
+        return factorizations;
+    }
+
+    @Override
+    public void measure(final BlockStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Newton's method on all lanes in lockstep: every iteration evaluates and
+     * updates the lanes that have not converged yet (the mask), so the
+     * residual code and its tables stay hot across lanes. Each lane takes the
+     * same steps as {@link #exec()} would on its own: linear blocks take a
+     * single step (all lanes share a constant factorization), convergence is
+     * checked on values if configured and the divergence limit applies per
+     * lane. With line search or trust region, the lanes run one after the
+     * other. Simplified Newton, Broyden's method and extrapolation keep state
+     * from call to call, which the lanes cannot share, so they are rejected.
+     */
+    public void exec(final Ensemble ensemble) {
+        if (options.simplifiedNewton || options.broyden || history != null)
+            throw new UnsupportedOperationException(
+                    "Ensembles cannot share the state of simplified Newton, "
+                            + "Broyden's method or extrapolation.");
+
+        if (options.lineSearch || options.trustRegion) {
+            for (int l = 0; l < ensemble.size(); ++l) {
+                ensemble.select(l);
+                exec();
+            }
+            return;
+        }
+
+        final int n = variables.length;
+        final int lanes = ensemble.size();
+        final double[][] points = new double[lanes][n];
+        final double[] before = new double[lanes];
+        final int[] stalled = new int[lanes];
+        final boolean[] active = new boolean[lanes];
+        int remaining = lanes;
+
+        for (int l = 0; l < lanes; ++l) {
+            ensemble.select(l);
+            views[0].loadD(points[l], variables);
+            active[l] = true;
+        }
+
+        for (int steps = 0; remaining > 0; ++steps) {
+            for (int l = 0; l < lanes; ++l) {
+                if (!active[l])
+                    continue;
+
+                ensemble.select(l);
+                System.arraycopy(points[l], 0, point, 0, n);
+
+                if (converged()) {
+                    views[0].set(0, variables, point);
+                    active[l] = false;
+                    remaining--;
+                    continue;
+                }
+
+                if (steps > 0 && options.divergenceLimit > 0) {
+                    stalled[l] = norm2(residual.data) < before[l] ? 0
+                            : stalled[l] + 1;
+                    if (stalled[l] >= options.divergenceLimit)
+                        throw new ConvergenceException();
+                }
+
+                if (steps >= options.maxIterations)
+                    throw new ConvergenceException();
+                iterations++;
+                if (statistics != null)
+                    statistics.iterations++;
+
+                if (!constantJacobian || !factored) {
+                    linearize();
+                    factorize();
+                }
+                solve();
+
+                before[l] = norm2(residual.data);
+                for (int i = 0; i < n; ++i)
+                    points[l][i] += x.data[i];
+
+                if (affine) {
+                    /* a single step solves affine residuals */
+                    views[0].set(0, variables, points[l]);
+                    active[l] = false;
+                    remaining--;
+                }
+            }
+        }
+
+        /* the memoized residuals and the factorization belong to some lane */
+        current = false;
+        factored = constantJacobian && factored;
+        inverted = false;
     }
 
     @Override
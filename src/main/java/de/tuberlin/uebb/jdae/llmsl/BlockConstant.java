@@ -56,7 +56,15 @@ public final class BlockConstant implements BlockVariable {
 
     @Override
     public TDNumber load(ExecutionContext ctxt) {
-        return ctxt.constant(var);
+        final TDNumber shared = ctxt.shared(var);
+        if (shared != null)
+            return shared;
+        return ctxt.share(var, ctxt.constant(var));
+    }
+
+    @Override
+    public TDNumber load(ExecutionContext ctxt, TDNumber target) {
+        return ctxt.constant(var, target);
     }
 
     @Override
@@ -42,14 +42,25 @@ public final class BlockIteratee implements BlockVariable {
 
     @Override
     public TDNumber load(ExecutionContext ctxt) {
-        final TDNumber number = ctxt.constant(var);
+        final TDNumber shared = ctxt.shared(var);
+        if (shared != null)
+            return shared;
 
+        return ctxt.share(var, seed(ctxt, ctxt.constant(var)));
+    }
+
+    @Override
+    public TDNumber load(ExecutionContext ctxt, TDNumber target) {
+        return seed(ctxt, ctxt.constant(var, target));
+    }
+
+    private TDNumber seed(ExecutionContext ctxt, final TDNumber number) {
         for (int i = 0; i <= ctxt.order; i++) {
             assert ctxt.params[blockIndex + i].index == var.index : String
                     .format("%d-th derivative of %s is not iteratee of this block!",
                             i, var);
 
-            number.values[i].values[blockIndex + i + 1] = 1;
+            ctxt.seed(number, i, blockIndex + i);
         }
 
         return number;
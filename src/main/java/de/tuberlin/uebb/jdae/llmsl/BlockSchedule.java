@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.llmsl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * The dependency DAG of a sequence of blocks, cut into levels: blocks of one
+ * level neither read nor write what another block of the level writes, so
+ * they can run concurrently once all earlier levels are done.
+ * 
+ * @author choeger
+ * 
+ */
+public final class BlockSchedule {
+
+    /* block indices per level, in ascending order */
+    public final int[][] levels;
+
+    /**
+     * @param writes
+     *            the variables each block computes, in sequential order
+     * @param reads
+     *            the variables each block reads
+     */
+    public BlockSchedule(final List<? extends Set<GlobalVariable>> writes,
+            final List<? extends Set<GlobalVariable>> reads) {
+        /* the level of the last writer and of the readers since then */
+        final Map<GlobalVariable, Integer> written = Maps.newHashMap();
+        final Map<GlobalVariable, Integer> read = Maps.newHashMap();
+        final List<List<Integer>> levels = Lists.newArrayList();
+
+        for (int i = 0; i < writes.size(); i++) {
+            int level = 0;
+            for (GlobalVariable v : reads.get(i))
+                level = Math.max(level, after(written, v));
+            for (GlobalVariable v : writes.get(i))
+                level = Math.max(level,
+                        Math.max(after(written, v), after(read, v)));
+
+            for (GlobalVariable v : reads.get(i))
+                read.put(v, Math.max(level, before(read, v)));
+            for (GlobalVariable v : writes.get(i))
+                written.put(v, level);
+
+            if (level == levels.size())
+                levels.add(Lists.<Integer> newArrayList());
+            levels.get(level).add(i);
+        }
+
+        this.levels = new int[levels.size()][];
+        for (int l = 0; l < this.levels.length; l++) {
+            final List<Integer> level = levels.get(l);
+            this.levels[l] = new int[level.size()];
+            for (int j = 0; j < level.size(); j++)
+                this.levels[l][j] = level.get(j);
+        }
+    }
+
+    private static int before(final Map<GlobalVariable, Integer> levels,
+            final GlobalVariable v) {
+        final Integer level = levels.get(v);
+        return level == null ? -1 : level;
+    }
+
+    private static int after(final Map<GlobalVariable, Integer> levels,
+            final GlobalVariable v) {
+        return before(levels, v) + 1;
+    }
+
+    /**
+     * @return the largest number of blocks in a level
+     */
+    public int width() {
+        int max = 0;
+        for (int[] level : levels)
+            max = Math.max(max, level.length);
+        return max;
+    }
+
+    /**
+     * Run all blocks level by level, each level split into tasks of at least
+     * grain blocks.
+     */
+    public void exec(final IBlock[] blocks, final ForkJoinPool pool,
+            final int grain) {
+        exec(blocks, 0, blocks.length, pool, grain);
+    }
+
+    /**
+     * Run the blocks from (inclusive) to to (exclusive) level by level, the
+     * other blocks are skipped. Since every block comes after the blocks it
+     * depends on, the range still runs in a valid order.
+     */
+    public void exec(final IBlock[] blocks, final int from, final int to,
+            final ForkJoinPool pool, final int grain) {
+        for (int[] level : levels) {
+            final int first = position(level, from);
+            final int last = position(level, to);
+            if (last - first < 2 * grain) {
+                for (int j = first; j < last; j++)
+                    blocks[level[j]].exec();
+            } else {
+                pool.invoke(new Level(blocks, level, first, last, grain));
+            }
+        }
+    }
+
+    /* the first position in the level of a block index not less than i */
+    private static int position(final int[] level, final int i) {
+        final int pos = Arrays.binarySearch(level, i);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+
+    private static final class Level extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final IBlock[] blocks;
+        final int[] level;
+        final int from, to, grain;
+
+        Level(IBlock[] blocks, int[] level, int from, int to, int grain) {
+            this.blocks = blocks;
+            this.level = level;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < 2 * grain) {
+                for (int i = from; i < to; i++)
+                    blocks[level[i]].exec();
+            } else {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new Level(blocks, level, from, mid, grain),
+                        new Level(blocks, level, mid, to, grain));
+            }
+        }
+    }
+}
@@ -46,7 +46,19 @@ public class BlockState implements BlockVariable {
 
     @Override
     public TDNumber load(ExecutionContext ctxt) {
-        final TDNumber number = ctxt.constant(var);
+        final TDNumber shared = ctxt.shared(var);
+        if (shared != null)
+            return shared;
+
+        return ctxt.share(var, seed(ctxt, ctxt.constant(var)));
+    }
+
+    @Override
+    public TDNumber load(ExecutionContext ctxt, TDNumber target) {
+        return seed(ctxt, ctxt.constant(var, target));
+    }
+
+    private TDNumber seed(ExecutionContext ctxt, final TDNumber number) {
         final int diff = ctxt.params[firstDerivative].der - var.der;
 
         for (int i = diff; i <= ctxt.order; i++) {
@@ -54,7 +66,7 @@ public class BlockState implements BlockVariable {
             assert ctxt.params[relativeDerivative].index == var.index : String
                     .format("%d-th derivative of %s is not iteratee of this block!",
                             i, var);
-            number.values[i].values[relativeDerivative + 1] = 1.0;
+            ctxt.seed(number, i, relativeDerivative);
         }
 
         return number;
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.llmsl;
+
+/**
+ * Solver counters of a single block. The counters are plain fields, a block
+ * only updates them if it has been given a statistics object (see
+ * {@link Instrumented}), so they cost nothing otherwise.
+ * 
+ * @author choeger
+ * 
+ */
+public final class BlockStatistics {
+
+    public final String name;
+
+    public long execs;
+    /* Newton (or quasi-Newton) iterations */
+    public long iterations;
+    /* Jacobians evaluated for a factorization (or a torn reduction) */
+    public long jacobians;
+    public long factorizations;
+    /* direct solutions that fell back to a numerical block */
+    public long fallbacks;
+    public long nanos;
+
+    /* executions by the binary logarithm of their duration in nanoseconds */
+    public final long[] histogram = new long[64];
+
+    public BlockStatistics(final String name) {
+        this.name = name;
+    }
+
+    public void record(final long nanos) {
+        execs++;
+        this.nanos += nanos;
+        histogram[nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos)]++;
+    }
+
+    public void add(final BlockStatistics other) {
+        execs += other.execs;
+        iterations += other.iterations;
+        jacobians += other.jacobians;
+        factorizations += other.factorizations;
+        fallbacks += other.fallbacks;
+        nanos += other.nanos;
+        for (int i = 0; i < histogram.length; i++)
+            histogram[i] += other.histogram[i];
+    }
+
+    /**
+     * @return an upper bound (a power of two) of the duration in nanoseconds
+     *         of the given fraction of all executions
+     */
+    public long percentile(final double fraction) {
+        final long count = (long) Math.ceil(fraction * execs);
+        long seen = 0;
+        for (int i = 0; i < histogram.length - 1; i++) {
+            seen += histogram[i];
+            if (seen >= count)
+                return 1L << (i + 1);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public String toString() {
+        return String.format(
+                "%s: %d execs, %d iterations, %d jacobians, %d factorizations,"
+                        + " %d fallbacks, %.3fms (median < %dns)", name,
+                execs, iterations, jacobians, factorizations, fallbacks,
+                nanos * 1e-6, percentile(0.5));
+    }
+}
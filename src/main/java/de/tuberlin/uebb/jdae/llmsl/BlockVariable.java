@@ -26,6 +26,14 @@ public interface BlockVariable {
 
     public TDNumber load(ExecutionContext ctxt);
 
+    /**
+     * Load this variable into the given number of the context's shape (e.g.
+     * a register) instead of a fresh one.
+     * 
+     * @return the target
+     */
+    public TDNumber load(ExecutionContext ctxt, TDNumber target);
+
     public BlockVariable der(ExecutionContext ctxt);
 
     public BlockVariable der(ExecutionContext ctxt, int n);
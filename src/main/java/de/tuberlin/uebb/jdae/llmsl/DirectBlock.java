@@ -25,11 +25,12 @@ import com.google.common.collect.ImmutableList;
  * This is an @link{IBlock} that solves for exactly one variable by direct
  * computation.
  */
-public abstract class DirectBlock implements IBlock {
+public abstract class DirectBlock implements IBlock, Instrumented {
 
     public final GlobalVariable v;
     private final IBlock alternative;
     private final ExecutableDAE dae;
+    private BlockStatistics statistics;
 
     public DirectBlock(GlobalVariable v, IBlock alt, ExecutableDAE dae) {
         this.v = v;
@@ -41,6 +42,8 @@ public abstract class DirectBlock implements IBlock {
         final double val = computeValue();
 
         if (Double.isNaN(val)) {
+            if (statistics != null)
+                statistics.fallbacks++;
             alternative.exec();
             System.out.println("Corrected to: " + dae.load(v));
         } else {
@@ -50,8 +53,22 @@ public abstract class DirectBlock implements IBlock {
 
     public abstract double computeValue();
 
+    @Override
+    public void measure(final BlockStatistics statistics) {
+        this.statistics = statistics;
+        if (alternative instanceof Instrumented)
+            ((Instrumented) alternative).measure(statistics);
+    }
+
     public final Iterable<GlobalVariable> variables() {
         return ImmutableList.of(v);
     }
 
+    /* only the numerical alternative extrapolates */
+    @Override
+    public void resetHistory() {
+        if (alternative != null)
+            alternative.resetHistory();
+    }
+
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.llmsl;
+
+/**
+ * N variants ("lanes") of the data of one compiled model, e.g. differing in
+ * start values or parameters. Every lane owns a full copy of the data rows;
+ * {@link #select(int)} swaps the rows of a lane into the data array shared by
+ * all blocks and execution contexts, so switching lanes copies references
+ * only and all lanes share a single object graph.
+ * 
+ * @author choeger
+ * 
+ */
+public final class Ensemble {
+
+    /* lane -> variable -> derivative */
+    public final double[][][] lanes;
+
+    private final double[][] target;
+    private final double[][] home;
+
+    /**
+     * Create an ensemble of the given number of lanes, each initialized with
+     * a copy of the current data.
+     */
+    public Ensemble(final double[][] data, int size) {
+        this.target = data;
+        this.home = data.clone();
+        this.lanes = new double[size][data.length][];
+        for (int l = 0; l < size; ++l)
+            for (int i = 0; i < data.length; ++i)
+                lanes[l][i] = data[i].clone();
+    }
+
+    public int size() {
+        return lanes.length;
+    }
+
+    /**
+     * Make the given lane the data all blocks operate on.
+     */
+    public void select(int lane) {
+        System.arraycopy(lanes[lane], 0, target, 0, target.length);
+    }
+
+    /**
+     * Swap the original rows back in.
+     */
+    public void restore() {
+        System.arraycopy(home, 0, target, 0, target.length);
+    }
+
+    public double load(int lane, GlobalVariable v) {
+        return lanes[lane][v.index][v.der];
+    }
+
+    public void set(int lane, GlobalVariable v, double d) {
+        lanes[lane][v.index][v.der] = d;
+    }
+}
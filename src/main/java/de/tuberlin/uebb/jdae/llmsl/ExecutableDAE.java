@@ -25,6 +25,7 @@ import gnu.trove.map.TIntObjectMap;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,6 +34,8 @@ import org.apache.commons.math3.exception.MaxCountExceededException;
 import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
 import org.apache.commons.math3.ode.events.EventHandler;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Range;
 import com.google.common.collect.Sets;
 
@@ -46,6 +49,7 @@ import de.tuberlin.uebb.jdae.transformation.Causalisation;
 import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
 import de.tuberlin.uebb.jdae.transformation.InitializationCausalisation;
 import de.tuberlin.uebb.jdae.transformation.Reduction;
+import de.tuberlin.uebb.jdae.transformation.Tearing;
 
 public final class ExecutableDAE implements FirstOrderDifferentialEquations {
 
@@ -62,6 +66,14 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
 
     public final ExecutionContext execCtxt;
 
+    /* the levels of independent blocks, if the equations are known */
+    private final BlockSchedule schedule;
+    private ForkJoinPool pool;
+
+    /* per-block counters and the timed blocks, if the options ask for them */
+    private final BlockStatistics[] statistics;
+    private final IBlock[] measured;
+
     public int getEvaluations() {
         return evaluations;
     }
@@ -77,10 +89,12 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
         data = layout.alloc();
 
         this.blocks = new IBlock[causalisation.computations.size()];
+        final List<Set<GlobalVariable>> reads = Lists.newArrayList();
         int i = 0;
         for (TIntObjectMap<Range<Integer>> block : causalisation.computations) {
 
             final Set<DerivedEquation> deriveds = Sets.newHashSet();
+            final Set<GlobalVariable> read = Sets.newHashSet();
             final TIntObjectIterator<Range<Integer>> blockIter = block
                     .iterator();
             while (blockIter.hasNext()) {
@@ -90,7 +104,11 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
 
                 deriveds.add(new DerivedEquation(causalisation.equations[eq],
                         eqRange.lowerEndpoint(), eqRange.upperEndpoint()));
+                for (GlobalVariable v : causalisation.equations[eq].need())
+                    for (int d = 0; d <= eqRange.upperEndpoint(); d++)
+                        read.add(v.der(d));
             }
+            reads.add(read);
 
             final IBlock block_i;
             /* always prepare a numerical fallback, just in case */
@@ -108,6 +126,12 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
                 } else {
                     block_i = numericalSolution;
                 }
+            } else if (options.tearing) {
+                final Tearing tearing = new Tearing(
+                        causalisation.iteratees.get(i), deriveds);
+                block_i = tearing.reduces() ? new TornBlock(
+                        (Block) numericalSolution, tearing, this)
+                        : numericalSolution;
             } else {
                 block_i = numericalSolution;
             }
@@ -115,6 +139,20 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
             blocks[i++] = block_i;
 
         }
+        this.schedule = new BlockSchedule(causalisation.iteratees, reads);
+
+        if (options.statistics) {
+            this.statistics = new BlockStatistics[blocks.length];
+            for (int j = 0; j < blocks.length; j++) {
+                statistics[j] = new BlockStatistics(causalisation.iteratees
+                        .get(j).toString());
+                if (blocks[j] instanceof Instrumented)
+                    ((Instrumented) blocks[j]).measure(statistics[j]);
+            }
+        } else {
+            this.statistics = null;
+        }
+        this.measured = timed(blocks, statistics);
         i = 0;
 
         this.initials = new IBlock[iCausalisation.computations.size()];
@@ -142,6 +180,40 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
         this.blocks = blocks.clone();
         this.initials = initials.clone();
         this.execCtxt = new ExecutionContext(0, new GlobalVariable[0], data);
+        this.schedule = null;
+        this.statistics = null;
+        this.measured = null;
+    }
+
+    private static IBlock[] timed(final IBlock[] blocks,
+            final BlockStatistics[] statistics) {
+        if (statistics == null)
+            return null;
+
+        final IBlock[] timed = new IBlock[blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            final IBlock block = blocks[i];
+            final BlockStatistics stats = statistics[i];
+            timed[i] = new IBlock() {
+                @Override
+                public void exec() {
+                    final long s = System.nanoTime();
+                    block.exec();
+                    stats.record(System.nanoTime() - s);
+                }
+
+                @Override
+                public Iterable<GlobalVariable> variables() {
+                    return block.variables();
+                }
+
+                @Override
+                public void resetHistory() {
+                    block.resetHistory();
+                }
+            };
+        }
+        return timed;
     }
 
     public void initialize() {
@@ -153,14 +225,29 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
         evaluations = 0;
         data[0][0] = options.startTime;
 
-        if (options.integrator != null) {
-            integrateApacheCommonsIntegrator(options);
-        } else {
-            switch (options.inlineIntegrator) {
-            case INLINE_FORWARD_EULER:
-                integrateInlineForwardEuler(results, options);
-                break;
+        try {
+            if (options.integrator != null) {
+                integrateApacheCommonsIntegrator(options);
+            } else {
+                switch (options.inlineIntegrator) {
+                case INLINE_FORWARD_EULER:
+                    integrateInlineForwardEuler(results, options);
+                    break;
+                }
             }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Stop the workers of concurrent block execution, if any. They are
+     * started again on demand, so the DAE stays usable.
+     */
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
         }
     }
 
@@ -177,9 +264,7 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
 
             evaluations++;
 
-            for (int i = 0; i < blocks.length; i++) {
-                blocks[i].exec();
-            }
+            execBlocks();
 
             for (GlobalVariable state : states) {
                 data[state.index][state.der] += data[state.index][state.der + 1]
@@ -200,6 +285,7 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
                     throw new RuntimeException(
                             "Cannot handle structural changes yet.");
                 }
+                resetHistory();
             }
 
             /* accept step */
@@ -234,6 +320,7 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
                     throw new RuntimeException(
                             "Cannot handle structural changes yet.");
                 }
+                resetHistory();
             }
 
             writeStates(stateVector);
@@ -264,7 +351,10 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
             throws MaxCountExceededException, DimensionMismatchException {
         setState(t, y);
 
-        computeDerivatives(0, blocks.length);
+        final long s = System.currentTimeMillis();
+        evaluations++;
+        execBlocks();
+        time += (System.currentTimeMillis() - s);
 
         for (int i = 0; i < states.size(); i++) {
             yDot[i] = load(states.get(i).der());
@@ -274,15 +364,142 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
     public void computeDerivatives(final int from, final int to) {
         final long s = System.currentTimeMillis();
 
+        evaluations++;
+        execBlocks(from, to);
+
+        time += (System.currentTimeMillis() - s);
+    }
+
+    private void execBlocks() {
+        execBlocks(0, blocks.length);
+    }
+
+    /**
+     * Compute the blocks from (inclusive) to to (exclusive), independent
+     * blocks concurrently if the options ask for it.
+     */
+    private void execBlocks(final int from, final int to) {
+        final IBlock[] blocks = measured != null ? measured : this.blocks;
+        if (options.parallelBlocks && schedule != null) {
+            if (pool == null)
+                pool = new ForkJoinPool(options.threads > 0 ? options.threads
+                        : Runtime.getRuntime().availableProcessors());
+            schedule.exec(blocks, from, to, pool, options.parallelGrain);
+        } else {
+            for (int i = from; i < to; i++)
+                blocks[i].exec();
+        }
+    }
+
+    /**
+     * @return the counters of all blocks, empty unless the DAE was created
+     *         with {@link SimulationOptions#statistics}
+     */
+    public List<BlockStatistics> blockStatistics() {
+        if (statistics == null)
+            return ImmutableList.of();
+        return ImmutableList.copyOf(statistics);
+    }
+
+    /**
+     * @return the dependency levels of the blocks, or null if the equations
+     *         of the blocks are not known
+     */
+    public BlockSchedule schedule() {
+        return schedule;
+    }
+
+    /**
+     * Forget the solutions the blocks extrapolate their starting points from.
+     */
+    public void resetHistory() {
+        for (IBlock block : initials)
+            block.resetHistory();
+        for (IBlock block : blocks)
+            block.resetHistory();
+    }
+
+    /**
+     * @return an ensemble of the given number of lanes, each starting from a
+     *         copy of the current data
+     */
+    public Ensemble ensemble(int lanes) {
+        return new Ensemble(data, lanes);
+    }
+
+    public void initialize(final Ensemble ensemble) {
+        try {
+            for (IBlock iB : initials)
+                exec(iB, ensemble);
+        } finally {
+            ensemble.restore();
+        }
+    }
+
+    /* numerical blocks iterate all lanes in lockstep, the others lane by lane */
+    private static void exec(final IBlock block, final Ensemble ensemble) {
+        if (block instanceof Block) {
+            ((Block) block).exec(ensemble);
+        } else {
+            for (int l = 0; l < ensemble.size(); ++l) {
+                ensemble.select(l);
+                block.exec();
+            }
+        }
+    }
+
+    /**
+     * Compute all blocks for every lane of the ensemble, block by block.
+     */
+    public void computeDerivatives(final Ensemble ensemble) {
+        final long s = System.currentTimeMillis();
+
         evaluations++;
 
-        for (int i = from; i < to; i++) {
-            blocks[i].exec();
+        try {
+            for (IBlock block : blocks)
+                exec(block, ensemble);
+        } finally {
+            ensemble.restore();
         }
 
         time += (System.currentTimeMillis() - s);
     }
 
+    /**
+     * Advance all lanes of the ensemble in lockstep with forward Euler and
+     * the minimal step size. Events are evaluated per simulation, so models
+     * with events cannot be integrated as an ensemble.
+     */
+    public void integrate(final Ensemble ensemble) {
+        if (eventHandler.getEventHandlers().length > 0)
+            throw new UnsupportedOperationException(
+                    "Ensembles of models with events are not supported.");
+
+        final double[][][] lanes = ensemble.lanes;
+        for (double[][] lane : lanes)
+            lane[0][0] = options.startTime;
+
+        double stepSize = options.minStepSize;
+        double t = options.startTime;
+        while (t < options.stopTime) {
+            t += stepSize;
+
+            if (options.stopTime - t < stepSize)
+                stepSize = options.stopTime - t;
+
+            for (double[][] lane : lanes)
+                lane[0][0] = t;
+
+            computeDerivatives(ensemble);
+
+            for (double[][] lane : lanes)
+                for (GlobalVariable state : states)
+                    lane[state.index][state.der] += lane[state.index][state.der + 1]
+                            * stepSize;
+        }
+    }
+
     public void setState(double t, double[] y) {
         data[0][0] = t;
 
@@ -320,7 +537,8 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
     public ExecutableDAE(SimulationOptions options, double[][] data,
             EventEvaluator eventHandler, DataLayout layout, IBlock[] blocks,
             List<GlobalVariable> states, Logger logger, IBlock[] initials,
-            int evaluations, long time, ExecutionContext execCtxt) {
+            int evaluations, long time, ExecutionContext execCtxt,
+            BlockSchedule schedule, BlockStatistics[] statistics) {
         super();
         this.options = options;
         this.data = data;
@@ -333,11 +551,15 @@ public final class ExecutableDAE implements FirstOrderDifferentialEquations {
         this.evaluations = evaluations;
         this.time = time;
         this.execCtxt = execCtxt;
+        this.schedule = schedule;
+        this.statistics = statistics;
+        this.measured = timed(blocks, statistics);
     }
 
     public ExecutableDAE withOptions(SimulationOptions options2) {
         return new ExecutableDAE(options2, data, eventHandler, layout, blocks,
-                states, logger, initials, evaluations, time, execCtxt);
+                states, logger, initials, evaluations, time, execCtxt,
+                schedule, statistics);
     }
 
 }
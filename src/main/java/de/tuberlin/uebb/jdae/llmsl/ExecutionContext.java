@@ -19,8 +19,14 @@
 
 package de.tuberlin.uebb.jdae.llmsl;
 
+import de.tuberlin.uebb.jdae.diff.partial.SparsePDNumber;
+import de.tuberlin.uebb.jdae.diff.total.FlatTDNumber;
+import de.tuberlin.uebb.jdae.diff.total.TDArena;
+import de.tuberlin.uebb.jdae.diff.total.TDCache;
 import de.tuberlin.uebb.jdae.diff.total.TDNumber;
 import de.tuberlin.uebb.jdae.diff.total.TDOperations;
+import de.tuberlin.uebb.jdae.diff.total.TDRegisterFile;
+import de.tuberlin.uebb.jdae.diff.total.TDTape;
 
 public final class ExecutionContext {
 
@@ -28,16 +34,154 @@ public final class ExecutionContext {
 
     final GlobalVariable[] params;
     public final TDOperations compiler;
+    /* a copy of the rows, unless shared, see #sharing() */
     public final double[][] data;
 
+    /* temporaries of the current evaluation, if any */
+    final TDArena arena;
+
+    /* reverse-mode recording, replaces the partial derivatives if present */
+    final TDTape tape;
+
+    /* compressed seeding: the direction of every iteratee, if any */
+    final int[] colors;
+
+    /* common subexpressions, shared with the other views of a block */
+    final TDCache cache;
+
+    /* registers of the equation evaluated in this view, created on demand */
+    private TDRegisterFile registers;
+
     public ExecutionContext(int order, GlobalVariable[] vars, double[][] data) {
+        this(order, vars, data.clone(), false, null, null, vars.length, null);
+    }
+
+    /**
+     * @return a context on the given array itself instead of a copy of its
+     *         rows, so it sees rows swapped in by {@link Ensemble#select(int)}
+     */
+    public static ExecutionContext sharing(int order, GlobalVariable[] vars,
+            double[][] data) {
+        return new ExecutionContext(order, vars, data, false, null, null,
+                vars.length, null);
+    }
+
+    private ExecutionContext(int order, GlobalVariable[] vars,
+            double[][] data, boolean useArena, TDTape tape, int[] colors,
+            int directions, TDCache cache) {
         super();
 
         this.order = order;
         this.params = vars.clone();
-        this.data = data.clone();
+        this.data = data;
+        this.tape = tape;
+        this.colors = colors;
+        this.cache = useArena ? cache : null;
+
+        this.compiler = TDOperations.getInstance(order, tape != null ? 0
+                : directions);
+        this.arena = useArena ? new TDArena(compiler, this.cache) : null;
+    }
+
+    private int directions() {
+        return compiler.subOps.params;
+    }
+
+    /**
+     * @return a view on the same data that draws all loaded numbers (and the
+     *         results computed from them) from an arena. These numbers are
+     *         valid until the next {@link #reset()}.
+     */
+    public ExecutionContext withArena() {
+        return new ExecutionContext(order, params, data, true, tape, colors,
+                directions(), cache);
+    }
+
+    /**
+     * @return an arena view that hash-conses loads and operations in the
+     *         given cache, which may be shared by several views. Loaded
+     *         numbers (and the results computed from them) must then not be
+     *         mutated and the cache is cleared on every {@link #reset()}.
+     */
+    public ExecutionContext withCache(final TDCache cache) {
+        assert tape == null : "Cannot share the nodes of a tape.";
+        return new ExecutionContext(order, params, data, true, tape, colors,
+                directions(), cache);
+    }
+
+    /**
+     * @return a view on the same data that computes values only and records
+     *         them on the given tape. Partial derivatives are then obtained by
+     *         {@link TDTape#gradient(TDNumber, int, double[])}.
+     */
+    public ExecutionContext withTape(final TDTape tape) {
+        assert order == 0 : "Only values can be recorded on a tape.";
+        return new ExecutionContext(order, params, data, arena != null, tape,
+                colors, directions(), cache);
+    }
+
+    /**
+     * @return a view on the same data that seeds iteratee i into direction
+     *         colors[i] of only the given number of directions. Iteratees
+     *         sharing a direction must not occur in the same equation, then
+     *         every partial derivative can still be read from its direction
+     *         (Curtis, Powell and Reid).
+     */
+    public ExecutionContext withColoring(final int[] colors, int directions) {
+        assert tape == null : "Cannot compress the seeds of a tape.";
+        return new ExecutionContext(order, params, data, arena != null, tape,
+                colors.clone(), directions, cache);
+    }
+
+    /**
+     * @return a view on the same data (and of the same allocation) that
+     *         computes values and time derivatives without any partial
+     *         derivatives, e.g. for quasi-Newton steps
+     */
+    public ExecutionContext withoutPartials() {
+        return new ExecutionContext(order, params, data, arena != null, null,
+                null, 0, cache);
+    }
+
+    /**
+     * @return the partial-derivative direction of the given iteratee
+     */
+    public final int direction(int param) {
+        return colors == null ? param : colors[param];
+    }
+
+    /**
+     * Make the dt-th derivative of number the iteratee param of this view.
+     */
+    public final void seed(final TDNumber number, int dt, int param) {
+        if (tape != null)
+            tape.seed(number, param);
+        else if (directions() > 0)
+            number.values[dt].values[direction(param) + 1] = 1.0;
+    }
 
-        this.compiler = TDOperations.getInstance(order, params.length);
+    /**
+     * Release all temporaries of the previous evaluation.
+     */
+    public final void reset() {
+        if (arena != null)
+            arena.reset();
+        if (tape != null)
+            tape.reset();
+        if (cache != null)
+            cache.clear();
+    }
+
+    /**
+     * @return the number previously loaded for var into a view of the same
+     *         shape, if loads are shared
+     */
+    final TDNumber shared(final GlobalVariable var) {
+        return cache != null ? cache.load(var, compiler) : null;
+    }
+
+    final TDNumber share(final GlobalVariable var, final TDNumber number) {
+        return cache != null ? cache.store(var, compiler, number) : number;
     }
 
     public final void set(int start, GlobalVariable[] vars, double[] point) {
@@ -57,18 +201,127 @@ public final class ExecutionContext {
     }
 
     public final TDNumber constant(final GlobalVariable var) {
+        if (arena != null)
+            return arena.constantVar(var.der, data[var.index]);
         return compiler.constantVar(var.der, data[var.index]);
     }
 
+    public final TDNumber constant(final GlobalVariable var,
+            final TDNumber target) {
+        return compiler.constantVar(target, var.der, data[var.index]);
+    }
+
+    /**
+     * @return the register file of this view. A block evaluates every
+     *         equation in a view of its own, so an equation may return one of
+     *         these registers as its residual.
+     */
+    public final TDRegisterFile registers() {
+        if (registers == null)
+            registers = new TDRegisterFile(compiler);
+        return registers;
+    }
+
+    /**
+     * Load var into the given register of {@link #registers()}.
+     * 
+     * @return the register file
+     */
+    public final TDRegisterFile load(int register, final BlockVariable var) {
+        final TDRegisterFile r = registers();
+        var.load(this, r.clear(register));
+        return r;
+    }
+
     public final TDNumber constant(final double value) {
+        if (arena != null)
+            return arena.constant(value);
         return compiler.constant(value);
     }
 
+    /**
+     * Add s times var, seeded exactly like
+     * {@link BlockVariable#load(ExecutionContext)} would, to the flat
+     * coefficients target of this view's shape. Linear combinations are thus
+     * accumulated in place, without any number in between.
+     */
+    public final void addFlat(final double s, final BlockVariable var,
+            final double[] target) {
+        final GlobalVariable v = var.global();
+        final double[] dt = data[v.index];
+        final int width = compiler.width;
+        for (int i = 0; i <= order && v.der + i < dt.length; i++)
+            target[i * width] += s * dt[v.der + i];
+
+        if (directions() == 0)
+            return;
+
+        if (var instanceof BlockIteratee) {
+            final int param = ((BlockIteratee) var).blockIndex;
+            for (int i = 0; i <= order; i++) {
+                assert params[param + i].index == v.index : String.format(
+                        "%d-th derivative of %s is not iteratee of this block!",
+                        i, v);
+                target[i * width + direction(param + i) + 1] += s;
+            }
+        } else if (var instanceof BlockState) {
+            final int first = ((BlockState) var).firstDerivative;
+            final int diff = params[first].der - v.der;
+            for (int i = diff; i <= order; i++) {
+                assert params[first + i - diff].index == v.index : String
+                        .format("%d-th derivative of %s is not iteratee of this block!",
+                                i, v);
+                target[i * width + direction(first + i - diff) + 1] += s;
+            }
+        }
+    }
+
+    /**
+     * Add s times the time to the flat coefficients target.
+     */
+    public final void addFlatTime(final double s, final double[] target) {
+        target[0] += s * data[0][0];
+        if (order > 0)
+            target[compiler.width] += s;
+    }
+
+    public final FlatTDNumber flatConstant(final double value) {
+        return compiler.flatConstant(value);
+    }
+
+    /**
+     * @return the value of var together with its sparse gradient w.r.t. the
+     *         iteratees of the block. Only the value of a variable itself is
+     *         loaded, so a state (of which only higher derivatives are
+     *         iterated upon) is constant.
+     */
+    public final SparsePDNumber loadSparse(final BlockVariable var) {
+        if (var instanceof BlockIteratee) {
+            final int param = ((BlockIteratee) var).blockIndex;
+            assert params[param].equals(var.global()) : String.format(
+                    "%s is not the %d-th iteratee of this block!",
+                    var.global(), param);
+            return compiler.subOps.sparseVariable(direction(param),
+                    var.value(this));
+        }
+        return compiler.subOps.sparseConstant(var.value(this));
+    }
+
+    public final SparsePDNumber sparseConstant(final double value) {
+        return compiler.subOps.sparseConstant(value);
+    }
+
+    public final double timeValue() {
+        return data[0][0];
+    }
+
     public final TDNumber time() {
+        if (arena != null)
+            return arena.constant(data[0][0], 1.0);
         return compiler.constant(data[0][0], 1.0);
     }
 
     public ExecutionContext derived(int derOrder) {
-        return new ExecutionContext(order + derOrder, params, data);
+        return sharing(order + derOrder, params, data);
     }
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.llmsl;
+
+import de.tuberlin.uebb.jdae.diff.total.FlatTDNumber;
+
+/**
+ * A block equation that can also compute its residual in the contiguous
+ * layout of {@link FlatTDNumber}, see
+ * {@link ExecutionContext#addFlat(double, BlockVariable, double[])}. Blocks
+ * use this path if all of their equations provide it and flat residuals are
+ * enabled.
+ * {@link #execFlat(ExecutionContext)} must agree with
+ * {@link #exec(ExecutionContext)}.
+ * 
+ * @author choeger
+ * 
+ */
+public interface FlatEquation extends BlockEquation {
+
+    FlatTDNumber execFlat(final ExecutionContext m);
+
+}
@@ -44,6 +44,14 @@ public abstract class GlobalEquation {
         return new DerivedEquation(this, i);
     }
 
+    /**
+     * @return true, if the residual is affine in all variables with constant
+     *         coefficients (time may only appear in the constant part)
+     */
+    public boolean isLinear() {
+        return false;
+    }
+
     public boolean canSpecializeFor(GlobalVariable v) {
         return false;
     }
@@ -25,4 +25,11 @@ public interface IBlock {
 
     Iterable<GlobalVariable> variables();
 
+    /**
+     * Forget the solutions the starting points of this block are
+     * extrapolated from, e.g. after an event. Blocks without such a history
+     * do nothing.
+     */
+    void resetHistory();
+
 }
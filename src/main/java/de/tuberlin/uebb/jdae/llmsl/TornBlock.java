@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.llmsl;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.exception.ConvergenceException;
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.LinearSolver;
+import org.ejml.factory.LinearSolverFactory;
+
+import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
+import de.tuberlin.uebb.jdae.transformation.Tearing;
+
+/**
+ * A block solved by tearing: the assigned equations compute their variables
+ * causally from the tearing variables, Newton's method runs on the residual
+ * equations only. The Jacobian of the torn system is obtained from the
+ * structurally non-zero Jacobian entries of the full block by forward
+ * substitution through the (lower triangular) assigned rows, so no dense
+ * Jacobian of the full block is ever built.
+ * 
+ * All counters of the torn system are kept by this block, the wrapped block
+ * is not measured on its own.
+ * 
+ * @author choeger
+ * 
+ */
+public final class TornBlock implements IBlock, Instrumented {
+
+    private final Block block;
+    private final IBlock[] assignments;
+
+    private final GlobalVariable[] tearing;
+    /* the full block rows and columns of the torn system */
+    private final int[] assignedRows;
+    private final int[] assignedColumns;
+    private final int[] residualRows;
+    private final int[] tearingColumns;
+
+    /* the structural entries of every row of the full block */
+    private final int[][] columns;
+    private final double[][] entries;
+    /* the tearing (assigned) index of every full block column, or -1 */
+    private final int[] tearingIndex;
+    private final int[] assignedIndex;
+
+    private final double[] point;
+    private final double[] residual;
+    /* d(assigned)/d(tearing) */
+    private final double[][] sensitivity;
+
+    private final double[] t;
+    private final DenseMatrix64F reduced;
+    private final DenseMatrix64F rhs;
+    private final DenseMatrix64F dt;
+    private final LinearSolver<DenseMatrix64F> solver;
+    private BlockStatistics statistics;
+
+    public TornBlock(final Block block, final Tearing tearing,
+            final ExecutableDAE dae) {
+        this.block = block;
+        final int n = block.variables.length;
+        final int a = tearing.assigned.size();
+        final int m = tearing.tearing.size();
+
+        this.assignments = new IBlock[a];
+        this.assignedRows = new int[a];
+        this.assignedColumns = new int[a];
+        for (int k = 0; k < a; k++) {
+            final GlobalEquation eqn = tearing.assigned.get(k);
+            final GlobalVariable v = tearing.computed.get(k);
+            assignments[k] = eqn.specializeFor(v, block, dae);
+            assignedRows[k] = block.row(eqn);
+            assignedColumns[k] = block.column(v);
+        }
+
+        this.tearing = tearing.tearing.toArray(new GlobalVariable[m]);
+        this.tearingColumns = new int[m];
+        for (int j = 0; j < m; j++)
+            tearingColumns[j] = block.column(this.tearing[j]);
+
+        this.residualRows = new int[m];
+        int r = 0;
+        for (DerivedEquation e : tearing.residuals) {
+            final int row = block.row(e.eqn);
+            for (int di = e.minOrder; di <= e.maxOrder; di++)
+                residualRows[r++] = row + di - e.minOrder;
+        }
+
+        this.tearingIndex = new int[n];
+        this.assignedIndex = new int[n];
+        Arrays.fill(tearingIndex, -1);
+        Arrays.fill(assignedIndex, -1);
+        for (int j = 0; j < m; j++)
+            tearingIndex[tearingColumns[j]] = j;
+        for (int k = 0; k < a; k++)
+            assignedIndex[assignedColumns[k]] = k;
+
+        this.columns = new int[n][];
+        this.entries = new double[n][];
+        for (int row = 0; row < n; row++) {
+            columns[row] = block.columns(row);
+            entries[row] = new double[columns[row].length];
+        }
+
+        this.point = new double[n];
+        this.residual = new double[n];
+        this.sensitivity = new double[a][m];
+
+        this.t = new double[m];
+        this.reduced = new DenseMatrix64F(m, m);
+        this.rhs = new DenseMatrix64F(m, 1);
+        this.dt = new DenseMatrix64F(m, 1);
+        this.solver = LinearSolverFactory.linear(m);
+    }
+
+    @Override
+    public void exec() {
+        final ExecutionContext view = block.views[0];
+        view.loadD(t, tearing);
+
+        int steps = block.options.maxIterations;
+        while (true) {
+            for (IBlock assignment : assignments)
+                assignment.exec();
+
+            view.loadD(point, block.variables);
+            block.linearize(point, residual, entries);
+            if (statistics != null)
+                statistics.jacobians++;
+
+            if (converged())
+                return;
+
+            if (steps-- <= 0)
+                throw new ConvergenceException();
+            if (statistics != null) {
+                statistics.iterations++;
+                statistics.factorizations++;
+            }
+
+            reduce();
+            if (!solver.setA(reduced))
+                throw new ConvergenceException();
+            solver.solve(rhs, dt);
+
+            for (int j = 0; j < t.length; j++)
+                t[j] += dt.data[j];
+            view.set(0, tearing, t);
+        }
+    }
+
+    private boolean converged() {
+        for (int r : residualRows)
+            if (residual[r] > Block.TOLERANCE || residual[r] < -Block.TOLERANCE)
+                return false;
+        return true;
+    }
+
+    /**
+     * J := R_t + R_a * D, where D_k = -(E_kt + sum_{l<k} E_kl * D_l) / E_kk
+     */
+    private void reduce() {
+        for (int k = 0; k < assignments.length; k++) {
+            final int row = assignedRows[k];
+            final double[] d = sensitivity[k];
+            Arrays.fill(d, 0.0);
+            double ekk = 0.0;
+            for (int t = 0; t < columns[row].length; t++) {
+                final int c = columns[row][t];
+                final double e = entries[row][t];
+                final int l = assignedIndex[c];
+                if (tearingIndex[c] >= 0)
+                    d[tearingIndex[c]] += e;
+                else if (l == k)
+                    ekk = e;
+                else if (l >= 0 && l < k && e != 0.0)
+                    for (int j = 0; j < d.length; j++)
+                        d[j] += e * sensitivity[l][j];
+            }
+            for (int j = 0; j < d.length; j++)
+                d[j] /= -ekk;
+        }
+
+        final int m = tearingColumns.length;
+        Arrays.fill(reduced.data, 0.0);
+        for (int i = 0; i < residualRows.length; i++) {
+            final int row = residualRows[i];
+            rhs.data[i] = -residual[row];
+            for (int t = 0; t < columns[row].length; t++) {
+                final int c = columns[row][t];
+                final double e = entries[row][t];
+                final int k = assignedIndex[c];
+                if (tearingIndex[c] >= 0)
+                    reduced.data[i * m + tearingIndex[c]] += e;
+                else if (k >= 0 && e != 0.0)
+                    for (int j = 0; j < m; j++)
+                        reduced.data[i * m + j] += e * sensitivity[k][j];
+            }
+        }
+    }
+
+    @Override
+    public void measure(final BlockStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void resetHistory() {
+        block.resetHistory();
+        for (IBlock assignment : assignments)
+            assignment.resetHistory();
+    }
+
+    /**
+     * @return the number of variables Newton's method iterates on
+     */
+    public int dimension() {
+        return tearing.length;
+    }
+
+    @Override
+    public Iterable<GlobalVariable> variables() {
+        return Arrays.asList(block.variables);
+    }
+
+    public String toString() {
+        return String.format("TornBlock(%s of %d)", Arrays.toString(tearing),
+                block.variables.length);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.llmsl;
+
+import de.tuberlin.uebb.jdae.diff.total.TDNumber;
+
+/**
+ * @author choeger
+ * 
+ */
+public final class ValueEquations {
+
+    private ValueEquations() {
+    }
+
+    /**
+     * @return the equation itself, if it has a double-only path, otherwise
+     *         an adapter that evaluates it (best on a view without partial
+     *         derivatives, see {@link ExecutionContext#withoutPartials()})
+     *         and keeps the value only
+     */
+    public static ValueEquation adapt(final BlockEquation eq) {
+        if (eq instanceof ValueEquation)
+            return (ValueEquation) eq;
+
+        return new ValueEquation() {
+
+            @Override
+            public TDNumber exec(ExecutionContext m) {
+                return eq.exec(m);
+            }
+
+            @Override
+            public double execValue(ExecutionContext m) {
+                return eq.exec(m).der(0);
+            }
+        };
+    }
+}
@@ -24,14 +24,19 @@ import java.util.Map;
 
 import com.google.common.collect.ImmutableList;
 
+import de.tuberlin.uebb.jdae.diff.partial.SparsePDNumber;
+import de.tuberlin.uebb.jdae.diff.total.FlatTDNumber;
 import de.tuberlin.uebb.jdae.diff.total.TDNumber;
 import de.tuberlin.uebb.jdae.llmsl.BlockEquation;
 import de.tuberlin.uebb.jdae.llmsl.BlockVariable;
 import de.tuberlin.uebb.jdae.llmsl.ExecutableDAE;
 import de.tuberlin.uebb.jdae.llmsl.ExecutionContext;
+import de.tuberlin.uebb.jdae.llmsl.FlatEquation;
 import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
 import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.llmsl.SparseEquation;
 import de.tuberlin.uebb.jdae.llmsl.IBlock;
+import de.tuberlin.uebb.jdae.llmsl.ValueEquation;
 
 public final class ConstantGlobalEquation extends GlobalEquation {
 
@@ -51,22 +56,51 @@ public final class ConstantGlobalEquation extends GlobalEquation {
 
     @Override
     public BlockEquation bind(final Map<GlobalVariable, BlockVariable> blockCtxt) {
-        return new BlockEquation() {
-
-            final BlockVariable bvar = blockCtxt.get(var);
+        return new Residual(blockCtxt.get(var));
+    }
 
-            @Override
-            public TDNumber exec(ExecutionContext m) {
-                final TDNumber load = bvar.load(m);
-                return load.subtract(c);
-            }
-        };
+    private final class Residual implements ValueEquation, FlatEquation,
+            SparseEquation {
+
+        final BlockVariable bvar;
+
+        Residual(final BlockVariable bvar) {
+            this.bvar = bvar;
+        }
+
+        @Override
+        public TDNumber exec(ExecutionContext m) {
+            final TDNumber load = bvar.load(m);
+            return load.subtract(c);
+        }
+
+        @Override
+        public double execValue(ExecutionContext m) {
+            return bvar.value(m) - c;
+        }
+
+        @Override
+        public FlatTDNumber execFlat(ExecutionContext m) {
+            final FlatTDNumber ret = m.flatConstant(-c);
+            m.addFlat(1.0, bvar, ret.values);
+            return ret;
+        }
+
+        @Override
+        public SparsePDNumber execSparse(ExecutionContext m) {
+            return m.loadSparse(bvar).subtract(c);
+        }
     }
 
     public String toString() {
         return String.format("%s = %f", var, c);
     }
 
+    @Override
+    public boolean isLinear() {
+        return true;
+    }
+
     public boolean canSpecializeFor(GlobalVariable v) {
         return var.equals(v);
     }
@@ -85,6 +119,10 @@ public final class ConstantGlobalEquation extends GlobalEquation {
             public void exec() {
                 dae.set(var, c);
             }
+
+            @Override
+            public void resetHistory() {
+            }
         };
     }
 
@@ -24,12 +24,17 @@ import java.util.Map;
 
 import com.google.common.collect.ImmutableList;
 
+import de.tuberlin.uebb.jdae.diff.partial.SparsePDNumber;
+import de.tuberlin.uebb.jdae.diff.total.FlatTDNumber;
 import de.tuberlin.uebb.jdae.diff.total.TDNumber;
 import de.tuberlin.uebb.jdae.llmsl.BlockEquation;
 import de.tuberlin.uebb.jdae.llmsl.BlockVariable;
 import de.tuberlin.uebb.jdae.llmsl.ExecutionContext;
+import de.tuberlin.uebb.jdae.llmsl.FlatEquation;
 import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
 import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.llmsl.SparseEquation;
+import de.tuberlin.uebb.jdae.llmsl.ValueEquation;
 
 public final class EqualityGlobalEquation extends GlobalEquation {
 
@@ -48,15 +53,46 @@ public final class EqualityGlobalEquation extends GlobalEquation {
 
     @Override
     public BlockEquation bind(final Map<GlobalVariable, BlockVariable> blockCtxt) {
-        return new BlockEquation() {
+        return new Residual(blockCtxt.get(lhs), blockCtxt.get(rhs));
+    }
+
+    private static final class Residual implements ValueEquation,
+            FlatEquation, SparseEquation {
+
+        final BlockVariable l, r;
+
+        Residual(final BlockVariable l, final BlockVariable r) {
+            this.l = l;
+            this.r = r;
+        }
+
+        @Override
+        public TDNumber exec(ExecutionContext m) {
+            return l.load(m).subtract(r.load(m));
+        }
 
-            final BlockVariable l = blockCtxt.get(lhs), r = blockCtxt.get(rhs);
+        @Override
+        public double execValue(ExecutionContext m) {
+            return l.value(m) - r.value(m);
+        }
 
-            @Override
-            public TDNumber exec(ExecutionContext m) {
-                return l.load(m).subtract(r.load(m));
-            }
-        };
+        @Override
+        public FlatTDNumber execFlat(ExecutionContext m) {
+            final FlatTDNumber ret = m.flatConstant(0.0);
+            m.addFlat(1.0, l, ret.values);
+            m.addFlat(-1.0, r, ret.values);
+            return ret;
+        }
+
+        @Override
+        public SparsePDNumber execSparse(ExecutionContext m) {
+            return m.loadSparse(l).subtract(m.loadSparse(r));
+        }
+    }
+
+    @Override
+    public boolean isLinear() {
+        return true;
     }
 
     public String toString() {
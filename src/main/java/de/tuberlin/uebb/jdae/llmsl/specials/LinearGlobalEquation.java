@@ -24,14 +24,19 @@ import java.util.Map;
 import com.google.common.base.Functions;
 import com.google.common.collect.Lists;
 
+import de.tuberlin.uebb.jdae.diff.partial.SparsePDNumber;
+import de.tuberlin.uebb.jdae.diff.total.FlatTDNumber;
 import de.tuberlin.uebb.jdae.diff.total.TDNumber;
 import de.tuberlin.uebb.jdae.llmsl.BlockEquation;
 import de.tuberlin.uebb.jdae.llmsl.BlockVariable;
 import de.tuberlin.uebb.jdae.llmsl.ExecutableDAE;
 import de.tuberlin.uebb.jdae.llmsl.ExecutionContext;
+import de.tuberlin.uebb.jdae.llmsl.FlatEquation;
 import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
 import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.llmsl.SparseEquation;
 import de.tuberlin.uebb.jdae.llmsl.IBlock;
+import de.tuberlin.uebb.jdae.llmsl.ValueEquation;
 
 /**
  * @author choeger
@@ -69,6 +74,11 @@ public final class LinearGlobalEquation extends GlobalEquation {
         return variables;
     }
 
+    @Override
+    public boolean isLinear() {
+        return true;
+    }
+
     public boolean canSpecializeFor(GlobalVariable v) {
         return variables.contains(v);
     }
@@ -93,6 +103,10 @@ public final class LinearGlobalEquation extends GlobalEquation {
 
                 dae.set(v, (ret - constant) / -coefficients[j]);
             }
+
+            @Override
+            public void resetHistory() {
+            }
         };
     }
 
@@ -101,17 +115,53 @@ public final class LinearGlobalEquation extends GlobalEquation {
         final List<BlockVariable> bvars = Lists.transform(variables,
                 Functions.forMap(blockCtxt));
 
-        return new BlockEquation() {
+        return new Residual(bvars);
+    }
 
-            @Override
-            public TDNumber exec(ExecutionContext m) {
-                TDNumber ret = m.time().mult(time);
-                for (int i = 0; i < bvars.size(); i++)
-                    ret = ret.add(bvars.get(i).load(m).mult(coefficients[i]));
+    private final class Residual implements ValueEquation, FlatEquation,
+            SparseEquation {
 
-                return ret.subtract(constant);
-            }
+        final List<BlockVariable> bvars;
 
-        };
+        Residual(final List<BlockVariable> bvars) {
+            this.bvars = bvars;
+        }
+
+        @Override
+        public TDNumber exec(ExecutionContext m) {
+            TDNumber ret = m.time().mult(time);
+            for (int i = 0; i < bvars.size(); i++)
+                ret = ret.add(bvars.get(i).load(m).mult(coefficients[i]));
+
+            return ret.subtract(constant);
+        }
+
+        @Override
+        public double execValue(ExecutionContext m) {
+            double ret = m.timeValue() * time;
+            for (int i = 0; i < bvars.size(); i++)
+                ret += bvars.get(i).value(m) * coefficients[i];
+
+            return ret - constant;
+        }
+
+        @Override
+        public FlatTDNumber execFlat(ExecutionContext m) {
+            final FlatTDNumber ret = m.flatConstant(-constant);
+            m.addFlatTime(time, ret.values);
+            for (int i = 0; i < bvars.size(); i++)
+                m.addFlat(coefficients[i], bvars.get(i), ret.values);
+
+            return ret;
+        }
+
+        @Override
+        public SparsePDNumber execSparse(ExecutionContext m) {
+            SparsePDNumber ret = m.sparseConstant(m.timeValue() * time);
+            for (int i = 0; i < bvars.size(); i++)
+                ret = ret.add(m.loadSparse(bvars.get(i)).mult(coefficients[i]));
+
+            return ret.subtract(constant);
+        }
     }
 }
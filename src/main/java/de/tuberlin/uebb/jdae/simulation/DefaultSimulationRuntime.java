@@ -136,7 +136,7 @@ public final class DefaultSimulationRuntime implements SimulationRuntime {
     }
 
     @Override
-    public void simulate(ExecutableDAE dae) {
+    public SimulationStatistics simulate(ExecutableDAE dae) {
         results = new ResultStorage(dae);
 
         final long iStart = System.currentTimeMillis();
@@ -156,15 +156,20 @@ public final class DefaultSimulationRuntime implements SimulationRuntime {
             // TODO: add event Handler
         }
 
-        final long start = System.currentTimeMillis();
+        final long start = System.nanoTime();
 
         dae.integrate(results);
 
+        final SimulationStatistics statistics = new SimulationStatistics(
+                results.results.size(), dae.getEvaluations(),
+                System.nanoTime() - start, dae.blockStatistics());
+
         logger.log(
                 Level.INFO,
                 "Simulation finished after {1} accepted steps, {2} system-evaluations in {0}ms",
-                new Object[] { System.currentTimeMillis() - start,
-                        results.results.size(), dae.getEvaluations() });
+                new Object[] { statistics.nanos / 1000000,
+                        statistics.steps, statistics.evaluations });
+        return statistics;
     }
 
     @Override
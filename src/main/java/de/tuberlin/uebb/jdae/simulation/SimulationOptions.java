@@ -47,6 +47,116 @@ public final class SimulationOptions {
     // TODO: let user choose
     public int maxIterations = 1000;
 
+    /* draw the temporaries of residual evaluations from per-block arenas */
+    public boolean arenaAllocation = true;
+
+    /*
+     * blocks of at least this many iteratees use reverse-mode derivatives,
+     * if all of their equations are underived (0 disables reverse mode)
+     */
+    public int reverseModeThreshold = 48;
+
+    /*
+     * blocks of at least this many iteratees, whose equations are all
+     * underived and provide sparse gradients, read their Jacobian rows from
+     * those (takes precedence over reverse mode, 0 disables)
+     */
+    public int sparseGradientThreshold = 48;
+
+    /*
+     * evaluate block residuals with one derivative direction per color of
+     * the structural Jacobian instead of one per iteratee
+     */
+    public boolean jacobianColoring = true;
+
+    /*
+     * share loaded variables and common subexpressions between the equations
+     * of a block during one residual evaluation (needs arena allocation and
+     * forward mode; equations must not mutate loaded numbers)
+     */
+    public boolean expressionSharing = false;
+
+    /*
+     * evaluate block residuals in the contiguous layout of FlatTDNumber, if
+     * all equations of a block provide a flat path (forward mode only)
+     */
+    public boolean flatResiduals = false;
+
+    /*
+     * simplified Newton: keep the factorized block Jacobian across iterations
+     * and calls, refactorize after chordIterations steps on one
+     * factorization or once a step shrinks by less than chordContraction
+     */
+    public boolean simplifiedNewton = false;
+    public int chordIterations = 8;
+    public double chordContraction = 0.5;
+
+    /*
+     * Broyden's method: evaluate block residuals without partial derivatives
+     * and update an approximate inverse Jacobian, which is recomputed after
+     * broydenRestart updates or once the residual grows (takes precedence
+     * over simplifiedNewton)
+     */
+    public boolean broyden = false;
+    public boolean badBroyden = false;
+    public int broydenRestart = 20;
+
+    /*
+     * blocks of at least this many iteratees, whose structural Jacobian has
+     * at most sparseDensity non-zeros per entry, use a sparse LU (0 disables)
+     */
+    public int sparseThreshold = 100;
+    public double sparseDensity = 0.1;
+
+    /*
+     * tear multi-variable blocks: equations that can be solved causally
+     * compute their variable from the tearing variables, Newton's method only
+     * iterates on the rest
+     */
+    public boolean tearing = false;
+
+    /*
+     * start Newton's method from the polynomial of this degree through the
+     * last accepted solutions of a block (0 starts from the last solution)
+     */
+    public int extrapolationOrder = 0;
+
+    /*
+     * check Newton's convergence on residual values only, partial derivatives
+     * are computed when a Jacobian is actually needed
+     */
+    public boolean valueResiduals = true;
+
+    /*
+     * globalize Newton's method by Armijo backtracking on the residual norm
+     * or a dogleg trust region, and give up after divergenceLimit iterations
+     * in a row that did not reduce the residual (0 never gives up early,
+     * e.g. 8 gives up on diverging Newton iterations quickly)
+     */
+    public boolean lineSearch = false;
+    public boolean trustRegion = false;
+    public int divergenceLimit = 0;
+
+    /*
+     * run independent blocks concurrently on threads workers (0 uses all
+     * processors), levels with fewer than 2 * parallelGrain blocks run
+     * sequentially
+     */
+    public boolean parallelBlocks = false;
+    public int threads = 0;
+    public int parallelGrain = 8;
+
+    /*
+     * solve blocks of linear equations by a single step with a factorization
+     * kept for the whole simulation; with linearProbe, also check every
+     * other block once whether its Jacobian depends on the iteratees
+     */
+    public boolean linearBlocks = true;
+    public boolean linearProbe = false;
+
+    /* count iterations, factorizations and time per block */
+    public boolean statistics = false;
+
     protected SimulationOptions(double startTime, double stopTime,
             FirstOrderIntegrator integrator, double minStepSize,
             double maxStepSize, double tolerance,
@@ -45,7 +45,7 @@ public interface SimulationRuntime {
     public ExecutableDAE causalise(LoadableModel model,
             SimulationOptions options);
 
-    public void simulate(ExecutableDAE dae);
+    public SimulationStatistics simulate(ExecutableDAE dae);
 
     public SimulationOptions simulateVariableStep(ExecutableDAE dae,
             double stop_time, double minStep, double maxStep,
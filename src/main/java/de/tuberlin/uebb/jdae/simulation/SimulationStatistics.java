@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.simulation;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import de.tuberlin.uebb.jdae.llmsl.BlockStatistics;
+
+/**
+ * What a simulation run cost. The per-block counters are only collected, if
+ * the DAE was created with {@link SimulationOptions#statistics}.
+ * 
+ * @author choeger
+ * 
+ */
+public final class SimulationStatistics {
+
+    public final int steps;
+    public final int evaluations;
+    public final long nanos;
+    public final List<BlockStatistics> blocks;
+
+    public SimulationStatistics(int steps, int evaluations, long nanos,
+            List<BlockStatistics> blocks) {
+        this.steps = steps;
+        this.evaluations = evaluations;
+        this.nanos = nanos;
+        this.blocks = ImmutableList.copyOf(blocks);
+    }
+
+    /**
+     * @return the sum of all block counters
+     */
+    public BlockStatistics total() {
+        final BlockStatistics total = new BlockStatistics("total");
+        for (BlockStatistics block : blocks)
+            total.add(block);
+        return total;
+    }
+
+    /**
+     * @return the block that took the most time, or null
+     */
+    public BlockStatistics slowest() {
+        BlockStatistics slowest = null;
+        for (BlockStatistics block : blocks)
+            if (slowest == null || block.nanos > slowest.nanos)
+                slowest = block;
+        return slowest;
+    }
+
+    public String toString() {
+        final StringBuilder b = new StringBuilder();
+        b.append(String.format(
+                "%d steps, %d system-evaluations in %.3fms", steps,
+                evaluations, nanos * 1e-6));
+        for (BlockStatistics block : blocks)
+            b.append('\n').append(block);
+        return b.toString();
+    }
+}
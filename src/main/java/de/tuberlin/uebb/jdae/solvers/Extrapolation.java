@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+/**
+ * The last few accepted solutions of a nonlinear system over time. The
+ * polynomial through them predicts the next solution, which makes a better
+ * starting point for Newton's method than the last solution alone on smooth
+ * trajectories.
+ * 
+ * @author choeger
+ * 
+ */
+public final class Extrapolation {
+
+    /* samples in chronological order, the first size entries are valid */
+    private final double[] times;
+    private final double[][] samples;
+    private final double[] weights;
+    private int size;
+
+    /**
+     * @param dimension
+     *            the size of the solution vectors
+     * @param order
+     *            the degree of the extrapolating polynomial
+     */
+    public Extrapolation(int dimension, int order) {
+        this.times = new double[order + 1];
+        this.samples = new double[order + 1][dimension];
+        this.weights = new double[order + 1];
+    }
+
+    /**
+     * Remember an accepted solution. Samples at or after t are dropped first,
+     * they belong to rejected steps.
+     */
+    public void record(final double t, final double[] x) {
+        while (size > 0 && times[size - 1] >= t)
+            size--;
+
+        if (size == times.length) {
+            final double[] oldest = samples[0];
+            for (int i = 1; i < size; i++) {
+                times[i - 1] = times[i];
+                samples[i - 1] = samples[i];
+            }
+            samples[--size] = oldest;
+        }
+
+        times[size] = t;
+        System.arraycopy(x, 0, samples[size], 0, x.length);
+        size++;
+    }
+
+    /**
+     * Write the prediction at time t into x.
+     * 
+     * @return false (leaving x untouched) if there is nothing to extrapolate
+     *         from, or t is not past the last sample
+     */
+    public boolean predict(final double t, final double[] x) {
+        if (size == 0 || t <= times[size - 1])
+            return false;
+
+        /* Lagrange basis */
+        for (int i = 0; i < size; i++) {
+            double w = 1.0;
+            for (int j = 0; j < size; j++)
+                if (j != i)
+                    w *= (t - times[j]) / (times[i] - times[j]);
+            weights[i] = w;
+        }
+
+        for (int k = 0; k < x.length; k++) {
+            double p = 0.0;
+            for (int i = 0; i < size; i++)
+                p += weights[i] * samples[i][k];
+            x[k] = p;
+        }
+        return true;
+    }
+
+    /**
+     * Forget all samples, e.g. after an event changed the trajectory.
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
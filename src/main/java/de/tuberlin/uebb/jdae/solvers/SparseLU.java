@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * A sparse direct solver for square systems of a fixed structure, e.g. the
+ * Jacobian of a block. The structure is analyzed once:
+ * 
+ * <ol>
+ * <li>a maximum transversal permutes the rows to a zero-free diagonal,</li>
+ * <li>a minimum degree ordering of the symmetrized pattern reduces fill-in,
+ * </li>
+ * <li>the elimination of that ordering yields the (symmetric) pattern of L
+ * and U, which is stored compressed: L by columns, U by rows.</li>
+ * </ol>
+ * 
+ * Every numeric factorization then runs on that pattern without pivoting
+ * (static pivots), scattering its updates to positions computed once with the
+ * pattern. If a pivot vanishes or the growth of L gets too large,
+ * {@link #factorize()} fails and the caller has to use a pivoting solver for
+ * this matrix.
+ * 
+ * @author choeger
+ * 
+ */
+public final class SparseLU {
+
+    /* the largest multiplier accepted in L */
+    private static final double MAX_GROWTH = 1e8;
+
+    public final int n;
+
+    /* the structure, row-wise in the original numbering */
+    private final int[][] rows;
+    /* the factor entry of every structural entry */
+    private final int[][] slots;
+
+    /* row k (column l) of the factorized matrix is row rowOf[k] (colOf[l]) */
+    private final int[] rowOf;
+    private final int[] colOf;
+
+    /* common pattern of column k of L and row k of U: index[start[k]..] */
+    private final int[] start;
+    private final int[] index;
+
+    /*
+     * the target of the update l_ik u_kj of step k: with m entries in the
+     * pattern of k, updates[first[k] + a * m + b] for pattern entries a and b
+     */
+    private final int[] first;
+    private final int[] updates;
+
+    /* the diagonal, then L, then U */
+    private final double[] values;
+    private final double[] work;
+
+    private SparseLU(int n, int[][] rows, int[] rowOf, int[] colOf,
+            int[] start, int[] index) {
+        this.n = n;
+        this.rows = rows;
+        this.rowOf = rowOf;
+        this.colOf = colOf;
+        this.start = start;
+        this.index = index;
+        this.values = new double[n + 2 * index.length];
+        this.work = new double[n];
+
+        final int[] rowPos = new int[n];
+        final int[] colPos = new int[n];
+        for (int k = 0; k < n; ++k) {
+            rowPos[rowOf[k]] = k;
+            colPos[colOf[k]] = k;
+        }
+
+        this.slots = new int[n][];
+        for (int r = 0; r < n; ++r) {
+            slots[r] = new int[rows[r].length];
+            for (int t = 0; t < rows[r].length; ++t)
+                slots[r][t] = slot(rowPos[r], colPos[rows[r][t]]);
+        }
+
+        this.first = new int[n + 1];
+        for (int k = 0; k < n; ++k) {
+            final int m = start[k + 1] - start[k];
+            first[k + 1] = first[k] + m * m;
+        }
+        this.updates = new int[first[n]];
+        for (int k = 0; k < n; ++k) {
+            int u = first[k];
+            for (int a = start[k]; a < start[k + 1]; ++a)
+                for (int b = start[k]; b < start[k + 1]; ++b)
+                    updates[u++] = slot(index[a], index[b]);
+        }
+    }
+
+    /**
+     * Analyze the given structure.
+     * 
+     * @param rows
+     *            the columns of the structural non-zeros of every row
+     * @return a solver for matrices of this structure, or null if every
+     *         matrix of this structure is singular
+     */
+    public static SparseLU analyze(int n, final int[][] rows) {
+        final int[] matched = match(n, rows);
+        if (matched == null)
+            return null;
+
+        /* symmetrized pattern of the matrix with matched[c] as row c */
+        final List<Set<Integer>> adjacent = Lists.newArrayListWithCapacity(n);
+        for (int v = 0; v < n; ++v)
+            adjacent.add(Sets.<Integer> newHashSet());
+        for (int c = 0; c < n; ++c)
+            for (int d : rows[matched[c]])
+                if (d != c) {
+                    adjacent.get(c).add(d);
+                    adjacent.get(d).add(c);
+                }
+
+        /* minimum degree: eliminate, recording the fill of every step */
+        final int[] order = new int[n];
+        final int[][] eliminated = new int[n][];
+        final boolean[] done = new boolean[n];
+        for (int k = 0; k < n; ++k) {
+            int v = -1;
+            for (int w = 0; w < n; ++w)
+                if (!done[w]
+                        && (v < 0 || adjacent.get(w).size() < adjacent.get(v)
+                                .size()))
+                    v = w;
+
+            final Set<Integer> neighbours = adjacent.get(v);
+            order[k] = v;
+            done[v] = true;
+            eliminated[k] = new int[neighbours.size()];
+            int t = 0;
+            for (int a : neighbours) {
+                eliminated[k][t++] = a;
+                final Set<Integer> other = adjacent.get(a);
+                other.remove(v);
+                for (int b : neighbours)
+                    if (b != a)
+                        other.add(b);
+            }
+            adjacent.set(v, null);
+        }
+
+        final int[] pos = new int[n];
+        for (int k = 0; k < n; ++k)
+            pos[order[k]] = k;
+
+        final int[] start = new int[n + 1];
+        for (int k = 0; k < n; ++k)
+            start[k + 1] = start[k] + eliminated[k].length;
+        final int[] index = new int[start[n]];
+        for (int k = 0; k < n; ++k) {
+            for (int t = 0; t < eliminated[k].length; ++t)
+                index[start[k] + t] = pos[eliminated[k][t]];
+            Arrays.sort(index, start[k], start[k + 1]);
+        }
+
+        final int[] rowOf = new int[n];
+        for (int k = 0; k < n; ++k)
+            rowOf[k] = matched[order[k]];
+
+        final int[][] copy = new int[n][];
+        for (int r = 0; r < n; ++r)
+            copy[r] = rows[r].clone();
+        return new SparseLU(n, copy, rowOf, order, start, index);
+    }
+
+    /**
+     * Maximum transversal by augmenting paths (with an explicit stack).
+     * 
+     * @return the row matched to every column, or null if there is no
+     *         perfect matching
+     */
+    private static int[] match(int n, final int[][] rows) {
+        final int[] rowOfCol = new int[n];
+        final int[] colOfRow = new int[n];
+        final int[] visited = new int[n];
+        Arrays.fill(rowOfCol, -1);
+        Arrays.fill(colOfRow, -1);
+        Arrays.fill(visited, -1);
+
+        final int[] stackRow = new int[n];
+        final int[] stackPos = new int[n];
+
+        for (int r0 = 0; r0 < n; ++r0) {
+            for (int c : rows[r0])
+                if (rowOfCol[c] < 0) {
+                    rowOfCol[c] = r0;
+                    colOfRow[r0] = c;
+                    break;
+                }
+            if (colOfRow[r0] >= 0)
+                continue;
+
+            int depth = 0;
+            stackRow[0] = r0;
+            stackPos[0] = 0;
+            boolean found = false;
+            while (depth >= 0 && !found) {
+                final int r = stackRow[depth];
+                if (stackPos[depth] == rows[r].length) {
+                    depth--;
+                    continue;
+                }
+                final int c = rows[r][stackPos[depth]++];
+                if (visited[c] == r0)
+                    continue;
+                visited[c] = r0;
+
+                if (rowOfCol[c] < 0) {
+                    /* every row on the stack takes the column after it */
+                    int col = c;
+                    for (int d = depth; d >= 0; --d) {
+                        final int rr = stackRow[d];
+                        final int previous = colOfRow[rr];
+                        rowOfCol[col] = rr;
+                        colOfRow[rr] = col;
+                        col = previous;
+                    }
+                    found = true;
+                } else {
+                    depth++;
+                    stackRow[depth] = rowOfCol[c];
+                    stackPos[depth] = 0;
+                }
+            }
+
+            if (!found)
+                return null;
+        }
+
+        return rowOfCol;
+    }
+
+    /* the position of entry (i, j) of the factorized matrix in values */
+    private int slot(int i, int j) {
+        if (i == j)
+            return i;
+        if (i > j)
+            return n + find(j, i);
+        return n + index.length + find(i, j);
+    }
+
+    private int find(int k, int key) {
+        final int p = Arrays.binarySearch(index, start[k], start[k + 1], key);
+        assert p >= 0 : String.format("(%d, %d) is not in the pattern", k, key);
+        return p;
+    }
+
+    /**
+     * @return the number of entries of L and U (including the diagonal)
+     */
+    public int nonZeros() {
+        return n + 2 * index.length;
+    }
+
+    /**
+     * Zero all entries.
+     */
+    public void clear() {
+        Arrays.fill(values, 0.0);
+    }
+
+    /**
+     * Set the structural entries of row r, read from the dense row.
+     */
+    public void setRow(int r, final double[] dense) {
+        final int[] columns = rows[r];
+        final int[] slot = slots[r];
+        for (int t = 0; t < columns.length; ++t)
+            values[slot[t]] = dense[columns[t]];
+    }
+
+    /**
+     * Factorize the current entries in place.
+     * 
+     * @return false, if the static pivots are unusable for this matrix
+     */
+    public boolean factorize() {
+        final int upper = n + index.length;
+        for (int k = 0; k < n; ++k) {
+            final double pivot = values[k];
+            if (pivot == 0.0 || Double.isNaN(pivot))
+                return false;
+
+            final int from = start[k], to = start[k + 1];
+            for (int a = from; a < to; ++a) {
+                final double l = values[n + a] / pivot;
+                if (!(Math.abs(l) <= MAX_GROWTH))
+                    return false;
+                values[n + a] = l;
+            }
+
+            final int m = to - from;
+            for (int a = from; a < to; ++a) {
+                final double l = values[n + a];
+                if (l == 0.0)
+                    continue;
+                int u = first[k] + (a - from) * m;
+                for (int b = from; b < to; ++b)
+                    values[updates[u++]] -= l * values[upper + b];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Solve A x = b with the last successful factorization. x may be b.
+     */
+    public void solve(final double[] b, final double[] x) {
+        final double[] y = work;
+        for (int k = 0; k < n; ++k)
+            y[k] = b[rowOf[k]];
+
+        for (int k = 0; k < n; ++k) {
+            final double yk = y[k];
+            if (yk != 0.0)
+                for (int a = start[k]; a < start[k + 1]; ++a)
+                    y[index[a]] -= values[n + a] * yk;
+        }
+
+        final int upper = n + index.length;
+        for (int k = n - 1; k >= 0; --k) {
+            double s = y[k];
+            for (int a = start[k]; a < start[k + 1]; ++a)
+                s -= values[upper + a] * y[index[a]];
+            y[k] = s / values[k];
+        }
+
+        for (int l = 0; l < n; ++l)
+            x[colOf[l]] = y[l];
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.transformation;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+
+/**
+ * Tearing of a strongly connected block: once the tearing variables are
+ * known, the assigned equations compute the remaining iteratees one after
+ * another (see {@link GlobalEquation#specializeFor}) and only the residual
+ * equations have to be solved numerically, for the tearing variables.
+ * 
+ * The tearing variables are chosen greedily: whenever no equation can be
+ * solved causally, the unknown occurring in the most open equations is torn.
+ * Only underived equations can be assigned.
+ * 
+ * @author choeger
+ * 
+ */
+public final class Tearing {
+
+    /* the assigned equations and the variables they compute, in order */
+    public final List<GlobalEquation> assigned;
+    public final List<GlobalVariable> computed;
+
+    public final List<GlobalVariable> tearing;
+    public final List<DerivedEquation> residuals;
+
+    public Tearing(final Set<GlobalVariable> iteratees,
+            final Set<DerivedEquation> equations) {
+        final Set<GlobalVariable> unknown = Sets.newTreeSet(iteratees);
+        final List<DerivedEquation> open = Lists.newArrayList();
+        final List<DerivedEquation> residuals = Lists.newArrayList();
+        final List<GlobalEquation> assigned = Lists.newArrayList();
+        final List<GlobalVariable> computed = Lists.newArrayList();
+        final List<GlobalVariable> tearing = Lists.newArrayList();
+
+        for (DerivedEquation e : equations)
+            if (e.minOrder == 0 && e.maxOrder == 0)
+                open.add(e);
+            else
+                residuals.add(e);
+
+        while (!unknown.isEmpty()) {
+            boolean progress = false;
+            for (Iterator<DerivedEquation> i = open.iterator(); i.hasNext();) {
+                final GlobalEquation eqn = i.next().eqn;
+                final Set<GlobalVariable> missing = Sets.intersection(
+                        Sets.newHashSet(eqn.need()), unknown);
+                if (missing.size() != 1)
+                    continue;
+
+                final GlobalVariable v = missing.iterator().next();
+                if (eqn.canSpecializeFor(v)) {
+                    assigned.add(eqn);
+                    computed.add(v);
+                    unknown.remove(v);
+                    i.remove();
+                    progress = true;
+                }
+            }
+
+            if (!progress) {
+                final GlobalVariable torn = mostFrequent(unknown, open);
+                tearing.add(torn);
+                unknown.remove(torn);
+            }
+        }
+        residuals.addAll(open);
+
+        this.assigned = ImmutableList.copyOf(assigned);
+        this.computed = ImmutableList.copyOf(computed);
+        this.tearing = ImmutableList.copyOf(tearing);
+        this.residuals = ImmutableList.copyOf(residuals);
+    }
+
+    private static GlobalVariable mostFrequent(
+            final Set<GlobalVariable> unknown, final List<DerivedEquation> open) {
+        GlobalVariable best = null;
+        int max = -1;
+        for (GlobalVariable v : unknown) {
+            int count = 0;
+            for (DerivedEquation e : open)
+                if (e.eqn.need().contains(v))
+                    count++;
+            if (count > max) {
+                max = count;
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return true, if tearing leaves fewer variables to iterate on
+     */
+    public boolean reduces() {
+        return !assigned.isEmpty();
+    }
+
+    public String toString() {
+        return String.format("tearing %s, computing %s",
+                Collections.unmodifiableList(tearing), computed);
+    }
+}
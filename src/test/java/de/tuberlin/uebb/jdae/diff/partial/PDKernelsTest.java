@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.partial;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class PDKernelsTest {
+
+    @Test
+    public void testScalarWithoutOptionalKernel() {
+        assertFalse(PDKernels.hasOptionalKernel());
+        assertSame(PDKernels.SCALAR, PDKernels.forLength(1));
+        assertSame(PDKernels.SCALAR, PDKernels.forLength(1024));
+    }
+
+    @Test
+    public void testScalarKernelAliasing() {
+        final double[] a = new double[] { 2.0, 1.0, 3.0 };
+        final double[] b = new double[] { 4.0, 0.5, -1.0 };
+        PDKernels.SCALAR.mult(a, b, a, 3);
+        assertArrayEquals(new double[] { 8.0, 5.0, 10.0 }, a, 0.0);
+
+        PDKernels.SCALAR.compose(1.0, 2.0, b, b, 3);
+        assertArrayEquals(new double[] { 1.0, 1.0, -2.0 }, b, 0.0);
+
+        PDKernels.SCALAR.scale(0.5, b, b, 3);
+        assertArrayEquals(new double[] { 0.5, 0.5, -1.0 }, b, 0.0);
+    }
+}
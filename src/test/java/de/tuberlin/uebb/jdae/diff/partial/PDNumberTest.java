@@ -437,4 +437,41 @@ public class PDNumberTest {
         }
     }
 
+    @Test
+    public void testElementaryPartialDerivatives() {
+        final PDNumber x = twoParams.variable(0, 0.5);
+        final PDNumber y = twoParams.variable(1, -2.0);
+
+        assertEquals(FastMath.exp(0.5), x.exp().der(0), 1e-12);
+        assertEquals(2.0, x.log().der(0), 1e-12);
+        assertEquals(0.5 / FastMath.sqrt(0.5), x.sqrt().der(0), 1e-12);
+        assertEquals(1 + FastMath.pow(FastMath.tan(0.5), 2), x.tan().der(0),
+                1e-12);
+        assertEquals(1 - FastMath.pow(FastMath.tanh(0.5), 2), x.tanh()
+                .der(0), 1e-12);
+        assertEquals(-1.0, y.abs().der(1), 1e-12);
+        assertEquals(2.0, y.abs().values[0], 1e-12);
+
+        final PDNumber q = x.div(y);
+        assertEquals(-0.25, q.values[0], 1e-12);
+        assertEquals(-0.5, q.der(0), 1e-12);
+        assertEquals(-0.125, q.der(1), 1e-12);
+
+        final PDNumber phi = y.atan2(x);
+        assertEquals(FastMath.atan2(-2.0, 0.5), phi.values[0], 1e-12);
+        assertEquals(2.0 / 4.25, phi.der(0), 1e-12);
+        assertEquals(0.5 / 4.25, phi.der(1), 1e-12);
+    }
+
+    @Test
+    public void testInplaceElementaryOperations() {
+        final PDNumber x = twoParams.variable(0, 0.5);
+        final PDNumber y = x.copy();
+        y.m_exp();
+        y.m_log();
+        assertThat(y, is(closeTo(x)));
+        y.m_div(x.values);
+        assertThat(y, is(closeTo(twoParams.constant(1.0))));
+    }
+
 }
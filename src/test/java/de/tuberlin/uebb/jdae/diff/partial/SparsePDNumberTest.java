@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.partial;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import static de.tuberlin.uebb.jdae.diff.partial.PDNumberTest.closeTo;
+
+public class SparsePDNumberTest {
+
+    final PDOperations ops = PDOperations.get(100);
+
+    final SparsePDNumber x = ops.sparseVariable(3, 0.5);
+    final SparsePDNumber y = ops.sparseVariable(42, 2.0);
+    final SparsePDNumber z = ops.sparseVariable(99, -1.5);
+
+    @Test
+    public void testSparsity() {
+        assertThat(x.nonZeros(), is(1));
+        assertThat(x.add(y).nonZeros(), is(2));
+        assertThat(x.mult(y).add(x).nonZeros(), is(2));
+        assertThat(x.mult(y).mult(z).nonZeros(), is(3));
+        assertThat(x.sin().add(1.0).nonZeros(), is(1));
+        assertThat(ops.sparseConstant(1.0).mult(x).nonZeros(), is(1));
+    }
+
+    @Test
+    public void testAgreesWithDense() {
+        final PDNumber dx = x.toDense(), dy = y.toDense(), dz = z.toDense();
+
+        assertThat(x.add(y).toDense(), is(closeTo(dx.add(dy))));
+        assertThat(x.mult(y).toDense(), is(closeTo(dx.mult(dy))));
+        assertThat(x.mult(y).add(z.mult(x)).toDense(),
+                is(closeTo(dx.mult(dy).add(dz.mult(dx)))));
+        assertThat(x.sin().mult(z.cos()).toDense(),
+                is(closeTo(dx.sin().mult(dz.cos()))));
+        assertThat(y.pow(3).subtract(x.pow(0.5)).toDense(),
+                is(closeTo(dy.pow(3).add(dx.pow(0.5).mult(-1)))));
+    }
+
+    @Test
+    public void testDerivatives() {
+        final SparsePDNumber r = x.mult(y).add(z);
+
+        assertEquals(2.0, r.der(3), PDNumberTest.TOLERANCE);
+        assertEquals(0.5, r.der(42), PDNumberTest.TOLERANCE);
+        assertEquals(1.0, r.der(99), PDNumberTest.TOLERANCE);
+        assertEquals(0.0, r.der(0), PDNumberTest.TOLERANCE);
+
+        final double[] row = new double[100];
+        r.scatter(row);
+        assertEquals(2.0, row[3], PDNumberTest.TOLERANCE);
+        assertEquals(1.0, row[99], PDNumberTest.TOLERANCE);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.google.common.collect.Lists;
+
+import de.tuberlin.uebb.jdae.diff.partial.PDNumber;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import static de.tuberlin.uebb.jdae.diff.total.TDNumberTest.closeTo;
+
+@RunWith(Parameterized.class)
+public class FlatTDNumberTest {
+
+    @Parameters(name = "Flat TD Test on: {0}")
+    public static Collection<Object[]> data() {
+        final List<Object[]> p = Lists.newArrayList();
+        for (TDOperations op : TDNumberTest.exampleOps)
+            p.add(new Object[] { op });
+
+        return p;
+    }
+
+    public final TDOperations ops;
+    public final TDNumber x, y;
+
+    public FlatTDNumberTest(TDOperations ops) {
+        this.ops = ops;
+        final Random random = new Random(42);
+        this.x = random(random);
+        this.y = random(random);
+    }
+
+    private TDNumber random(final Random random) {
+        final PDNumber[] values = new PDNumber[ops.order + 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new PDNumber(ops.subOps.params);
+            for (int j = 0; j < values[i].values.length; j++)
+                values[i].values[j] = random.nextDouble() + 0.5;
+        }
+        return new TDNumber(ops, values);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        assertThat(new FlatTDNumber(x).toTDNumber(), is(x));
+        assertThat(new FlatTDNumber(x).der(ops.order), is(x.der(ops.order)));
+    }
+
+    @Test
+    public void testArithmetic() {
+        final FlatTDNumber fx = new FlatTDNumber(x);
+        final FlatTDNumber fy = new FlatTDNumber(y);
+
+        assertThat(fx.add(fy).toTDNumber(), is(closeTo(x.add(y))));
+        assertThat(fx.add(2.0).toTDNumber(), is(closeTo(x.add(2.0))));
+        assertThat(fx.mult(fy).toTDNumber(), is(closeTo(x.mult(y))));
+        assertThat(fx.mult(3).toTDNumber(), is(closeTo(x.mult(3))));
+        assertThat(fx.subtract(fy).toTDNumber(), is(closeTo(x.subtract(y))));
+    }
+
+    @Test
+    public void testElementaryFunctions() {
+        final FlatTDNumber fx = new FlatTDNumber(x);
+
+        assertThat(fx.sin().toTDNumber(), is(closeTo(x.sin())));
+        assertThat(fx.cos().toTDNumber(), is(closeTo(x.cos())));
+        assertThat(fx.pow(3).toTDNumber(), is(closeTo(x.pow(3))));
+        assertThat(fx.pow(-2).toTDNumber(), is(closeTo(x.pow(-2))));
+        assertThat(fx.pow(0.5).toTDNumber(), is(closeTo(x.pow(0.5))));
+    }
+
+    @Test
+    public void testConstants() {
+        assertThat(ops.flatConstant(2.0, 1.0).toTDNumber(),
+                is(ops.constant(2.0, 1.0)));
+        assertThat(new FlatTDNumber(x).mult(ops.flatConstant(1.0)),
+                is(new FlatTDNumber(x)));
+    }
+}
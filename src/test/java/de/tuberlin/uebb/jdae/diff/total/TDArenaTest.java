@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class TDArenaTest {
+
+    final TDOperations ops = TDOperations.getInstance(2, 3);
+
+    private TDNumber residual(final TDNumber x, final TDNumber y) {
+        final TDRegister reg = new TDRegister(x.mult(y).add(1.0));
+        reg.mult(x.sin());
+        reg.add(y.pow(2).mult(-1));
+        return reg.unsafe().div(y).subtract(x.exp());
+    }
+
+    @Test
+    public void testArenaResultsEqualHeapResults() {
+        final TDArena arena = new TDArena(ops, 1);
+        final double[] dx = { 0.5, 1.0, -2.0 };
+        final double[] dy = { 1.5, 0.25, 3.0 };
+
+        final TDNumber x = ops.variable(0, dx), y = ops.variable(1, dy);
+
+        final TDNumber ax = arena.copyOf(x), ay = arena.copyOf(y);
+        assertThat(ax, is(x));
+        assertThat(residual(ax, ay), is(residual(x, y)));
+        assertThat(arena.constantVar(1, 0.0, 1.0, 2.0, 3.0),
+                is(ops.constantVar(1, 0.0, 1.0, 2.0, 3.0)));
+        assertThat(arena.constant(1.0, 2.0), is(ops.constant(1.0, 2.0)));
+    }
+
+    @Test
+    public void testSteadyStateReusesNumbers() {
+        final TDArena arena = new TDArena(ops, 1);
+
+        arena.constant(1.0);
+        residual(arena.constant(0.5, 1.0), arena.constant(1.5, 0.25));
+        final int used = arena.used();
+        final int capacity = arena.capacity();
+
+        for (int i = 0; i < 10; ++i) {
+            arena.reset();
+            final TDNumber first = arena.constant(1.0);
+            residual(arena.constant(0.5, 1.0), arena.constant(1.5, 0.25));
+            assertThat(arena.used(), is(used));
+            assertThat(arena.capacity(), is(capacity));
+
+            arena.reset();
+            assertThat(arena.allocate(), is(sameInstance(first)));
+        }
+    }
+}
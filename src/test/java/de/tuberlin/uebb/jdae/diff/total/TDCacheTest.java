@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class TDCacheTest {
+
+    final TDOperations ops = TDOperations.getInstance(2, 3);
+    final TDCache cache = new TDCache();
+    final TDArena arena = new TDArena(ops, cache);
+
+    final TDNumber x = arena.copyOf(ops.variable(0, 0.5, 1.0, -2.0));
+    final TDNumber y = arena.copyOf(ops.variable(1, 1.5, 0.25, 3.0));
+
+    private TDNumber residual(final TDNumber x, final TDNumber y) {
+        final TDRegister reg = new TDRegister(x.mult(y).add(1.0));
+        reg.mult(x.sin());
+        reg.add(y.pow(2).mult(-1));
+        return reg.unsafe().div(y).subtract(x.exp());
+    }
+
+    @Test
+    public void testRepeatedOperationsAreShared() {
+        assertThat(x.sin(), is(sameInstance(x.sin())));
+        assertThat(x.pow(2), is(sameInstance(x.pow(2))));
+        assertThat(x.pow(2), is(not(sameInstance(x.pow(3)))));
+        assertThat(x.add(1.0), is(sameInstance(x.add(1.0))));
+        assertThat(x.div(y), is(not(sameInstance(y.div(x)))));
+    }
+
+    @Test
+    public void testCommutativeOperandsAreShared() {
+        assertThat(x.mult(y), is(sameInstance(y.mult(x))));
+        assertThat(x.add(y), is(sameInstance(y.add(x))));
+    }
+
+    @Test
+    public void testRegisterSequencesAreShared() {
+        final TDNumber expected = residual(ops.variable(0, 0.5, 1.0, -2.0),
+                ops.variable(1, 1.5, 0.25, 3.0));
+        final TDNumber copy = x.copy();
+
+        final TDNumber first = residual(x, y);
+        assertThat(first, is(expected));
+        assertThat(residual(x, y), is(sameInstance(first)));
+        /* the register must not have overwritten its shared initial number */
+        assertThat(x, is(copy));
+        assertThat(cache.hits() > 0, is(true));
+    }
+
+    @Test
+    public void testLoadsAreKeyedByShape() {
+        final TDOperations other = TDOperations.getInstance(1, 3);
+        cache.store("x", ops, x);
+        assertThat(cache.load("x", ops), is(sameInstance(x)));
+        assertThat(cache.load("x", other), is((TDNumber) null));
+    }
+
+    @Test
+    public void testClearForgetsResults() {
+        final TDNumber s = x.sin();
+        cache.clear();
+        assertThat(cache.size(), is(0));
+        assertThat(x.sin(), is(not(sameInstance(s))));
+    }
+}
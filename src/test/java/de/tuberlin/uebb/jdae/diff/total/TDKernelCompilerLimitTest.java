@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.tuberlin.uebb.jdae.diff.partial.PDNumber;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Checks that tables exceeding the limits of a class file are not compiled
+ * and keep working interpreted.
+ */
+public class TDKernelCompilerLimitTest {
+
+    final Random random = new Random(4711);
+
+    private TDNumber random(final TDOperations ops) {
+        final PDNumber[] values = new PDNumber[ops.order + 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new PDNumber(ops.subOps.params);
+            for (int j = 0; j < values[i].values.length; j++)
+                values[i].values[j] = random.nextDouble() - 0.5;
+        }
+        return new TDNumber(ops, values);
+    }
+
+    private void assertInterpreted(int order, int params) {
+        final TDOperations ops = TDOperations.getInstance(order, params);
+        final TDNumber x = random(ops), y = random(ops);
+        final TDNumber product = x.mult(y);
+        final TDNumber sin = x.sin();
+
+        assertFalse(ops.compile());
+        assertFalse(ops.isCompiled());
+
+        assertThat(x.mult(y), is(product));
+        assertThat(x.sin(), is(sin));
+    }
+
+    @Test
+    public void testWideTablesAreInterpreted() {
+        assertInterpreted(1, 4000);
+    }
+
+    @Test
+    public void testDeepTablesAreInterpreted() {
+        assertInterpreted(6, 40);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.google.common.collect.Lists;
+
+import de.tuberlin.uebb.jdae.diff.partial.PDNumber;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class TDKernelCompilerTest {
+
+    @Parameters(name = "Compiled kernel for order {0}, {1} parameters")
+    public static Collection<Object[]> data() {
+        final List<Object[]> p = Lists.newArrayList();
+        p.add(new Object[] { 0, 3 });
+        p.add(new Object[] { 1, 7 });
+        p.add(new Object[] { 3, 4 });
+        p.add(new Object[] { 1, 140 });
+        return p;
+    }
+
+    final TDOperations ops;
+    final Random random = new Random(4711);
+
+    public TDKernelCompilerTest(int order, int params) {
+        this.ops = TDOperations.getInstance(order, params);
+    }
+
+    private TDNumber random() {
+        final PDNumber[] values = new PDNumber[ops.order + 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new PDNumber(ops.subOps.params);
+            for (int j = 0; j < values[i].values.length; j++)
+                values[i].values[j] = random.nextDouble() - 0.5;
+        }
+        return new TDNumber(ops, values);
+    }
+
+    @Test
+    public void testCompiledKernelAgreesWithTables() {
+        final TDNumber x = random(), y = random();
+        final double[] f = new double[ops.order + 2];
+        for (int i = 0; i < f.length; i++)
+            f[i] = random.nextDouble();
+
+        final TDNumber product = x.mult(y);
+        final TDNumber composition = new TDNumber(ops,
+                new PDNumber[ops.order + 1]);
+        ops.compose(f, x.values, composition.values);
+
+        final FlatTDNumber fx = new FlatTDNumber(x), fy = new FlatTDNumber(y);
+        final FlatTDNumber flatProduct = fx.mult(fy);
+        final double[] flatComposition = new double[ops.size];
+        ops.compose(f, fx.values, flatComposition);
+
+        assertTrue(ops.compile());
+        assertTrue(ops.isCompiled());
+
+        assertThat(x.mult(y), is(product));
+        final TDNumber compiledComposition = new TDNumber(ops,
+                new PDNumber[ops.order + 1]);
+        ops.compose(f, x.values, compiledComposition.values);
+        assertThat(compiledComposition, is(composition));
+
+        assertThat(fx.mult(fy), is(flatProduct));
+        final double[] compiledFlat = new double[ops.size];
+        ops.compose(f, fx.values, compiledFlat);
+        assertArrayEquals(flatComposition, compiledFlat, 0.0);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.util.Collection;
+
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import static de.tuberlin.uebb.jdae.diff.total.TDNumberTest.closeTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Checks the elementary functions of the total-derivative algebra by
+ * identities that only use add, mult, sin and cos.
+ * 
+ * @author choeger
+ * 
+ */
+@RunWith(Parameterized.class)
+public class TDNumberElementaryTest {
+
+    @Parameters(name = "Elementary functions on: {0}")
+    public static Collection<Object[]> data() {
+        return TDNumberTest.data();
+    }
+
+    final TDOperations ops;
+    final TDNumber x;
+    final TDNumber y;
+
+    public TDNumberElementaryTest(TDOperations ops) {
+        this.ops = ops;
+        final double[] dx = new double[ops.order + 1];
+        final double[] dy = new double[ops.order + 1];
+        for (int i = 0; i <= ops.order; ++i) {
+            dx[i] = 0.7 / (1 + i);
+            dy[i] = -1.3 + 0.2 * i;
+        }
+        if (ops.subOps.params > 1) {
+            this.x = ops.variable(0, dx);
+            this.y = ops.variable(1, dy);
+        } else {
+            this.x = ops.constant(dx[0], tail(dx));
+            this.y = ops.constant(dy[0], tail(dy));
+        }
+    }
+
+    private static double[] tail(double[] d) {
+        final double[] tail = new double[d.length - 1];
+        System.arraycopy(d, 1, tail, 0, tail.length);
+        return tail;
+    }
+
+    @Test
+    public void testDivision() {
+        assertThat(x.div(y).mult(y), is(closeTo(x)));
+        assertThat(x.div(x), is(closeTo(ops.constant(1.0))));
+        assertThat(x.div(2.0), is(closeTo(x.mult(0.5))));
+    }
+
+    @Test
+    public void testExpAndLog() {
+        assertThat(x.log().exp(), is(closeTo(x)));
+        assertThat(y.exp().log(), is(closeTo(y)));
+        assertThat(x.add(y).exp(), is(closeTo(x.exp().mult(y.exp()))));
+        assertThat(x.mult(x).log(), is(closeTo(x.log().mult(2))));
+    }
+
+    @Test
+    public void testSqrt() {
+        assertThat(x.sqrt().mult(x.sqrt()), is(closeTo(x)));
+        assertThat(x.mult(x).sqrt(), is(closeTo(x)));
+    }
+
+    @Test
+    public void testRealPower() {
+        assertThat(x.pow(1.5), is(closeTo(x.log().mult(1.5).exp())));
+        assertThat(x.pow(-0.5), is(closeTo(x.sqrt().pow(-1))));
+        assertThat(y.pow(2.0), is(y.pow(2)));
+    }
+
+    @Test
+    public void testTan() {
+        assertThat(x.tan(), is(closeTo(x.sin().div(x.cos()))));
+        final TDNumber z = y.mult(0.5);
+        assertThat(z.tan(), is(closeTo(z.sin().div(z.cos()))));
+    }
+
+    @Test
+    public void testTanh() {
+        final TDNumber e = y.mult(2).exp();
+        assertThat(y.tanh(), is(closeTo(e.add(-1).div(e.add(1)))));
+    }
+
+    @Test
+    public void testAbs() {
+        assertThat(x.abs(), is(x));
+        assertThat(y.abs(), is(y.mult(-1)));
+    }
+
+    @Test
+    public void testAtan2() {
+        final TDNumber[] xs = { x, x.mult(-1), y, y.mult(-1) };
+        final TDNumber[] ys = { y, y.mult(-1), x, x.mult(-1) };
+        for (TDNumber a : xs)
+            for (TDNumber b : ys) {
+                final TDNumber phi = b.atan2(a);
+                assertEquals(FastMath.atan2(b.getValue(), a.getValue()),
+                        phi.getValue(), 1e-12);
+                assertThat(phi.sin().mult(a), is(closeTo(phi.cos().mult(b))));
+            }
+    }
+
+    @Test
+    public void testRegisterOperations() {
+        final TDRegister reg = new TDRegister(x.copy());
+        reg.exp();
+        assertThat(reg.get(), is(x.exp()));
+        reg.log();
+        reg.sqrt();
+        reg.tan();
+        reg.tanh();
+        assertThat(reg.get(), is(x.exp().log().sqrt().tan().tanh()));
+        reg.div(y);
+        reg.abs();
+        reg.atan2(x);
+        assertThat(reg.get(),
+                is(x.exp().log().sqrt().tan().tanh().div(y).abs().atan2(x)));
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import de.tuberlin.uebb.jdae.diff.partial.PDNumber;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TDOperationsRegistryTest {
+
+    @Test
+    public void testInstancesAreShared() {
+        final TDOperationsRegistry registry = new TDOperationsRegistry(
+                Long.MAX_VALUE);
+        final TDOperations ops = registry.get(3, 2);
+        assertThat(registry.get(3, 2), is(sameInstance(ops)));
+        assertThat(ops.smaller(), is(sameInstance(registry.get(2, 2))));
+        assertThat(registry.size(), is(4l));
+        assertThat(registry.stats().hitCount(), is(2l));
+        assertThat(registry.stats().missCount(), is(4l));
+    }
+
+    @Test
+    public void testConcurrentLookup() throws Exception {
+        final TDOperationsRegistry registry = new TDOperationsRegistry(
+                Long.MAX_VALUE);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<TDOperations>> results = Lists.newArrayList();
+            for (int i = 0; i < 16; ++i)
+                results.add(executor.submit(new Callable<TDOperations>() {
+                    @Override
+                    public TDOperations call() {
+                        return registry.get(4, 3);
+                    }
+                }));
+
+            final TDOperations ops = registry.get(4, 3);
+            for (Future<TDOperations> result : results)
+                assertThat(result.get(), is(sameInstance(ops)));
+            assertThat(registry.stats().loadCount(), is(5l));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        final TDOperationsRegistry registry = new TDOperationsRegistry(1);
+        final TDOperations ops = registry.get(2, 2);
+        assertTrue(registry.stats().evictionCount() > 0);
+        assertThat(registry.get(2, 2), is(not(sameInstance(ops))));
+    }
+
+    @Test
+    public void testDumpAndPreload() throws IOException {
+        final TDOperationsRegistry registry = new TDOperationsRegistry(
+                Long.MAX_VALUE);
+        registry.get(3, 2);
+        registry.get(1, 5);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(registry.dump(out), is(6));
+
+        final TDOperationsRegistry preloaded = new TDOperationsRegistry(
+                Long.MAX_VALUE);
+        assertThat(preloaded.preload(new ByteArrayInputStream(out
+                .toByteArray())), is(6));
+        assertThat(preloaded.stats().loadCount(), is(0l));
+
+        final TDOperations compiled = registry.get(3, 2);
+        final TDOperations loaded = preloaded.get(3, 2);
+        assertThat(loaded.smaller(), is(sameInstance(preloaded.get(2, 2))));
+
+        final PDNumber[] a = number(compiled, 1.0), b = number(compiled, 2.0);
+        final PDNumber[] expected = new PDNumber[4];
+        final PDNumber[] actual = new PDNumber[4];
+        compiled.mult(a, b, expected);
+        loaded.mult(a, b, actual);
+        assertThat(actual, is(expected));
+
+        final double[] f = new double[] { 1.0, -2.0, 3.0, -4.0, 5.0 };
+        compiled.compose(f, a, expected);
+        loaded.compose(f, a, actual);
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    public void testCompositionTablesAreLazy() throws IOException {
+        final TDOperationsRegistry registry = new TDOperationsRegistry(
+                Long.MAX_VALUE);
+        final TDOperations ops = registry.get(3, 2);
+        final int weight = ops.weight();
+
+        final PDNumber[] a = number(ops, 1.0);
+        final PDNumber[] target = new PDNumber[4];
+        ops.sin(a, target);
+        ops.exp(a, target);
+        ops.pow(2.5, a, target);
+        assertThat(ops.weight(), is(weight));
+
+        ops.compose(new double[] { 1.0, -2.0, 3.0, -4.0, 5.0 }, a, target);
+        assertTrue(ops.weight() > weight);
+
+        /* built tables are dumped as well */
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        registry.dump(out);
+        final TDOperationsRegistry preloaded = new TDOperationsRegistry(
+                Long.MAX_VALUE);
+        preloaded.preload(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(preloaded.get(3, 2).weight(), is(ops.weight()));
+        assertThat(preloaded.get(2, 2).weight(), is(registry.get(2, 2)
+                .weight()));
+    }
+
+    @Test
+    public void testCompositionTablesAreWeighed() {
+        final TDOperations unbounded = new TDOperationsRegistry(
+                Long.MAX_VALUE).get(0, 2);
+        final int weight = unbounded.weight();
+        final double[] f = new double[] { 1.0, -2.0 };
+        unbounded.compose(f, number(unbounded, 1.0), new PDNumber[1]);
+        assertTrue(unbounded.weight() > weight);
+
+        /* the instance fits until its composition tables are built */
+        final TDOperationsRegistry registry = new TDOperationsRegistry(weight);
+        final TDOperations ops = registry.get(0, 2);
+        assertThat(registry.stats().evictionCount(), is(0l));
+
+        ops.compose(f, number(ops, 1.0), new PDNumber[1]);
+        assertThat(registry.stats().evictionCount(), is(1l));
+        assertThat(registry.get(0, 2), is(not(sameInstance(ops))));
+    }
+
+    @Test
+    public void testHighOrderElementaryFunctions() {
+        final TDOperationsRegistry registry = new TDOperationsRegistry(
+                Long.MAX_VALUE);
+        final TDOperations ops = registry.get(12, 3);
+        final int weight = ops.weight();
+
+        final double[] dx = new double[13];
+        for (int i = 0; i < dx.length; ++i)
+            dx[i] = 0.5 / (1 + i);
+        final TDNumber x = ops.variable(1, dx);
+
+        final TDNumber s = x.sin(), c = x.cos();
+        assertThat(s.mult(s).add(c.mult(c)),
+                is(TDNumberTest.closeTo(ops.constant(1.0))));
+        assertThat(x.exp().log(), is(TDNumberTest.closeTo(x)));
+        assertThat(x.pow(1.5), is(TDNumberTest.closeTo(x.log().mult(1.5)
+                .exp())));
+        assertThat(ops.weight(), is(weight));
+    }
+
+    private static PDNumber[] number(final TDOperations ops, double seed) {
+        final PDNumber[] values = new PDNumber[ops.order + 1];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = new PDNumber(ops.subOps.params);
+            for (int j = 0; j < values[i].values.length; ++j)
+                values[i].values[j] = seed / (1 + i + j);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class TDRegisterFileTest {
+
+    final TDOperations ops = TDOperations.getInstance(2, 3);
+    final TDNumber x = ops.variable(0, 0.5, 1.0, -2.0);
+    final TDNumber y = ops.variable(1, 1.5, 0.25, 3.0);
+    final TDNumber z = ops.variable(2, 0.75, -0.5, 1.0);
+
+    /* (sin(x) * y + z)^2 / exp(y) - sqrt(log(z + 2) * 3) + cos(x) */
+    private TDNumber expected(final TDNumber x, final TDNumber y,
+            final TDNumber z) {
+        return x.sin().mult(y).add(z).pow(2).div(y.exp())
+                .subtract(z.add(2.0).log().mult(3.0).sqrt()).add(x.cos());
+    }
+
+    private TDNumber program(final TDRegisterFile r, final TDNumber x,
+            final TDNumber y, final TDNumber z) {
+        r.load(0, x);
+        r.load(1, y);
+        r.load(2, z);
+        r.sin(3, 0);
+        r.fma(3, 3, 1, 2);
+        r.pow(3, 3, 2);
+        r.exp(4, 1);
+        r.div(3, 3, 4);
+        r.addConstant(4, 2, 2.0);
+        r.log(4, 4);
+        r.scale(4, 4, 3.0);
+        r.sqrt(4, 4);
+        r.scale(4, 4, -1.0);
+        r.add(3, 3, 4);
+        r.cos(0, 0);
+        r.add(0, 3, 0);
+        return r.get(0);
+    }
+
+    @Test
+    public void testInstructionsMatchNumbers() {
+        final TDRegisterFile r = new TDRegisterFile(ops, 1);
+        final TDNumber actual = program(r, x, y, z);
+        final TDNumber expected = expected(x, y, z);
+
+        for (int i = 0; i <= ops.order; ++i)
+            for (int j = 0; j < ops.width; ++j)
+                assertEquals(expected.values[i].values[j],
+                        actual.values[i].values[j], 1e-12);
+    }
+
+    @Test
+    public void testConstantsAndStore() {
+        final TDRegisterFile r = new TDRegisterFile(ops);
+        r.constant(0, 2.0);
+        r.load(1, x);
+        r.mult(1, 1, 0);
+        assertThat(r.store(1, ops.constant(0.0)), is(x.mult(2.0)));
+    }
+
+    @Test
+    public void testSteadyStateDoesNotGrow() {
+        final TDRegisterFile r = new TDRegisterFile(ops, 1);
+        program(r, x, y, z);
+        final int size = r.size();
+        for (int i = 0; i < 10; ++i) {
+            program(r, x, y, z);
+            assertThat(r.size(), is(size));
+        }
+    }
+
+    @Test
+    public void testGradientOnTape() {
+        final TDOperations forward = TDOperations.getInstance(0, 3);
+        final TDOperations values = TDOperations.getInstance(0, 0);
+        final double[] point = { 0.7, 1.3, 2.1 };
+
+        final TDNumber expected = expected(forward.variable(0, point[0]),
+                forward.variable(1, point[1]), forward.variable(2, point[2]));
+
+        final TDTape tape = new TDTape(1);
+        final TDNumber[] args = new TDNumber[3];
+        for (int i = 0; i < args.length; ++i) {
+            args[i] = values.constant(point[i]);
+            tape.seed(args[i], i);
+        }
+        final TDNumber actual = program(new TDRegisterFile(values), args[0],
+                args[1], args[2]);
+        assertEquals(expected.getValue(), actual.getValue(), 1e-14);
+
+        final double[] gradient = new double[3];
+        tape.gradient(actual, 0, gradient);
+        for (int i = 0; i < gradient.length; ++i)
+            assertEquals(expected.der(0, i), gradient[i], 1e-12);
+    }
+}
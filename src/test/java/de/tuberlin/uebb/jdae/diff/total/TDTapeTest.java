@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TDTapeTest {
+
+    final TDOperations forward = TDOperations.getInstance(0, 3);
+    final TDOperations values = TDOperations.getInstance(0, 0);
+    final double[] point = { 0.7, -1.3, 2.1 };
+
+    private TDNumber f(final TDNumber x, final TDNumber y, final TDNumber z) {
+        final TDRegister reg = new TDRegister(x.mult(y).add(2.0));
+        reg.mult(z.sin());
+        reg.mult(-3);
+        reg.add(x.exp().div(z));
+        reg.pow(2);
+        reg.atan2(y.tanh());
+        return reg.unsafe().add(x.sqrt().mult(y.abs()).log())
+                .subtract(z.cos().mult(x).tan());
+    }
+
+    @Test
+    public void testGradientMatchesForwardMode() {
+        final TDNumber expected = f(forward.variable(0, point[0]),
+                forward.variable(1, point[1]), forward.variable(2, point[2]));
+
+        final TDTape tape = new TDTape(1);
+        final TDNumber[] args = new TDNumber[3];
+        for (int i = 0; i < args.length; ++i) {
+            args[i] = values.constant(point[i]);
+            tape.seed(args[i], i);
+        }
+        final TDNumber actual = f(args[0], args[1], args[2]);
+        assertEquals(expected.getValue(), actual.getValue(), 1e-14);
+
+        final double[] gradient = new double[3];
+        tape.gradient(actual, 0, gradient);
+        for (int i = 0; i < gradient.length; ++i)
+            assertEquals(expected.der(0, i), gradient[i], 1e-12);
+    }
+
+    @Test
+    public void testSegmentsAndConstants() {
+        final TDTape tape = new TDTape();
+        final TDNumber x = values.constant(2.0);
+        tape.seed(x, 0);
+        final TDNumber first = x.mult(x);
+
+        final int segment = tape.size();
+        final TDNumber y = values.constant(3.0);
+        tape.seed(y, 1);
+        final TDNumber second = y.mult(values.constant(4.0)).add(1);
+
+        final double[] gradient = new double[2];
+        tape.gradient(second, segment, gradient);
+        assertArrayEquals(new double[] { 0.0, 4.0 }, gradient, 0.0);
+
+        tape.gradient(first, 0, gradient);
+        assertArrayEquals(new double[] { 4.0, 4.0 }, gradient, 0.0);
+
+        tape.gradient(values.constant(1.0).sin(), 0, gradient);
+        assertArrayEquals(new double[] { 4.0, 4.0 }, gradient, 0.0);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.diff.total;
+
+import java.util.Collection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import static de.tuberlin.uebb.jdae.diff.total.TDNumberTest.closeTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Checks the recurrences of {@link TaylorOperations} against the table-driven
+ * {@link TDOperations}.
+ * 
+ * @author choeger
+ * 
+ */
+@RunWith(Parameterized.class)
+public class TaylorNumberTest {
+
+    @Parameters(name = "Taylor coefficients on: {0}")
+    public static Collection<Object[]> data() {
+        return TDNumberTest.data();
+    }
+
+    final TDOperations ops;
+    final TDNumber x;
+    final TDNumber y;
+    final TaylorNumber tx;
+    final TaylorNumber ty;
+
+    public TaylorNumberTest(TDOperations ops) {
+        this.ops = ops;
+        final double[] dx = new double[ops.order + 1];
+        final double[] dy = new double[ops.order + 1];
+        for (int i = 0; i <= ops.order; ++i) {
+            dx[i] = 0.7 / (1 + i);
+            dy[i] = -1.3 + 0.2 * i;
+        }
+        if (ops.subOps.params > 1) {
+            this.x = ops.variable(0, dx);
+            this.y = ops.variable(1, dy);
+        } else {
+            this.x = ops.variable(0, 0, dx);
+            this.y = ops.variable(0, 0, dy);
+        }
+        this.tx = new TaylorNumber(x);
+        this.ty = new TaylorNumber(y);
+    }
+
+    @Test
+    public void testConversion() {
+        assertThat(tx.toTDNumber(), is(closeTo(x)));
+        for (int i = 0; i <= ops.order; ++i) {
+            assertEquals(x.der(i), tx.der(i), 1e-12);
+            assertEquals(x.der(i) / tx.ops.factorial(i), tx.coefficient(i),
+                    1e-12);
+        }
+    }
+
+    @Test
+    public void testVariables() {
+        final TaylorOperations tops = tx.ops;
+        if (ops.subOps.params > 1) {
+            final double[] d = { 1.0, 2.0, 3.0, 4.0, 5.0, 6.0 };
+            assertThat(tops.variable(1, d).toTDNumber(),
+                    is(closeTo(ops.variable(1, d))));
+            assertThat(tops.variable(0, 1, d).toTDNumber(),
+                    is(closeTo(ops.variable(0, 1, d))));
+        }
+        assertThat(tops.constantNumber(2.0, 1.0, 0.5).toTDNumber(),
+                is(closeTo(ops.constant(2.0, 1.0, 0.5))));
+    }
+
+    @Test
+    public void testArithmetic() {
+        assertThat(tx.add(ty).toTDNumber(), is(closeTo(x.add(y))));
+        assertThat(tx.mult(ty).toTDNumber(), is(closeTo(x.mult(y))));
+        assertThat(tx.mult(3).toTDNumber(), is(closeTo(x.mult(3))));
+        assertThat(tx.div(ty).toTDNumber(), is(closeTo(x.div(y))));
+        assertThat(tx.subtract(ty).add(1.0).toTDNumber(),
+                is(closeTo(x.subtract(y).add(1.0))));
+    }
+
+    @Test
+    public void testPowers() {
+        for (int n = -2; n <= 5; ++n)
+            assertThat(ty.pow(n).toTDNumber(), is(closeTo(y.pow(n))));
+        assertThat(tx.pow(0.5).toTDNumber(), is(closeTo(x.sqrt())));
+        assertThat(tx.pow(-1.5).mult(tx.pow(2.5)).toTDNumber(),
+                is(closeTo(x)));
+    }
+
+    @Test
+    public void testElementaryFunctions() {
+        assertThat(tx.sin().toTDNumber(), is(closeTo(x.sin())));
+        assertThat(ty.cos().toTDNumber(), is(closeTo(y.cos())));
+        assertThat(ty.exp().toTDNumber(), is(closeTo(y.exp())));
+        assertThat(tx.log().toTDNumber(), is(closeTo(x.log())));
+        assertThat(tx.sqrt().toTDNumber(), is(closeTo(x.sqrt())));
+        assertThat(tx.tan().toTDNumber(), is(closeTo(x.tan())));
+        assertThat(ty.tanh().toTDNumber(), is(closeTo(y.tanh())));
+        assertThat(ty.abs().toTDNumber(), is(closeTo(y.abs())));
+    }
+
+    @Test
+    public void testAtan2() {
+        final TaylorNumber[] xs = { tx, tx.mult(-1), ty, ty.mult(-1) };
+        final TaylorNumber[] ys = { ty, ty.mult(-1), tx, tx.mult(-1) };
+        for (TaylorNumber a : xs)
+            for (TaylorNumber b : ys)
+                assertThat(b.atan2(a).toTDNumber(), is(closeTo(b.toTDNumber()
+                        .atan2(a.toTDNumber()))));
+    }
+
+    @Test
+    public void testTemporariesAreReusedPerThread() throws Exception {
+        final TaylorOperations taylor = tx.ops;
+        final double[][] mine = taylor.operands();
+        assertThat(taylor.operands(), is(sameInstance(mine)));
+
+        final double[][][] theirs = new double[1][][];
+        final Thread other = new Thread() {
+            @Override
+            public void run() {
+                theirs[0] = taylor.operands();
+            }
+        };
+        other.start();
+        other.join();
+        assertThat(theirs[0], is(not(sameInstance(mine))));
+
+        /* stale temporaries must not leak into the next evaluation */
+        final TDNumber sin = x.sin();
+        final TDNumber pow = y.pow(-3);
+        final TDNumber atan2 = y.atan2(x);
+        ty.pow(5).tan();
+        x.atan2(y).div(y);
+        assertThat(x.sin(), is(closeTo(sin)));
+        assertThat(y.pow(-3), is(closeTo(pow)));
+        assertThat(y.atan2(x), is(closeTo(atan2)));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.llmsl;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BlockScheduleTest {
+
+    final GlobalVariable a = new GlobalVariable("a", 1, 0);
+    final GlobalVariable b = new GlobalVariable("b", 2, 0);
+    final GlobalVariable c = new GlobalVariable("c", 3, 0);
+    final GlobalVariable x = new GlobalVariable("x", 4, 0);
+
+    private static Set<GlobalVariable> of(GlobalVariable... vars) {
+        return ImmutableSet.copyOf(vars);
+    }
+
+    @Test
+    public void testIndependentBlocksShareALevel() {
+        final List<Set<GlobalVariable>> writes = ImmutableList.of(of(a),
+                of(b), of(c));
+        final List<Set<GlobalVariable>> reads = ImmutableList.of(of(x),
+                of(a), of(x));
+        final BlockSchedule schedule = new BlockSchedule(writes, reads);
+
+        assertEquals(2, schedule.levels.length);
+        assertArrayEquals(new int[] { 0, 2 }, schedule.levels[0]);
+        assertArrayEquals(new int[] { 1 }, schedule.levels[1]);
+        assertEquals(2, schedule.width());
+    }
+
+    @Test
+    public void testWritesWaitForEarlierReads() {
+        /* the second block overwrites what the first one reads */
+        final List<Set<GlobalVariable>> writes = ImmutableList.of(of(a),
+                of(x), of(b));
+        final List<Set<GlobalVariable>> reads = ImmutableList.of(of(x),
+                of(c), of(c));
+        final BlockSchedule schedule = new BlockSchedule(writes, reads);
+
+        assertEquals(2, schedule.levels.length);
+        assertArrayEquals(new int[] { 0, 2 }, schedule.levels[0]);
+        assertArrayEquals(new int[] { 1 }, schedule.levels[1]);
+    }
+
+    @Test
+    public void testRangeSkipsOtherBlocks() {
+        final List<Set<GlobalVariable>> writes = ImmutableList.of(of(a),
+                of(b), of(c), of(x));
+        final List<Set<GlobalVariable>> reads = ImmutableList.of(
+                of(), of(a), of(), of(b));
+        final BlockSchedule schedule = new BlockSchedule(writes, reads);
+
+        final List<Integer> order = Lists.newArrayList();
+        final IBlock[] blocks = new IBlock[writes.size()];
+        for (int i = 0; i < blocks.length; i++)
+            blocks[i] = recording(i, order);
+
+        schedule.exec(blocks, 1, 4, null, 1);
+        assertEquals(ImmutableList.of(2, 1, 3), order);
+    }
+
+    private static IBlock recording(final int index, final List<Integer> order) {
+        return new IBlock() {
+            @Override
+            public void exec() {
+                order.add(index);
+            }
+
+            @Override
+            public Iterable<GlobalVariable> variables() {
+                return ImmutableList.of();
+            }
+
+            @Override
+            public void resetHistory() {
+            }
+        };
+    }
+}
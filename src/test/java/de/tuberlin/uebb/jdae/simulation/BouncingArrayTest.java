@@ -19,15 +19,22 @@
 
 package de.tuberlin.uebb.jdae.simulation;
 
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+
+import java.util.Arrays;
+
 import org.junit.Test;
 
 import de.tuberlin.uebb.jdae.examples.BouncingBallArray;
+import de.tuberlin.uebb.jdae.hlmsl.Unknown;
+import de.tuberlin.uebb.jdae.llmsl.BlockStatistics;
 import de.tuberlin.uebb.jdae.llmsl.ExecutableDAE;
 import de.tuberlin.uebb.jdae.transformation.Reduction;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.greaterThan;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
@@ -65,6 +72,63 @@ public class BouncingArrayTest {
 
     }
 
+    @Test
+    public void testIndependentBlocks() {
+        /* the balls do not depend on each other */
+        assertThat(dae.schedule().width(), is(greaterThan(2)));
+
+        final SimulationOptions options = new SimulationOptions(0, 1, 1e-6,
+                1e-3, 1e-3, InlineIntegratorSelection.INLINE_FORWARD_EULER,
+                new TObjectDoubleHashMap<Unknown>());
+        options.parallelGrain = 1;
+
+        final ExecutableDAE dae = runtime.causalise(model, options);
+        dae.initialize();
+
+        final double[] y = new double[dae.getDimension()];
+        for (int i = 0; i < y.length; i++)
+            y[i] = 1.0 + i;
+        final double[] expected = new double[y.length];
+        final double[] actual = new double[y.length];
+
+        dae.computeDerivatives(0.5, y, expected);
+        options.parallelBlocks = true;
+        dae.computeDerivatives(0.5, y, actual);
+
+        assertArrayEquals(expected, actual, 0.0);
+
+        /* the workers are started again after close() */
+        dae.close();
+        Arrays.fill(actual, 0.0);
+        dae.computeDerivatives(0.5, y, actual);
+        dae.close();
+
+        assertArrayEquals(expected, actual, 0.0);
+    }
+
+    @Test
+    public void testPartialEvaluationsAreMeasured() {
+        final SimulationOptions options = new SimulationOptions(0, 1, 1e-6,
+                1e-3, 1e-3, InlineIntegratorSelection.INLINE_FORWARD_EULER,
+                new TObjectDoubleHashMap<Unknown>());
+        options.statistics = true;
+
+        final ExecutableDAE dae = runtime.causalise(model, options);
+        dae.initialize();
+        final long before = execs(dae);
+
+        /* as the event guards do */
+        dae.computeDerivatives(1, dae.blocks.length);
+        assertEquals(before + dae.blocks.length - 1, execs(dae));
+    }
+
+    private static long execs(final ExecutableDAE dae) {
+        long execs = 0;
+        for (BlockStatistics block : dae.blockStatistics())
+            execs += block.execs;
+        return execs;
+    }
+
     @Test
     public void testSimulation() {
         dae.initialize();
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.simulation;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import de.tuberlin.uebb.jdae.hlmsl.Equation;
+import de.tuberlin.uebb.jdae.hlmsl.Unknown;
+import de.tuberlin.uebb.jdae.hlmsl.specials.ConstantEquation;
+import de.tuberlin.uebb.jdae.hlmsl.specials.ConstantLinear;
+import de.tuberlin.uebb.jdae.llmsl.Ensemble;
+import de.tuberlin.uebb.jdae.llmsl.ExecutableDAE;
+import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.llmsl.events.ContinuousEvent;
+import de.tuberlin.uebb.jdae.transformation.Reduction;
+
+import static org.junit.Assert.assertEquals;
+
+public class EnsembleSimulationTest {
+
+    private static final double STEP = 1e-3;
+    private static final int LANES = 4;
+
+    /*
+     * der(x) = x;
+     */
+    final SimulationRuntime runtime = new DefaultSimulationRuntime();
+    final Unknown x = new Unknown("x", 1, 0);
+    final Unknown dx = x.der();
+    final Equation eq = new ConstantLinear(0, 0, new double[] { 1, -1 },
+            ImmutableList.of(x, dx));
+
+    final Reduction reduction = runtime.reduce(ImmutableList.of(eq));
+
+    final ExecutableDAE dae = runtime.causalise(
+            reduction,
+            ImmutableList.of(new ConstantEquation(x, 1.0)
+                    .bind(reduction.ctxt)),
+            ImmutableMap.<GlobalVariable, Double> of(),
+            new ContinuousEvent[0],
+            SimulationOptions.DEFAULT.withStopTime(1.0).withStepSize(STEP));
+
+    @Test
+    public void testLanesAdvanceIndependently() {
+        dae.initialize();
+        final GlobalVariable gx = reduction.ctxt.get(x);
+
+        final Ensemble ensemble = dae.ensemble(LANES);
+        for (int l = 0; l < LANES; ++l)
+            ensemble.set(l, gx, 1.0 + l);
+
+        dae.integrate(ensemble);
+
+        /* each lane matches a separate forward Euler run */
+        for (int l = 0; l < LANES; ++l) {
+            dae.initialize();
+            dae.set(gx, 1.0 + l);
+            dae.integrate(new ResultStorage(dae));
+            assertEquals(dae.load(gx), ensemble.load(l, gx), 0.0);
+            assertEquals(dae.time(), ensemble.lanes[l][0][0], 0.0);
+        }
+        assertEquals(Math.E, ensemble.load(0, gx), 1e-2);
+    }
+
+    @Test
+    public void testRestoresData() {
+        dae.initialize();
+        final GlobalVariable gx = reduction.ctxt.get(x);
+        final Ensemble ensemble = dae.ensemble(LANES);
+        ensemble.set(1, gx, 5.0);
+        dae.computeDerivatives(ensemble);
+
+        assertEquals(5.0, ensemble.load(1, gx.der()), 0.0);
+        /* the data of the DAE itself is untouched */
+        assertEquals(1.0, dae.load(gx), 0.0);
+    }
+}
@@ -18,6 +18,8 @@
  */
 package de.tuberlin.uebb.jdae.simulation;
 
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+
 import org.apache.commons.math3.analysis.MultivariateMatrixFunction;
 import org.apache.commons.math3.exception.ConvergenceException;
 import org.junit.Test;
@@ -28,7 +30,9 @@ import de.tuberlin.uebb.jdae.examples.Pendulum;
 import de.tuberlin.uebb.jdae.examples.Pendulum.LengthBlockEquation;
 import de.tuberlin.uebb.jdae.examples.Pendulum.XAccelBlockEquation;
 import de.tuberlin.uebb.jdae.examples.Pendulum.YAccelBlockEquation;
+import de.tuberlin.uebb.jdae.hlmsl.Unknown;
 import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.llmsl.BlockStatistics;
 import de.tuberlin.uebb.jdae.llmsl.ExecutableDAE;
 import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
 import de.tuberlin.uebb.jdae.llmsl.events.ContinuousEvent;
@@ -37,7 +41,9 @@ import de.tuberlin.uebb.jdae.transformation.Reduction;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
@@ -184,6 +190,60 @@ public class PendulumTest {
 
     }
 
+    @Test
+    public void testSharedExpressionsInitialization() {
+        final SimulationOptions options = new SimulationOptions(0, 1, 1e-6,
+                1e-3, 1e-3, InlineIntegratorSelection.INLINE_FORWARD_EULER,
+                new TObjectDoubleHashMap<Unknown>());
+        options.expressionSharing = true;
+
+        final ExecutableDAE shared = runtime.causalise(reduction,
+                ImmutableList.<GlobalEquation> of(initial_y),
+                model.initials(reduction.ctxt), events, options);
+
+        dae.data[1][0] = 0.1;
+        shared.data[1][0] = 0.1;
+        dae.initialize();
+        shared.initialize();
+
+        for (int i = 0; i < dae.data.length; ++i)
+            assertArrayEquals(dae.data[i], shared.data[i], 1e-12);
+    }
+
+    @Test
+    public void testBlockStatistics() {
+        final SimulationOptions options = new SimulationOptions(0, 1, 1e-6,
+                1e-3, 1e-3, InlineIntegratorSelection.INLINE_FORWARD_EULER,
+                new TObjectDoubleHashMap<Unknown>());
+        options.statistics = true;
+
+        final ExecutableDAE measured = runtime.causalise(reduction,
+                ImmutableList.<GlobalEquation> of(initial_y),
+                model.initials(reduction.ctxt), events, options);
+        measured.data[1][0] = 0.1;
+
+        final SimulationStatistics statistics = runtime.simulate(measured);
+        final BlockStatistics total = statistics.total();
+
+        assertThat(statistics.blocks.size(), is(measured.blocks.length));
+        assertThat(statistics.steps, is(1000));
+        assertEquals((long) statistics.evaluations * measured.blocks.length,
+                total.execs);
+        assertThat(total.iterations, is(greaterThan(0L)));
+        assertThat(total.jacobians, is(greaterThan(0L)));
+        assertThat(total.factorizations, is(greaterThan(0L)));
+        assertThat(statistics.slowest().nanos, is(greaterThan(0L)));
+
+        final long median = total.percentile(0.5);
+        final long max = total.percentile(1.0);
+        assertThat(max, is(greaterThanOrEqualTo(median)));
+        /* both bounds close a bucket that holds executions */
+        assertThat(total.histogram[Long.numberOfTrailingZeros(median) - 1],
+                is(greaterThan(0L)));
+        assertThat(total.histogram[Long.numberOfTrailingZeros(max) - 1],
+                is(greaterThan(0L)));
+    }
+
     @Test
     public void testLongSimulationVariableStep() {
 
@@ -228,7 +288,7 @@ public class PendulumTest {
         dae.data[1][0] = 0.1;
         dae.initialize();
 
-        Block.evals = 0;
+        Block.evals.set(0);
         dae.time = 0;
         long start = System.currentTimeMillis();
         runtime.simulateFixedStep(dae, SIM_TEST_STOP_TIME,
@@ -255,7 +315,7 @@ public class PendulumTest {
         dae.data[1][0] = 0.1;
         dae.initialize();
 
-        Block.evals = 0;
+        Block.evals.set(0);
         dae.time = 0;
         long start = System.currentTimeMillis();
         runtime.simulateInlineFixedStep(dae, SIM_TEST_STOP_TIME,
@@ -276,7 +336,7 @@ public class PendulumTest {
         dae.data[1][0] = 0.1;
         dae.initialize();
 
-        Block.evals = 0;
+        Block.evals.set(0);
         dae.time = 0;
         long start = System.currentTimeMillis();
         runtime.simulateInlineFixedStep(dae, SIM_TEST_STOP_TIME,
@@ -297,7 +357,7 @@ public class PendulumTest {
         dae.data[1][0] = 0.1;
         dae.initialize();
 
-        Block.evals = 0;
+        Block.evals.set(0);
         dae.time = 0;
         long start = System.currentTimeMillis();
         runtime.simulateFixedStep(dae, SIM_TEST_STOP_TIME,
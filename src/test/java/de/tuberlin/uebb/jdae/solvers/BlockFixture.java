@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import de.tuberlin.uebb.jdae.diff.total.TDNumber;
+import de.tuberlin.uebb.jdae.hlmsl.Unknown;
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.llmsl.BlockEquation;
+import de.tuberlin.uebb.jdae.llmsl.BlockVariable;
+import de.tuberlin.uebb.jdae.llmsl.DataLayout;
+import de.tuberlin.uebb.jdae.llmsl.ExecutionContext;
+import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.simulation.InlineIntegratorSelection;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * The block most solver tests run on: a loop of n equations x_i^3 + x_i *
+ * sin(x_{i+1}) - p = 0, cyclic in i, with the right-hand side p a variable
+ * outside of the block. A test builds the block with the option under test
+ * set and compares it with a block of the default options.
+ * 
+ * @author choeger
+ * 
+ */
+final class BlockFixture {
+
+    final int n;
+    final List<GlobalVariable> vars = Lists.newArrayList();
+    final GlobalVariable p;
+    /* x_i and p up to their second derivatives */
+    final DataLayout layout;
+
+    BlockFixture(int n) {
+        this.n = n;
+        this.p = new GlobalVariable("p", n + 1, 0);
+        final List<GlobalVariable> highest = Lists.newArrayList();
+        for (int i = 1; i <= n; ++i) {
+            vars.add(new GlobalVariable("x" + i, i, 0));
+            highest.add(new GlobalVariable("x" + i, i, 2));
+        }
+        highest.add(p.der(2));
+        this.layout = new DataLayout(n + 1, highest);
+    }
+
+    static SimulationOptions options() {
+        return new SimulationOptions(0, 1, 1e-6, 1e-3, 1e-3,
+                InlineIntegratorSelection.INLINE_FORWARD_EULER,
+                new TObjectDoubleHashMap<Unknown>());
+    }
+
+    /* x^3 + x * sin(y) - p = 0 */
+    GlobalEquation loop(final GlobalVariable x, final GlobalVariable y) {
+        return new GlobalEquation() {
+
+            @Override
+            public List<GlobalVariable> need() {
+                return ImmutableList.of(x, y, p);
+            }
+
+            @Override
+            public BlockEquation bind(
+                    final Map<GlobalVariable, BlockVariable> blockCtxt) {
+                return new BlockEquation() {
+                    @Override
+                    public TDNumber exec(ExecutionContext m) {
+                        final TDNumber bx = blockCtxt.get(x).load(m);
+                        final TDNumber by = blockCtxt.get(y).load(m);
+                        return bx.pow(3).add(bx.mult(by.sin()))
+                                .subtract(blockCtxt.get(p).load(m));
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return the loop equations, derived derOrder times
+     */
+    Set<DerivedEquation> equations(int derOrder) {
+        final Set<DerivedEquation> equations = Sets.newLinkedHashSet();
+        for (int i = 0; i < n; ++i)
+            equations.add(loop(vars.get(i), vars.get((i + 1) % n)).der(
+                    derOrder));
+        return equations;
+    }
+
+    /**
+     * @return every x_i with its derivatives up to derOrder
+     */
+    Set<GlobalVariable> iteratees(int derOrder) {
+        final Set<GlobalVariable> iteratees = Sets.newHashSet();
+        for (GlobalVariable x : vars)
+            for (int d = 0; d <= derOrder; ++d)
+                iteratees.add(x.der(d));
+        return iteratees;
+    }
+
+    Block block(final double[][] data, int derOrder,
+            final SimulationOptions options) {
+        return block(data, derOrder, options, equations(derOrder));
+    }
+
+    /**
+     * @return a block of other equations on the same iteratees
+     */
+    Block block(final double[][] data, int derOrder,
+            final SimulationOptions options,
+            final Set<DerivedEquation> equations) {
+        return new Block(data, layout, iteratees(derOrder), equations,
+                options);
+    }
+
+    /**
+     * @return x_i = 1 + 0.3 sin(i) and p = 2
+     */
+    double[][] data() {
+        final double[][] data = layout.alloc();
+        for (int i = 1; i <= n; ++i)
+            data[i][0] = 1.0 + 0.3 * Math.sin(i);
+        data[n + 1][0] = 2.0;
+        return data;
+    }
+
+    /**
+     * Assert that both blocks (of the same iteratees) compute the same
+     * residuals and, up to the given tolerance, the same Jacobian at some
+     * point other than the data.
+     */
+    void assertSameLinearization(final Block expected, final Block actual,
+            int derOrder, double tolerance) {
+        final int size = n * (derOrder + 1);
+        final double[] point = new double[size];
+        for (int i = 0; i < size; ++i)
+            point[i] = 0.5 + 0.1 * i;
+
+        assertArrayEquals(expected.value(point), actual.value(point), 1e-14);
+
+        final double[][] jacobian = expected.jacobian().value(point);
+        final double[][] other = actual.jacobian().value(point);
+        for (int i = 0; i < size; ++i)
+            assertArrayEquals(jacobian[i], other[i], tolerance);
+    }
+
+    /**
+     * Assert that both data hold the same x_i and derivatives.
+     */
+    void assertSameSolution(final double[][] expected,
+            final double[][] actual, double tolerance) {
+        for (int i = 1; i <= n; ++i)
+            assertArrayEquals(expected[i], actual[i], tolerance);
+    }
+}
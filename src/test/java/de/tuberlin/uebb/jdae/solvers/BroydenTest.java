@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import org.junit.Test;
+
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that Broyden's method finds the same solutions of a slowly varying
+ * loop as full Newton with far fewer Jacobians.
+ */
+public final class BroydenTest {
+
+    static final int N = 8;
+
+    final BlockFixture fixture = new BlockFixture(N);
+
+    private Block block(final double[][] data, boolean broyden, boolean bad) {
+        final SimulationOptions options = BlockFixture.options();
+        options.broyden = broyden;
+        options.badBroyden = bad;
+        return fixture.block(data, 0, options);
+    }
+
+    private void assertSameSolutions(boolean bad) {
+        final double[][] full = fixture.data(), quasi = fixture.data();
+        final Block fullBlock = block(full, false, false);
+        final Block quasiBlock = block(quasi, true, bad);
+
+        for (int k = 0; k < 50; ++k) {
+            full[N + 1][0] = quasi[N + 1][0] = 2.0 + 0.01 * k;
+            fullBlock.exec();
+            quasiBlock.exec();
+
+            for (int i = 1; i <= N; ++i)
+                assertEquals(full[i][0], quasi[i][0], 1e-8);
+        }
+
+        assertTrue(4 * quasiBlock.factorizations() < fullBlock
+                .factorizations());
+    }
+
+    @Test
+    public void testGoodBroyden() {
+        assertSameSolutions(false);
+    }
+
+    @Test
+    public void testBadBroyden() {
+        assertSameSolutions(true);
+    }
+
+    @Test
+    public void testRestartsFarAway() {
+        final double[][] data = fixture.data();
+        final Block block = block(data, true, false);
+        block.exec();
+
+        data[N + 1][0] = 40.0;
+        block.exec();
+
+        for (int i = 1; i <= N; ++i) {
+            final double x = data[i][0], y = data[i % N + 1][0];
+            assertEquals(40.0, x * x * x + x * Math.sin(y), 1e-7);
+        }
+
+        /* the memoized residuals are recomputed with their derivatives */
+        final double[] point = new double[N];
+        for (int i = 0; i < N; ++i)
+            point[i] = data[i + 1][0];
+        assertEquals(3 * data[1][0] * data[1][0] + Math.sin(data[2][0]),
+                block.jacobian().value(point)[0][0], 1e-8);
+    }
+}
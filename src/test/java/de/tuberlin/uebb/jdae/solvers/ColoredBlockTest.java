@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+import de.tuberlin.uebb.jdae.diff.total.TDNumber;
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.llmsl.BlockEquation;
+import de.tuberlin.uebb.jdae.llmsl.BlockIteratee;
+import de.tuberlin.uebb.jdae.llmsl.BlockVariable;
+import de.tuberlin.uebb.jdae.llmsl.ExecutionContext;
+import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that blocks with compressed (colored) seeds compute the same
+ * Jacobians and solutions as blocks with one direction per iteratee.
+ */
+public final class ColoredBlockTest {
+
+    static final int N = 12;
+
+    final BlockFixture fixture = new BlockFixture(N);
+
+    /* needs x only, but depends on y as well */
+    private GlobalEquation hidden(final GlobalVariable x, final GlobalVariable y) {
+        return new GlobalEquation() {
+
+            @Override
+            public List<GlobalVariable> need() {
+                return ImmutableList.of(x);
+            }
+
+            @Override
+            public BlockEquation bind(
+                    final Map<GlobalVariable, BlockVariable> blockCtxt) {
+                final BlockVariable by = new BlockIteratee(y, y.index - 1);
+                return new BlockEquation() {
+                    @Override
+                    public TDNumber exec(ExecutionContext m) {
+                        return blockCtxt.get(x).load(m).mult(by.load(m))
+                                .subtract(1.0);
+                    }
+                };
+            }
+        };
+    }
+
+    private Block block(final double[][] data, int derOrder, boolean coloring) {
+        final SimulationOptions options = BlockFixture.options();
+        options.jacobianColoring = coloring;
+        return fixture.block(data, derOrder, options);
+    }
+
+    private void assertSameJacobian(int derOrder) {
+        final double[][] data = fixture.data();
+        final Block dense = block(data, derOrder, false);
+        final Block colored = block(data, derOrder, true);
+        final int n = N * (derOrder + 1);
+        assertEquals(n, dense.directions());
+        assertTrue(colored.directions() < n);
+
+        fixture.assertSameLinearization(dense, colored, derOrder, 1e-14);
+    }
+
+    @Test
+    public void testSameJacobian() {
+        assertSameJacobian(0);
+    }
+
+    @Test
+    public void testSameJacobianOfDerivedEquations() {
+        assertSameJacobian(1);
+    }
+
+    @Test
+    public void testChainNeedsFewDirections() {
+        /* a cycle of even length is 2-colorable */
+        assertEquals(2, block(fixture.data(), 0, true).directions());
+    }
+
+    @Test
+    public void testColoredSolution() {
+        final double[][] expected = fixture.data();
+        block(expected, 0, false).exec();
+        final double[][] actual = fixture.data();
+        block(actual, 0, true).exec();
+
+        for (int i = 1; i <= N; ++i)
+            assertEquals(expected[i][0], actual[i][0], 1e-12);
+    }
+
+    @Test(expected = AssertionError.class)
+    public void testIncompleteNeedIsDetected() {
+        final Set<DerivedEquation> equations = Sets.newLinkedHashSet();
+        for (int i = 0; i < N; ++i)
+            equations.add((i == 0 ? hidden(fixture.vars.get(0),
+                    fixture.vars.get(1)) : fixture.loop(fixture.vars.get(i),
+                    fixture.vars.get((i + 1) % N))).der(0));
+
+        fixture.block(fixture.data(), 0, BlockFixture.options(), equations);
+    }
+}
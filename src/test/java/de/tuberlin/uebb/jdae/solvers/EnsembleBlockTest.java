@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import de.tuberlin.uebb.jdae.diff.total.TDNumber;
+import de.tuberlin.uebb.jdae.hlmsl.Unknown;
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.llmsl.BlockEquation;
+import de.tuberlin.uebb.jdae.llmsl.BlockVariable;
+import de.tuberlin.uebb.jdae.llmsl.DataLayout;
+import de.tuberlin.uebb.jdae.llmsl.Ensemble;
+import de.tuberlin.uebb.jdae.llmsl.ExecutionContext;
+import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.llmsl.specials.LinearGlobalEquation;
+import de.tuberlin.uebb.jdae.simulation.InlineIntegratorSelection;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the lockstep Newton iteration of a block over an ensemble
+ * yields exactly the per-lane results.
+ */
+public final class EnsembleBlockTest {
+
+    static final int LANES = 5;
+
+    final GlobalVariable x = new GlobalVariable("x", 1, 0);
+    final GlobalVariable y = new GlobalVariable("y", 2, 0);
+    final GlobalVariable p = new GlobalVariable("p", 3, 0);
+    final List<GlobalVariable> vars = ImmutableList.of(x, y, p);
+
+    /* x^2 + y - p = 0 */
+    final GlobalEquation circle = new GlobalEquation() {
+        @Override
+        public List<GlobalVariable> need() {
+            return vars;
+        }
+
+        @Override
+        public BlockEquation bind(
+                final Map<GlobalVariable, BlockVariable> blockCtxt) {
+            return new BlockEquation() {
+                @Override
+                public TDNumber exec(ExecutionContext m) {
+                    return blockCtxt.get(x).load(m).pow(2)
+                            .add(blockCtxt.get(y).load(m))
+                            .subtract(blockCtxt.get(p).load(m));
+                }
+            };
+        }
+    };
+
+    /* x - y^3 = 0 */
+    final GlobalEquation cubic = new GlobalEquation() {
+        @Override
+        public List<GlobalVariable> need() {
+            return ImmutableList.of(x, y);
+        }
+
+        @Override
+        public BlockEquation bind(
+                final Map<GlobalVariable, BlockVariable> blockCtxt) {
+            return new BlockEquation() {
+                @Override
+                public TDNumber exec(ExecutionContext m) {
+                    return blockCtxt.get(x).load(m)
+                            .subtract(blockCtxt.get(y).load(m).pow(3));
+                }
+            };
+        }
+    };
+
+    /* x + 2y = p, x - y = 1 */
+    final GlobalEquation sum = new LinearGlobalEquation(0.0, 0.0,
+            new double[] { 1, 2, -1 }, vars);
+    final GlobalEquation difference = new LinearGlobalEquation(0.0, 1.0,
+            new double[] { 1, -1 }, ImmutableList.of(x, y));
+
+    private SimulationOptions options() {
+        return new SimulationOptions(0, 1, 1e-6, 1e-3, 1e-3,
+                InlineIntegratorSelection.INLINE_FORWARD_EULER,
+                new TObjectDoubleHashMap<Unknown>());
+    }
+
+    private Block block(final double[][] data) {
+        return block(data, options());
+    }
+
+    private Block block(final double[][] data, final SimulationOptions options) {
+        return block(data, options, circle, cubic);
+    }
+
+    private Block block(final double[][] data,
+            final SimulationOptions options, GlobalEquation first,
+            GlobalEquation second) {
+        final Set<DerivedEquation> equations = Sets.newLinkedHashSet();
+        equations.add(first.der(0));
+        equations.add(second.der(0));
+        return new Block(data, new DataLayout(3, vars),
+                ImmutableSet.of(x, y), equations, options);
+    }
+
+    private void init(double[][] data, int lane) {
+        data[1][0] = 1.0 + 0.1 * lane;
+        data[2][0] = 0.5;
+        data[3][0] = 1.0 + lane;
+    }
+
+    /**
+     * @return the iterations of the ensemble, after checking that every lane
+     *         ends up exactly where a separate run does, and with as many
+     *         iterations in total
+     */
+    private long assertLanesMatchSeparateRuns(final SimulationOptions options,
+            GlobalEquation first, GlobalEquation second) {
+        final double[][] data = new DataLayout(3, vars).alloc();
+        final Block block = block(data, options, first, second);
+        final Ensemble ensemble = new Ensemble(data, LANES);
+        for (int l = 0; l < LANES; ++l)
+            init(ensemble.lanes[l], l);
+
+        block.exec(ensemble);
+        ensemble.restore();
+
+        long iterations = 0;
+        for (int l = 0; l < LANES; ++l) {
+            final double[][] single = new DataLayout(3, vars).alloc();
+            init(single, l);
+            final Block separate = block(single, options, first, second);
+            separate.exec();
+            iterations += separate.iterations();
+
+            for (int i = 0; i < single.length; ++i)
+                assertArrayEquals(single[i], ensemble.lanes[l][i], 0.0);
+        }
+        assertEquals(iterations, block.iterations());
+        return iterations;
+    }
+
+    @Test
+    public void testLanesMatchSeparateRuns() {
+        assertLanesMatchSeparateRuns(options(), circle, cubic);
+
+        final double[][] data = new DataLayout(3, vars).alloc();
+        final Ensemble ensemble = new Ensemble(data, LANES);
+        for (int l = 0; l < LANES; ++l)
+            init(ensemble.lanes[l], l);
+        block(data).exec(ensemble);
+
+        for (int l = 0; l < LANES; ++l) {
+            final double xl = ensemble.load(l, x);
+            final double yl = ensemble.load(l, y);
+            assertEquals(1.0 + l, xl * xl + yl, 1e-8);
+        }
+    }
+
+    @Test
+    public void testLanesMatchSeparateRunsOnJacobians() {
+        final SimulationOptions options = options();
+        options.valueResiduals = false;
+        assertLanesMatchSeparateRuns(options, circle, cubic);
+    }
+
+    @Test
+    public void testLanesMatchSeparateGlobalizedRuns() {
+        final SimulationOptions options = options();
+        options.lineSearch = true;
+        assertLanesMatchSeparateRuns(options, circle, cubic);
+        options.lineSearch = false;
+        options.trustRegion = true;
+        assertLanesMatchSeparateRuns(options, circle, cubic);
+    }
+
+    @Test
+    public void testLinearLanesShareTheFactorization() {
+        final double[][] data = new DataLayout(3, vars).alloc();
+        final Block block = block(data, options(), sum, difference);
+        final Ensemble ensemble = new Ensemble(data, LANES);
+        for (int l = 0; l < LANES; ++l)
+            init(ensemble.lanes[l], l);
+
+        block.exec(ensemble);
+        assertEquals(LANES, block.iterations());
+        assertEquals(1, block.factorizations());
+
+        assertEquals(LANES,
+                assertLanesMatchSeparateRuns(options(), sum, difference));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSimplifiedNewtonIsRejected() {
+        final SimulationOptions options = options();
+        options.simplifiedNewton = true;
+        final double[][] data = new DataLayout(3, vars).alloc();
+        block(data, options).exec(new Ensemble(data, LANES));
+    }
+
+    @Test
+    public void testRestoreKeepsOriginalData() {
+        final double[][] data = new DataLayout(3, vars).alloc();
+        init(data, 0);
+        final double[] row = data[1];
+        final Ensemble ensemble = new Ensemble(data, 2);
+        ensemble.set(1, x, 42.0);
+        ensemble.select(1);
+        assertEquals(42.0, data[1][0], 0.0);
+        ensemble.restore();
+        assertEquals(row, data[1]);
+        assertEquals(1.0, data[1][0], 0.0);
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import de.tuberlin.uebb.jdae.diff.total.TDNumber;
+import de.tuberlin.uebb.jdae.hlmsl.Unknown;
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.llmsl.BlockEquation;
+import de.tuberlin.uebb.jdae.llmsl.BlockVariable;
+import de.tuberlin.uebb.jdae.llmsl.DataLayout;
+import de.tuberlin.uebb.jdae.llmsl.DirectBlock;
+import de.tuberlin.uebb.jdae.llmsl.ExecutableDAE;
+import de.tuberlin.uebb.jdae.llmsl.ExecutionContext;
+import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.llmsl.IBlock;
+import de.tuberlin.uebb.jdae.simulation.InlineIntegratorSelection;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the polynomial prediction of solutions and that blocks starting
+ * from it need fewer Newton iterations on a smooth trajectory.
+ */
+public final class ExtrapolationTest {
+
+    static final int N = 4;
+
+    final List<GlobalVariable> vars = Lists.newArrayList();
+    final DataLayout layout;
+
+    public ExtrapolationTest() {
+        for (int i = 1; i <= N; ++i)
+            vars.add(new GlobalVariable("x" + i, i, 0));
+        this.layout = new DataLayout(N, vars);
+    }
+
+    @Test
+    public void testReproducesPolynomials() {
+        final Extrapolation history = new Extrapolation(2, 2);
+        for (int k = 0; k < 5; ++k) {
+            final double t = 0.1 * k;
+            history.record(t, new double[] { 1 + t, t * t - 2 * t });
+        }
+        assertEquals(3, history.size());
+
+        final double[] x = new double[2];
+        assertTrue(history.predict(0.5, x));
+        assertArrayEquals(new double[] { 1.5, -0.75 }, x, 1e-12);
+    }
+
+    @Test
+    public void testDropsRejectedSamples() {
+        final Extrapolation history = new Extrapolation(1, 1);
+        history.record(0.0, new double[] { 0.0 });
+        history.record(1.0, new double[] { 5.0 });
+        /* the step to 1.0 was rejected, 0.5 is accepted instead */
+        history.record(0.5, new double[] { 0.5 });
+        assertEquals(2, history.size());
+
+        final double[] x = new double[1];
+        assertTrue(history.predict(1.0, x));
+        assertEquals(1.0, x[0], 1e-12);
+    }
+
+    @Test
+    public void testNoPrediction() {
+        final Extrapolation history = new Extrapolation(1, 2);
+        final double[] x = { 42.0 };
+        assertFalse(history.predict(1.0, x));
+
+        history.record(1.0, new double[] { 1.0 });
+        assertFalse(history.predict(1.0, x));
+
+        history.reset();
+        assertFalse(history.predict(2.0, x));
+        assertEquals(42.0, x[0], 0.0);
+    }
+
+    /* x^3 + x * sin(y) - 2 - sin(time) = 0 */
+    private GlobalEquation loop(final GlobalVariable x, final GlobalVariable y) {
+        return new GlobalEquation() {
+
+            @Override
+            public List<GlobalVariable> need() {
+                return ImmutableList.of(x, y);
+            }
+
+            @Override
+            public BlockEquation bind(
+                    final Map<GlobalVariable, BlockVariable> blockCtxt) {
+                return new BlockEquation() {
+                    @Override
+                    public TDNumber exec(ExecutionContext m) {
+                        final TDNumber bx = blockCtxt.get(x).load(m);
+                        final TDNumber by = blockCtxt.get(y).load(m);
+                        return bx.pow(3).add(bx.mult(by.sin()))
+                                .subtract(m.time().sin()).subtract(2.0);
+                    }
+                };
+            }
+        };
+    }
+
+    private Block block(final double[][] data, int order) {
+        final SimulationOptions options = new SimulationOptions(0, 1, 1e-6,
+                1e-3, 1e-3, InlineIntegratorSelection.INLINE_FORWARD_EULER,
+                new TObjectDoubleHashMap<Unknown>());
+        options.extrapolationOrder = order;
+
+        final Set<GlobalVariable> iteratees = Sets.newHashSet(vars);
+        final Set<DerivedEquation> equations = Sets.newLinkedHashSet();
+        for (int i = 0; i < N; ++i)
+            equations.add(loop(vars.get(i), vars.get((i + 1) % N)).der(0));
+
+        for (int i = 1; i <= N; ++i)
+            data[i][0] = 1.0;
+        return new Block(data, layout, iteratees, equations, options);
+    }
+
+    @Test
+    public void testFewerIterationsOnSmoothTrajectories() {
+        final double[][] last = layout.alloc(), extrapolated = layout.alloc();
+        final Block lastBlock = block(last, 0);
+        final Block extrapolatedBlock = block(extrapolated, 2);
+
+        for (int k = 0; k <= 100; ++k) {
+            last[0][0] = extrapolated[0][0] = 0.01 * k;
+            lastBlock.exec();
+            extrapolatedBlock.exec();
+
+            for (int i = 1; i <= N; ++i)
+                assertEquals(last[i][0], extrapolated[i][0], 1e-8);
+        }
+
+        assertTrue(3 * extrapolatedBlock.iterations() < 2 * lastBlock
+                .iterations());
+    }
+
+    /* counts the resets of its history */
+    static final class Resettable implements IBlock {
+        int resets;
+
+        @Override
+        public void exec() {
+        }
+
+        @Override
+        public Iterable<GlobalVariable> variables() {
+            return ImmutableList.of();
+        }
+
+        @Override
+        public void resetHistory() {
+            resets++;
+        }
+    }
+
+    @Test
+    public void testResetReachesInitialsAndNestedBlocks() {
+        final Resettable initial = new Resettable();
+        final Resettable alternative = new Resettable();
+        final IBlock direct = new DirectBlock(vars.get(0), alternative, null) {
+            @Override
+            public double computeValue() {
+                return 0.0;
+            }
+        };
+        final SimulationOptions options = new SimulationOptions(0, 1, 1e-6,
+                1e-3, 1e-3, InlineIntegratorSelection.INLINE_FORWARD_EULER,
+                new TObjectDoubleHashMap<Unknown>());
+        final ExecutableDAE dae = new ExecutableDAE(layout,
+                new IBlock[] { direct }, new IBlock[] { initial },
+                ImmutableList.<GlobalVariable> of(), options);
+
+        dae.resetHistory();
+        assertEquals(1, initial.resets);
+        assertEquals(1, alternative.resets);
+    }
+}
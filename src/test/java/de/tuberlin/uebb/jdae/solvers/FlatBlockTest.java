@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+import de.tuberlin.uebb.jdae.diff.total.FlatTDNumber;
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.llmsl.BlockConstant;
+import de.tuberlin.uebb.jdae.llmsl.BlockIteratee;
+import de.tuberlin.uebb.jdae.llmsl.BlockState;
+import de.tuberlin.uebb.jdae.llmsl.BlockVariable;
+import de.tuberlin.uebb.jdae.llmsl.ExecutionContext;
+import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.llmsl.specials.ConstantGlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.specials.EqualityGlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.specials.LinearGlobalEquation;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that blocks evaluating their residuals in the flat layout compute
+ * the same residuals, Jacobians and solutions as the object layout.
+ */
+public final class FlatBlockTest {
+
+    static final int N = 6;
+
+    final BlockFixture fixture = new BlockFixture(N);
+    final List<GlobalVariable> vars = fixture.vars;
+
+    private Block block(final double[][] data, int derOrder, boolean flat,
+            boolean coloring) {
+        final SimulationOptions options = BlockFixture.options();
+        options.flatResiduals = flat;
+        options.jacobianColoring = coloring;
+        options.linearBlocks = false;
+
+        final Set<DerivedEquation> equations = Sets.newLinkedHashSet();
+        for (int i = 0; i < N - 2; ++i)
+            equations.add(new LinearGlobalEquation(0.5 * i, i, new double[] {
+                    2, -1 }, ImmutableList.of(vars.get(i), vars.get(i + 1)))
+                    .der(derOrder));
+        equations.add(new EqualityGlobalEquation(vars.get(N - 2), vars
+                .get(N - 1)).der(derOrder));
+        equations.add(new ConstantGlobalEquation(vars.get(N - 1), 3.0)
+                .der(derOrder));
+
+        return fixture.block(data, derOrder, options, equations);
+    }
+
+    private double[][] data() {
+        final double[][] data = fixture.data();
+        data[0][0] = 0.25;
+        return data;
+    }
+
+    private void assertSameLinearization(int derOrder, boolean coloring) {
+        final double[][] data = data();
+        final Block objects = block(data, derOrder, false, coloring);
+        final Block flat = block(data, derOrder, true, coloring);
+        assertFalse(objects.isFlat());
+        assertTrue(flat.isFlat());
+
+        fixture.assertSameLinearization(objects, flat, derOrder, 1e-14);
+    }
+
+    @Test
+    public void testSameLinearization() {
+        assertSameLinearization(0, false);
+    }
+
+    @Test
+    public void testSameLinearizationOfDerivedEquations() {
+        assertSameLinearization(2, false);
+    }
+
+    @Test
+    public void testSameColoredLinearization() {
+        assertSameLinearization(1, true);
+    }
+
+    @Test
+    public void testFlatSolution() {
+        final double[][] expected = data();
+        block(expected, 1, false, true).exec();
+        final double[][] actual = data();
+        block(actual, 1, true, true).exec();
+
+        fixture.assertSameSolution(expected, actual, 1e-12);
+        assertEquals(3.0, actual[N][0], 1e-12);
+    }
+
+    @Test
+    public void testFlatLoadsAgreeWithLoads() {
+        final GlobalVariable x = vars.get(0), y = vars.get(1);
+        final double[][] data = data();
+        data[0][0] = 0.3;
+        data[1] = new double[] { 1.5, -0.5, 2.0 };
+        final ExecutionContext ctxt = new ExecutionContext(1,
+                new GlobalVariable[] { x.der(1), x.der(2) }, data);
+
+        /* x is a state, only its derivatives are iterated upon */
+        final BlockVariable[] loads = { new BlockState(x, 0),
+                new BlockIteratee(x.der(1), 0), new BlockConstant(y) };
+        for (BlockVariable var : loads) {
+            final FlatTDNumber flat = ctxt.flatConstant(0.0);
+            ctxt.addFlat(2.0, var, flat.values);
+            final FlatTDNumber expected = new FlatTDNumber(var.load(ctxt));
+            assertArrayEquals(expected.mult(2.0).values, flat.values, 0.0);
+        }
+
+        final FlatTDNumber time = ctxt.flatConstant(0.0);
+        ctxt.addFlatTime(-1.0, time.values);
+        assertArrayEquals(new FlatTDNumber(ctxt.time()).mult(-1.0).values,
+                time.values, 0.0);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.math3.exception.ConvergenceException;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+import de.tuberlin.uebb.jdae.diff.total.TDNumber;
+import de.tuberlin.uebb.jdae.hlmsl.Unknown;
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.llmsl.BlockEquation;
+import de.tuberlin.uebb.jdae.llmsl.BlockVariable;
+import de.tuberlin.uebb.jdae.llmsl.DataLayout;
+import de.tuberlin.uebb.jdae.llmsl.ExecutionContext;
+import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.simulation.InlineIntegratorSelection;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * tanh(x) = 0 and y = x from x = 2: full Newton steps overshoot further and
+ * further, damped steps and the dogleg converge.
+ */
+public final class GlobalizedNewtonTest {
+
+    final GlobalVariable x = new GlobalVariable("x", 1, 0);
+    final GlobalVariable y = new GlobalVariable("y", 2, 0);
+    final DataLayout layout = new DataLayout(2, ImmutableList.of(x, y));
+
+    final GlobalEquation tanh = new GlobalEquation() {
+
+        @Override
+        public List<GlobalVariable> need() {
+            return ImmutableList.of(x);
+        }
+
+        @Override
+        public BlockEquation bind(
+                final Map<GlobalVariable, BlockVariable> blockCtxt) {
+            return new BlockEquation() {
+                @Override
+                public TDNumber exec(ExecutionContext m) {
+                    return blockCtxt.get(x).load(m).tanh();
+                }
+            };
+        }
+    };
+
+    final GlobalEquation equal = new GlobalEquation() {
+
+        @Override
+        public List<GlobalVariable> need() {
+            return ImmutableList.of(x, y);
+        }
+
+        @Override
+        public BlockEquation bind(
+                final Map<GlobalVariable, BlockVariable> blockCtxt) {
+            return new BlockEquation() {
+                @Override
+                public TDNumber exec(ExecutionContext m) {
+                    return blockCtxt.get(y).load(m)
+                            .subtract(blockCtxt.get(x).load(m));
+                }
+            };
+        }
+    };
+
+    private SimulationOptions options() {
+        return new SimulationOptions(0, 1, 1e-6, 1e-3, 1e-3,
+                InlineIntegratorSelection.INLINE_FORWARD_EULER,
+                new TObjectDoubleHashMap<Unknown>());
+    }
+
+    private Block block(final double[][] data, final SimulationOptions options) {
+        final Set<GlobalVariable> iteratees = Sets.newHashSet(x, y);
+        final Set<DerivedEquation> equations = Sets.newLinkedHashSet();
+        equations.add(tanh.der(0));
+        equations.add(equal.der(0));
+
+        data[1][0] = data[2][0] = 2.0;
+        return new Block(data, layout, iteratees, equations, options);
+    }
+
+    private void assertSolved(final SimulationOptions options) {
+        final double[][] data = layout.alloc();
+        final Block block = block(data, options);
+        block.exec();
+
+        assertEquals(0.0, data[1][0], 1e-8);
+        assertEquals(0.0, data[2][0], 1e-8);
+        assertTrue(block.iterations() < 20);
+    }
+
+    @Test
+    public void testEarlyDivergence() {
+        final SimulationOptions options = options();
+        options.divergenceLimit = 8;
+        final double[][] data = layout.alloc();
+        final Block block = block(data, options);
+        try {
+            block.exec();
+            fail("Newton's method should diverge from 2.");
+        } catch (ConvergenceException e) {
+            assertTrue(block.iterations() < 20);
+        }
+    }
+
+    @Test
+    public void testNoEarlyDivergenceByDefault() {
+        final SimulationOptions options = options();
+        options.maxIterations = 50;
+        final double[][] data = layout.alloc();
+        final Block block = block(data, options);
+        try {
+            block.exec();
+            fail("Newton's method should diverge from 2.");
+        } catch (ConvergenceException e) {
+            assertEquals(50, block.iterations());
+        }
+    }
+
+    @Test
+    public void testLineSearch() {
+        final SimulationOptions options = options();
+        options.lineSearch = true;
+        assertSolved(options);
+    }
+
+    @Test
+    public void testTrustRegion() {
+        final SimulationOptions options = options();
+        options.trustRegion = true;
+        assertSolved(options);
+    }
+
+    @Test
+    public void testSimplifiedTrustRegion() {
+        final SimulationOptions options = options();
+        options.trustRegion = true;
+        options.simplifiedNewton = true;
+        assertSolved(options);
+    }
+}
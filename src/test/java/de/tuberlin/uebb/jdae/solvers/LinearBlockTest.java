@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import de.tuberlin.uebb.jdae.diff.total.TDNumber;
+import de.tuberlin.uebb.jdae.hlmsl.Unknown;
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.llmsl.BlockEquation;
+import de.tuberlin.uebb.jdae.llmsl.BlockVariable;
+import de.tuberlin.uebb.jdae.llmsl.DataLayout;
+import de.tuberlin.uebb.jdae.llmsl.ExecutionContext;
+import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.llmsl.specials.LinearGlobalEquation;
+import de.tuberlin.uebb.jdae.simulation.InlineIntegratorSelection;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that linear blocks are solved by single steps: with a factorization
+ * kept across calls for linear equations, refactorized per call for affine
+ * residuals found by probing.
+ */
+public final class LinearBlockTest {
+
+    static final int N = 5;
+    static final int CALLS = 20;
+
+    final List<GlobalVariable> vars = Lists.newArrayList();
+    final GlobalVariable p = new GlobalVariable("p", N + 1, 0);
+    final DataLayout layout;
+
+    public LinearBlockTest() {
+        final List<GlobalVariable> all = Lists.newArrayList();
+        for (int i = 1; i <= N; ++i)
+            vars.add(new GlobalVariable("x" + i, i, 0));
+        all.addAll(vars);
+        all.add(p);
+        this.layout = new DataLayout(N + 1, all);
+    }
+
+    private SimulationOptions options(boolean linear, boolean probe) {
+        final SimulationOptions options = new SimulationOptions(0, 1, 1e-6,
+                1e-3, 1e-3, InlineIntegratorSelection.INLINE_FORWARD_EULER,
+                new TObjectDoubleHashMap<Unknown>());
+        options.linearBlocks = linear;
+        options.linearProbe = probe;
+        return options;
+    }
+
+    /* time + 2 x_i - x_{i+1} = i */
+    private Block linear(final double[][] data, final SimulationOptions options) {
+        final Set<DerivedEquation> equations = Sets.newLinkedHashSet();
+        for (int i = 0; i < N; ++i)
+            equations.add(new LinearGlobalEquation(1.0, i, new double[] { 2,
+                    -1 }, ImmutableList.of(vars.get(i), vars.get((i + 1) % N)))
+                    .der(0));
+        return new Block(data, layout, Sets.newHashSet(vars), equations,
+                options);
+    }
+
+    /* p * x_i - x_{i+1} = 1, or p * x_i^3 - x_{i+1} = 1 */
+    private GlobalEquation scaled(final GlobalVariable x,
+            final GlobalVariable y, final int power) {
+        return new GlobalEquation() {
+
+            @Override
+            public List<GlobalVariable> need() {
+                return ImmutableList.of(x, y, p);
+            }
+
+            @Override
+            public BlockEquation bind(
+                    final Map<GlobalVariable, BlockVariable> blockCtxt) {
+                return new BlockEquation() {
+                    @Override
+                    public TDNumber exec(ExecutionContext m) {
+                        return blockCtxt.get(x).load(m).pow(power)
+                                .mult(blockCtxt.get(p).load(m))
+                                .subtract(blockCtxt.get(y).load(m))
+                                .subtract(1.0);
+                    }
+                };
+            }
+        };
+    }
+
+    private Block scaled(final double[][] data,
+            final SimulationOptions options, int power) {
+        final Set<DerivedEquation> equations = Sets.newLinkedHashSet();
+        for (int i = 0; i < N; ++i)
+            equations.add(scaled(vars.get(i), vars.get((i + 1) % N), power)
+                    .der(0));
+        return new Block(data, layout, Sets.newHashSet(vars), equations,
+                options);
+    }
+
+    @Test
+    public void testFactorizationKeptForLinearEquations() {
+        final double[][] expected = layout.alloc(), actual = layout.alloc();
+        final Block newton = linear(expected, options(false, false));
+        final Block linear = linear(actual, options(true, false));
+
+        for (int k = 0; k < CALLS; ++k) {
+            expected[0][0] = actual[0][0] = 0.05 * k;
+            newton.exec();
+            linear.exec();
+
+            for (int i = 1; i <= N; ++i)
+                assertEquals(expected[i][0], actual[i][0], 1e-10);
+        }
+
+        assertEquals(CALLS, newton.factorizations());
+        assertEquals(1, linear.factorizations());
+        assertEquals(CALLS, linear.iterations());
+    }
+
+    @Test
+    public void testProbedAffineResiduals() {
+        final double[][] expected = layout.alloc(), actual = layout.alloc();
+        final Block newton = scaled(expected, options(true, false), 1);
+        final Block probed = scaled(actual, options(true, true), 1);
+
+        for (int k = 0; k < CALLS; ++k) {
+            expected[N + 1][0] = actual[N + 1][0] = 3.0 + 0.1 * k;
+            newton.exec();
+            probed.exec();
+
+            for (int i = 1; i <= N; ++i)
+                assertEquals(expected[i][0], actual[i][0], 1e-10);
+        }
+
+        /* one step per call, but the coefficients depend on p */
+        assertEquals(CALLS, probed.iterations());
+        assertEquals(CALLS, probed.factorizations());
+    }
+
+    @Test
+    public void testProbeRejectsNonlinearResiduals() {
+        final double[][] expected = layout.alloc(), actual = layout.alloc();
+        for (int i = 1; i <= N; ++i)
+            expected[i][0] = actual[i][0] = 1.0;
+        final Block newton = scaled(expected, options(true, false), 3);
+        final Block probed = scaled(actual, options(true, true), 3);
+
+        for (int k = 0; k < CALLS; ++k) {
+            expected[N + 1][0] = actual[N + 1][0] = 3.0 + 0.1 * k;
+            newton.exec();
+            probed.exec();
+
+            for (int i = 1; i <= N; ++i)
+                assertEquals(expected[i][0], actual[i][0], 1e-10);
+        }
+
+        assertEquals(newton.iterations(), probed.iterations());
+        assertTrue(probed.iterations() > CALLS);
+    }
+
+    /* 2 x + |x - 5| - 25, affine on either side of 5, the root is 10 */
+    private Block kinked(final double[][] data) {
+        final GlobalVariable x = vars.get(0);
+        final GlobalEquation kinked = new GlobalEquation() {
+
+            @Override
+            public List<GlobalVariable> need() {
+                return ImmutableList.of(x);
+            }
+
+            @Override
+            public BlockEquation bind(
+                    final Map<GlobalVariable, BlockVariable> blockCtxt) {
+                return new BlockEquation() {
+                    @Override
+                    public TDNumber exec(ExecutionContext m) {
+                        final TDNumber bx = blockCtxt.get(x).load(m);
+                        return bx.mult(2).add(bx.subtract(5.0).abs())
+                                .subtract(25.0);
+                    }
+                };
+            }
+        };
+        final Set<DerivedEquation> equations = Sets.newLinkedHashSet();
+        equations.add(kinked.der(0));
+        return new Block(data, layout, Sets.newHashSet(x), equations,
+                options(true, true));
+    }
+
+    @Test
+    public void testFalseProbeFallsBackToNewton() {
+        final double[][] data = layout.alloc();
+        final Block block = kinked(data);
+
+        /* probed at 1, where the Jacobian looks constant */
+        for (int k = 0; k < 3; ++k) {
+            data[1][0] = 1.0;
+            block.exec();
+            assertEquals(10.0, data[1][0], 1e-10);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+import de.tuberlin.uebb.jdae.diff.total.TDNumber;
+import de.tuberlin.uebb.jdae.diff.total.TDRegister;
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.llmsl.BlockEquation;
+import de.tuberlin.uebb.jdae.llmsl.BlockVariable;
+import de.tuberlin.uebb.jdae.llmsl.ExecutionContext;
+import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that reverse-mode blocks compute the same Jacobians and solutions
+ * as forward-mode blocks.
+ */
+public final class ReverseModeBlockTest {
+
+    static final int N = 12;
+
+    final BlockFixture fixture = new BlockFixture(N);
+    final Set<DerivedEquation> equations = Sets.newLinkedHashSet();
+
+    public ReverseModeBlockTest() {
+        for (int i = 0; i < N; ++i)
+            equations.add(cyclic(fixture.vars.get(i),
+                    fixture.vars.get((i + 1) % N)).der(0));
+    }
+
+    /* x^3 + x * exp(y - 1) - 2 = 0, solved by x = y = 1 */
+    private GlobalEquation cyclic(final GlobalVariable x, final GlobalVariable y) {
+        return new GlobalEquation() {
+
+            @Override
+            public List<GlobalVariable> need() {
+                return ImmutableList.of(x, y);
+            }
+
+            @Override
+            public BlockEquation bind(
+                    final Map<GlobalVariable, BlockVariable> blockCtxt) {
+                return new BlockEquation() {
+                    @Override
+                    public TDNumber exec(ExecutionContext m) {
+                        final TDNumber bx = blockCtxt.get(x).load(m);
+                        final TDRegister reg = new TDRegister(blockCtxt.get(y)
+                                .load(m));
+                        reg.add(-1);
+                        reg.exp();
+                        reg.mult(bx);
+                        return bx.pow(3).add(reg.unsafe()).subtract(2.0);
+                    }
+                };
+            }
+        };
+    }
+
+    private Block block(final double[][] data, int threshold) {
+        final SimulationOptions options = BlockFixture.options();
+        options.reverseModeThreshold = threshold;
+        return fixture.block(data, 0, options, equations);
+    }
+
+    @Test
+    public void testSameJacobian() {
+        final double[][] data = fixture.data();
+        final Block forward = block(data, 0);
+        final Block reverse = block(data, N);
+        assertFalse(forward.isReverseMode());
+        assertTrue(reverse.isReverseMode());
+
+        fixture.assertSameLinearization(forward, reverse, 0, 1e-12);
+    }
+
+    @Test
+    public void testReverseModeSolution() {
+        final double[][] data = fixture.data();
+        block(data, N).exec();
+
+        for (int i = 1; i <= N; ++i)
+            assertEquals(1.0, data[i][0], 1e-8);
+    }
+}
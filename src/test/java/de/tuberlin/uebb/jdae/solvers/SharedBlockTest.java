@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import org.junit.Test;
+
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that blocks sharing loads and common subexpressions between their
+ * equations compute the same residuals, Jacobians and solutions as blocks
+ * evaluating every equation on its own.
+ */
+public final class SharedBlockTest {
+
+    static final int N = 12;
+
+    final BlockFixture fixture = new BlockFixture(N);
+
+    private Block block(final double[][] data, int derOrder, boolean sharing) {
+        final SimulationOptions options = BlockFixture.options();
+        options.expressionSharing = sharing;
+        return fixture.block(data, derOrder, options);
+    }
+
+    private void assertSameJacobian(int derOrder) {
+        final double[][] data = fixture.data();
+        final Block plain = block(data, derOrder, false);
+        final Block shared = block(data, derOrder, true);
+        assertNull(plain.expressionCache());
+
+        fixture.assertSameLinearization(plain, shared, derOrder, 1e-14);
+
+        /* every variable is loaded by two equations */
+        assertTrue(shared.expressionCache().hits() >= N);
+    }
+
+    @Test
+    public void testSameJacobian() {
+        assertSameJacobian(0);
+    }
+
+    @Test
+    public void testSameJacobianOfDerivedEquations() {
+        assertSameJacobian(1);
+    }
+
+    @Test
+    public void testSharedSolution() {
+        final double[][] expected = fixture.data();
+        block(expected, 0, false).exec();
+        final double[][] actual = fixture.data();
+        block(actual, 0, true).exec();
+
+        for (int i = 1; i <= N; ++i)
+            assertEquals(expected[i][0], actual[i][0], 1e-12);
+    }
+}
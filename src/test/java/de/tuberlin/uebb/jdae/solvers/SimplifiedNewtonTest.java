@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import org.junit.Test;
+
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.llmsl.BlockStatistics;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that simplified Newton, which keeps the factorized Jacobian across
+ * iterations and calls, finds the same solutions of a slowly varying loop
+ * as full Newton with far fewer factorizations.
+ */
+public final class SimplifiedNewtonTest {
+
+    static final int N = 8;
+
+    final BlockFixture fixture = new BlockFixture(N);
+
+    private Block block(final double[][] data, boolean simplified) {
+        return block(data, simplified, true);
+    }
+
+    private Block block(final double[][] data, boolean simplified,
+            boolean valueResiduals) {
+        final SimulationOptions options = BlockFixture.options();
+        options.simplifiedNewton = simplified;
+        options.valueResiduals = valueResiduals;
+        return fixture.block(data, 0, options);
+    }
+
+    @Test
+    public void testSameSolutionsWithFewerFactorizations() {
+        final double[][] full = fixture.data(), chord = fixture.data();
+        final Block fullBlock = block(full, false);
+        final Block chordBlock = block(chord, true);
+
+        for (int k = 0; k < 50; ++k) {
+            full[N + 1][0] = chord[N + 1][0] = 2.0 + 0.01 * k;
+            fullBlock.exec();
+            chordBlock.exec();
+
+            for (int i = 1; i <= N; ++i)
+                assertEquals(full[i][0], chord[i][0], 1e-8);
+        }
+
+        assertEquals(fullBlock.iterations(), fullBlock.factorizations());
+        assertTrue(chordBlock.iterations() >= fullBlock.iterations());
+        assertTrue(4 * chordBlock.factorizations() < fullBlock
+                .factorizations());
+    }
+
+    @Test
+    public void testStatisticsCountJacobiansPerFactorization() {
+        for (boolean valueResiduals : new boolean[] { true, false }) {
+            final double[][] data = fixture.data();
+            final Block block = block(data, true, valueResiduals);
+            final BlockStatistics statistics = new BlockStatistics("chord");
+            block.measure(statistics);
+
+            for (int k = 0; k < 50; ++k) {
+                data[N + 1][0] = 2.0 + 0.01 * k;
+                block.exec();
+            }
+
+            assertEquals(block.iterations(), statistics.iterations);
+            assertEquals(block.factorizations(), statistics.factorizations);
+            /* residual checks without a factorization do not count */
+            assertEquals(statistics.factorizations, statistics.jacobians);
+            assertTrue(4 * statistics.jacobians < statistics.iterations);
+        }
+    }
+
+    @Test
+    public void testRefactorizesOnPoorContraction() {
+        final double[][] data = fixture.data();
+        final Block block = block(data, true);
+        block.exec();
+        final long factorizations = block.factorizations();
+
+        /* far away from the old solution, the old Jacobian is useless */
+        data[N + 1][0] = 40.0;
+        block.exec();
+        assertTrue(block.factorizations() > factorizations);
+
+        for (int i = 1; i <= N; ++i) {
+            final double x = data[i][0], y = data[i % N + 1][0];
+            assertEquals(40.0, x * x * x + x * Math.sin(y), 1e-7);
+        }
+    }
+}
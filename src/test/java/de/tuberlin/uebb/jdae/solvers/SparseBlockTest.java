@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import org.junit.Test;
+
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that large blocks solved by a sparse LU find the same solutions as
+ * blocks with the dense solver.
+ */
+public final class SparseBlockTest {
+
+    static final int N = 150;
+
+    final BlockFixture fixture = new BlockFixture(N);
+
+    private Block block(final double[][] data, int derOrder, boolean sparse) {
+        final SimulationOptions options = BlockFixture.options();
+        options.sparseThreshold = sparse ? 100 : 0;
+        options.simplifiedNewton = true;
+        return fixture.block(data, derOrder, options);
+    }
+
+    private void assertSameSolution(int derOrder) {
+        final double[][] expected = fixture.data();
+        final Block dense = block(expected, derOrder, false);
+        final double[][] actual = fixture.data();
+        final Block sparse = block(actual, derOrder, true);
+        assertFalse(dense.isSparse());
+        assertTrue(sparse.isSparse());
+
+        dense.exec();
+        sparse.exec();
+
+        fixture.assertSameSolution(expected, actual, 1e-10);
+    }
+
+    @Test
+    public void testSparseSolution() {
+        assertSameSolution(0);
+    }
+
+    @Test
+    public void testSparseSolutionOfDerivedEquations() {
+        assertSameSolution(1);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import de.tuberlin.uebb.jdae.hlmsl.Unknown;
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.llmsl.DataLayout;
+import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.llmsl.specials.ConstantGlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.specials.EqualityGlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.specials.LinearGlobalEquation;
+import de.tuberlin.uebb.jdae.simulation.InlineIntegratorSelection;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that wide blocks reading their Jacobian rows from sparse gradients
+ * compute the same residuals, Jacobians and solutions as dense forward mode.
+ */
+public final class SparseGradientBlockTest {
+
+    static final int N = 120;
+
+    final List<GlobalVariable> vars = Lists.newArrayList();
+    final DataLayout layout;
+
+    public SparseGradientBlockTest() {
+        for (int i = 1; i <= N; ++i)
+            vars.add(new GlobalVariable("x" + i, i, 0));
+        this.layout = new DataLayout(N, vars);
+    }
+
+    private Block block(final double[][] data, int threshold,
+            boolean sparseSolver) {
+        final SimulationOptions options = new SimulationOptions(0, 1, 1e-6,
+                1e-3, 1e-3, InlineIntegratorSelection.INLINE_FORWARD_EULER,
+                new TObjectDoubleHashMap<Unknown>());
+        options.sparseGradientThreshold = threshold;
+        options.reverseModeThreshold = 0;
+        options.sparseThreshold = sparseSolver ? N : 0;
+
+        /* x_i - 0.5 x_{i+1} + 0.25 x_{i+2} = i + time */
+        final Set<DerivedEquation> equations = Sets.newLinkedHashSet();
+        for (int i = 0; i < N - 2; ++i)
+            equations.add(new LinearGlobalEquation(-1.0, i, new double[] { 1,
+                    -0.5, 0.25 }, ImmutableList.of(vars.get(i),
+                    vars.get(i + 1), vars.get(i + 2))).der(0));
+        equations.add(new EqualityGlobalEquation(vars.get(N - 2), vars
+                .get(N - 1)).der(0));
+        equations.add(new ConstantGlobalEquation(vars.get(N - 1), 2.0).der(0));
+
+        return new Block(data, layout, Sets.newHashSet(vars), equations,
+                options);
+    }
+
+    @Test
+    public void testOnlyWideBlocks() {
+        assertTrue(block(layout.alloc(), N, false).isSparseGradient());
+        assertFalse(block(layout.alloc(), N + 1, false).isSparseGradient());
+        assertFalse(block(layout.alloc(), 0, false).isSparseGradient());
+    }
+
+    @Test
+    public void testSameLinearization() {
+        final double[][] data = layout.alloc();
+        data[0][0] = 0.5;
+        final Block dense = block(data, 0, false);
+        final Block sparse = block(data, N, false);
+
+        final double[] point = new double[N];
+        for (int i = 0; i < N; ++i)
+            point[i] = Math.sin(i);
+
+        assertArrayEquals(dense.value(point), sparse.value(point), 1e-14);
+
+        final double[][] expected = dense.jacobian().value(point);
+        final double[][] actual = sparse.jacobian().value(point);
+        for (int i = 0; i < N; ++i)
+            assertArrayEquals(expected[i], actual[i], 1e-14);
+    }
+
+    @Test
+    public void testSparseSolution() {
+        for (boolean sparseSolver : new boolean[] { false, true }) {
+            final double[][] expected = layout.alloc();
+            final double[][] actual = layout.alloc();
+            expected[0][0] = actual[0][0] = 0.5;
+
+            block(expected, 0, sparseSolver).exec();
+            final Block sparse = block(actual, N, sparseSolver);
+            assertEquals(sparseSolver, sparse.isSparse());
+            sparse.exec();
+
+            for (int i = 1; i <= N; ++i)
+                assertEquals(expected[i][0], actual[i][0], 1e-10);
+        }
+    }
+}
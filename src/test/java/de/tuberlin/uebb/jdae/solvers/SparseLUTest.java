@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.LinearSolver;
+import org.ejml.factory.LinearSolverFactory;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SparseLUTest {
+
+    /*
+     * a sparse, well-conditioned matrix whose rows are shuffled, so its
+     * diagonal is mostly zero
+     */
+    private static double[][] matrix(int n, long seed) {
+        final Random random = new Random(seed);
+        final double[][] a = new double[n][n];
+        for (int i = 0; i < n; ++i) {
+            a[i][i] = 4.0 + random.nextDouble();
+            a[i][(i + 1) % n] = random.nextDouble() - 0.5;
+            a[i][(i + random.nextInt(8)) % n] += random.nextDouble() - 0.5;
+        }
+        for (int i = n - 1; i > 0; --i) {
+            final int j = random.nextInt(i + 1);
+            final double[] t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+        return a;
+    }
+
+    private static int[][] structure(final double[][] a) {
+        final int[][] rows = new int[a.length][];
+        for (int i = 0; i < a.length; ++i) {
+            int count = 0;
+            for (double d : a[i])
+                if (d != 0.0)
+                    count++;
+            rows[i] = new int[count];
+            count = 0;
+            for (int j = 0; j < a.length; ++j)
+                if (a[i][j] != 0.0)
+                    rows[i][count++] = j;
+        }
+        return rows;
+    }
+
+    private static double[] dense(final double[][] a, final double[] b) {
+        final LinearSolver<DenseMatrix64F> solver = LinearSolverFactory
+                .linear(a.length);
+        assertTrue(solver.setA(new DenseMatrix64F(a)));
+        final DenseMatrix64F x = new DenseMatrix64F(a.length, 1);
+        solver.solve(new DenseMatrix64F(a.length, 1, true, b), x);
+        return x.data;
+    }
+
+    @Test
+    public void testSolvesLikeDenseLU() {
+        for (int n : new int[] { 1, 2, 5, 40, 300 }) {
+            final double[][] a = matrix(n, n);
+            final SparseLU lu = SparseLU.analyze(n, structure(a));
+            for (int i = 0; i < n; ++i)
+                lu.setRow(i, a[i]);
+            assertTrue(lu.factorize());
+
+            final double[] b = new double[n];
+            for (int i = 0; i < n; ++i)
+                b[i] = Math.sin(i);
+            final double[] x = new double[n];
+            lu.solve(b, x);
+            assertArrayEquals(dense(a, b), x, 1e-10);
+
+            /* banded with a corner, so the fill stays linear */
+            assertTrue(lu.nonZeros() <= 32 * n);
+        }
+    }
+
+    @Test
+    public void testRefactorizesWithNewValues() {
+        final int n = 50;
+        final double[][] a = matrix(n, 7);
+        final SparseLU lu = SparseLU.analyze(n, structure(a));
+        final double[] b = new double[n];
+        b[3] = 1.0;
+        final double[] x = new double[n];
+
+        for (int k = 1; k <= 3; ++k) {
+            for (int i = 0; i < n; ++i)
+                for (int j = 0; j < n; ++j)
+                    a[i][j] *= k;
+            lu.clear();
+            for (int i = 0; i < n; ++i)
+                lu.setRow(i, a[i]);
+            assertTrue(lu.factorize());
+            lu.solve(b, x);
+            assertArrayEquals(dense(a, b), x, 1e-10);
+        }
+    }
+
+    @Test
+    public void testStructurallySingular() {
+        /* two rows depend on the first column only */
+        assertNull(SparseLU.analyze(3, new int[][] { { 0 }, { 0 },
+                { 0, 1, 2 } }));
+    }
+
+    @Test
+    public void testVanishingStaticPivot() {
+        /* structurally fine, but the only transversal has a zero entry */
+        final SparseLU lu = SparseLU.analyze(2, new int[][] { { 0, 1 },
+                { 0, 1 } });
+        lu.setRow(0, new double[] { 0.0, 1.0 });
+        lu.setRow(1, new double[] { 1.0, 0.0 });
+        final boolean first = lu.factorize();
+        lu.clear();
+        lu.setRow(0, new double[] { 1.0, 1.0 });
+        lu.setRow(1, new double[] { 1.0, 1.0 });
+        assertFalse(lu.factorize());
+
+        if (first) {
+            final double[] x = new double[2];
+            lu.clear();
+            lu.setRow(0, new double[] { 0.0, 1.0 });
+            lu.setRow(1, new double[] { 1.0, 0.0 });
+            assertTrue(lu.factorize());
+            lu.solve(new double[] { 2.0, 3.0 }, x);
+            assertArrayEquals(new double[] { 3.0, 2.0 }, x, 1e-14);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import de.tuberlin.uebb.jdae.diff.total.TDNumber;
+import de.tuberlin.uebb.jdae.hlmsl.Unknown;
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.llmsl.BlockEquation;
+import de.tuberlin.uebb.jdae.llmsl.BlockStatistics;
+import de.tuberlin.uebb.jdae.llmsl.BlockVariable;
+import de.tuberlin.uebb.jdae.llmsl.DataLayout;
+import de.tuberlin.uebb.jdae.llmsl.ExecutableDAE;
+import de.tuberlin.uebb.jdae.llmsl.ExecutionContext;
+import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.llmsl.IBlock;
+import de.tuberlin.uebb.jdae.llmsl.TornBlock;
+import de.tuberlin.uebb.jdae.llmsl.specials.LinearGlobalEquation;
+import de.tuberlin.uebb.jdae.simulation.InlineIntegratorSelection;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
+import de.tuberlin.uebb.jdae.transformation.Tearing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A loop of linear equations closed by a nonlinear one: tearing a single
+ * variable leaves a scalar Newton iteration with the same solution as the
+ * full block.
+ */
+public final class TornBlockTest {
+
+    static final int N = 6;
+
+    final List<GlobalVariable> vars = Lists.newArrayList();
+    final DataLayout layout;
+    final SimulationOptions options = new SimulationOptions(0, 1, 1e-6, 1e-3,
+            1e-3, InlineIntegratorSelection.INLINE_FORWARD_EULER,
+            new TObjectDoubleHashMap<Unknown>());
+
+    final Set<GlobalVariable> iteratees = Sets.newTreeSet();
+    final Set<DerivedEquation> equations = Sets.newLinkedHashSet();
+
+    public TornBlockTest() {
+        final List<GlobalVariable> derivatives = Lists.newArrayList();
+        for (int i = 1; i <= N; ++i) {
+            vars.add(new GlobalVariable("x" + i, i, 0));
+            derivatives.add(new GlobalVariable("x" + i, i, 1));
+        }
+        this.layout = new DataLayout(N, derivatives);
+
+        iteratees.addAll(vars);
+        /* x_{i+1} - x_i = 1 */
+        for (int i = 0; i < N - 1; ++i)
+            equations.add(new LinearGlobalEquation(0.0, 1.0, new double[] {
+                    1, -1 }, ImmutableList.of(vars.get(i + 1), vars.get(i)))
+                    .der(0));
+        equations.add(closing(vars.get(0), vars.get(N - 1)).der(0));
+    }
+
+    /* x^3 + y - 10 = 0 */
+    private GlobalEquation closing(final GlobalVariable x,
+            final GlobalVariable y) {
+        return new GlobalEquation() {
+
+            @Override
+            public List<GlobalVariable> need() {
+                return ImmutableList.of(x, y);
+            }
+
+            @Override
+            public BlockEquation bind(
+                    final Map<GlobalVariable, BlockVariable> blockCtxt) {
+                return new BlockEquation() {
+                    @Override
+                    public TDNumber exec(ExecutionContext m) {
+                        final TDNumber bx = blockCtxt.get(x).load(m);
+                        final TDNumber by = blockCtxt.get(y).load(m);
+                        return bx.pow(3).add(by).subtract(10.0);
+                    }
+                };
+            }
+        };
+    }
+
+    private ExecutableDAE dae() {
+        final ExecutableDAE dae = new ExecutableDAE(layout,
+                new IBlock[] { null }, new IBlock[] {},
+                ImmutableList.<GlobalVariable> of(), options);
+        for (GlobalVariable v : vars)
+            dae.set(v, 1.0);
+        return dae;
+    }
+
+    @Test
+    public void testTearing() {
+        final Tearing tearing = new Tearing(iteratees, equations);
+
+        assertTrue(tearing.reduces());
+        assertEquals(ImmutableList.of(vars.get(0)), tearing.tearing);
+        assertEquals(N - 1, tearing.assigned.size());
+        assertEquals(1, tearing.residuals.size());
+    }
+
+    @Test
+    public void testTornSolution() {
+        final ExecutableDAE expected = dae();
+        new Block(expected.data, layout, iteratees, equations, options).exec();
+
+        final ExecutableDAE actual = dae();
+        final TornBlock torn = new TornBlock(new Block(actual.data, layout,
+                iteratees, equations, options), new Tearing(iteratees,
+                equations), actual);
+        assertEquals(1, torn.dimension());
+        torn.exec();
+
+        for (GlobalVariable v : vars)
+            assertEquals(expected.load(v), actual.load(v), 1e-8);
+
+        final double x1 = actual.load(vars.get(0));
+        assertEquals(0.0, x1 * x1 * x1 + x1 + N - 1 - 10.0, 1e-8);
+    }
+
+    @Test
+    public void testTornSolutionWithUncompressedSeeds() {
+        options.jacobianColoring = false;
+        final ExecutableDAE expected = dae();
+        new Block(expected.data, layout, iteratees, equations, options).exec();
+
+        final ExecutableDAE actual = dae();
+        new TornBlock(new Block(actual.data, layout, iteratees, equations,
+                options), new Tearing(iteratees, equations), actual).exec();
+
+        for (GlobalVariable v : vars)
+            assertEquals(expected.load(v), actual.load(v), 1e-8);
+    }
+
+    @Test
+    public void testStatisticsOfTheTornSystem() {
+        final ExecutableDAE actual = dae();
+        final TornBlock torn = new TornBlock(new Block(actual.data, layout,
+                iteratees, equations, options), new Tearing(iteratees,
+                equations), actual);
+        final BlockStatistics statistics = new BlockStatistics("torn");
+        torn.measure(statistics);
+        torn.exec();
+
+        assertTrue(statistics.iterations > 0);
+        /* one linearization per iteration and one to detect convergence */
+        assertEquals(statistics.iterations + 1, statistics.jacobians);
+        assertEquals(statistics.iterations, statistics.factorizations);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2012 uebb.tu-berlin.de.
+ *
+ * This file is part of modim
+ *
+ * modim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * modim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with modim. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tuberlin.uebb.jdae.solvers;
+
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import de.tuberlin.uebb.jdae.diff.total.TDNumber;
+import de.tuberlin.uebb.jdae.hlmsl.Unknown;
+import de.tuberlin.uebb.jdae.llmsl.Block;
+import de.tuberlin.uebb.jdae.llmsl.BlockEquation;
+import de.tuberlin.uebb.jdae.llmsl.BlockVariable;
+import de.tuberlin.uebb.jdae.llmsl.DataLayout;
+import de.tuberlin.uebb.jdae.llmsl.ExecutionContext;
+import de.tuberlin.uebb.jdae.llmsl.GlobalEquation;
+import de.tuberlin.uebb.jdae.llmsl.GlobalVariable;
+import de.tuberlin.uebb.jdae.llmsl.ValueEquation;
+import de.tuberlin.uebb.jdae.simulation.InlineIntegratorSelection;
+import de.tuberlin.uebb.jdae.simulation.SimulationOptions;
+import de.tuberlin.uebb.jdae.transformation.DerivedEquation;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that convergence checks on residual values find the same solutions
+ * and evaluate partial derivatives only for Newton corrections.
+ */
+public final class ValueResidualTest {
+
+    static final int N = 4;
+
+    final List<GlobalVariable> vars = Lists.newArrayList();
+    final DataLayout layout;
+
+    /* calls of the equations with and without partial derivatives */
+    int partials, values;
+
+    public ValueResidualTest() {
+        for (int i = 1; i <= N; ++i)
+            vars.add(new GlobalVariable("x" + i, i, 0));
+        this.layout = new DataLayout(N, vars);
+    }
+
+    /* x^3 + x * sin(y) - 2 = 0 */
+    private GlobalEquation loop(final GlobalVariable x, final GlobalVariable y) {
+        return new GlobalEquation() {
+
+            @Override
+            public List<GlobalVariable> need() {
+                return ImmutableList.of(x, y);
+            }
+
+            @Override
+            public BlockEquation bind(
+                    final Map<GlobalVariable, BlockVariable> blockCtxt) {
+                final BlockVariable bx = blockCtxt.get(x);
+                final BlockVariable by = blockCtxt.get(y);
+                return new ValueEquation() {
+                    @Override
+                    public TDNumber exec(ExecutionContext m) {
+                        partials++;
+                        final TDNumber lx = bx.load(m);
+                        return lx.pow(3).add(lx.mult(by.load(m).sin()))
+                                .subtract(2.0);
+                    }
+
+                    @Override
+                    public double execValue(ExecutionContext m) {
+                        values++;
+                        final double vx = bx.value(m);
+                        return vx * vx * vx + vx * Math.sin(by.value(m)) - 2.0;
+                    }
+                };
+            }
+        };
+    }
+
+    private double[][] solve(boolean valueResiduals) {
+        final SimulationOptions options = new SimulationOptions(0, 1, 1e-6,
+                1e-3, 1e-3, InlineIntegratorSelection.INLINE_FORWARD_EULER,
+                new TObjectDoubleHashMap<Unknown>());
+        options.valueResiduals = valueResiduals;
+
+        final Set<GlobalVariable> iteratees = Sets.newHashSet(vars);
+        final Set<DerivedEquation> equations = Sets.newLinkedHashSet();
+        for (int i = 0; i < N; ++i)
+            equations.add(loop(vars.get(i), vars.get((i + 1) % N)).der(0));
+
+        final double[][] data = layout.alloc();
+        for (int i = 1; i <= N; ++i)
+            data[i][0] = 1.0 + 0.1 * i;
+
+        final Block block = new Block(data, layout, iteratees, equations,
+                options);
+        /* only count the calls of exec() */
+        partials = values = 0;
+        block.exec();
+
+        /* one evaluation per equation and iteration, the last only checks */
+        assertEquals(N * block.iterations(), valueResiduals ? partials
+                : partials - N);
+        assertEquals(valueResiduals ? partials + N : 0, values);
+        return data;
+    }
+
+    @Test
+    public void testSameSolution() {
+        final double[][] full = solve(false);
+        final double[][] values = solve(true);
+
+        for (int i = 1; i <= N; ++i)
+            assertEquals(full[i][0], values[i][0], 1e-12);
+    }
+}